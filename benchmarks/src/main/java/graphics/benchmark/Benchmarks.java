@@ -0,0 +1,52 @@
+package graphics.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.ProfilerConfig;
+
+import java.io.IOException;
+
+/* Entry point of benchmarks.jar. Takes the usual JMH command line, but always adds the GC profiler
+   so allocation per operation (gc.alloc.rate.norm) and GC counts are reported next to every score.
+   Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regexp], from the repository root */
+public class Benchmarks {
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (options.shouldHelp()) {
+            try {
+                options.showHelp();
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        boolean hasGc = false;
+        for (ProfilerConfig profiler : options.getProfilers()) {
+            hasGc |= profiler.getKlass().equals("gc") || profiler.getKlass().equals(GCProfiler.class.getName());
+        }
+        if (!hasGc) {
+            builder.addProfiler(GCProfiler.class);
+        }
+
+        Runner runner = new Runner(builder.build());
+        if (options.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
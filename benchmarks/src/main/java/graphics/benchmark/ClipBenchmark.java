@@ -0,0 +1,53 @@
+package graphics.benchmark;
+
+import graphics.render.Clipper;
+import graphics.structures.triangle;
+import graphics.structures.vec3d;
+import graphics.utility.VectorUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/* One triangle against the near plane z = 0.1 with 0 to 3 of its corners inside, through the
+   original VectorUtil.TriangleClipAgainstPlane and through the Clipper that replaced it */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClipBenchmark {
+    @Param({"0", "1", "2", "3"})
+    public int inside;
+
+    private final vec3d plane_p = new vec3d(0.0f, 0.0f, 0.1f), plane_n = new vec3d(0.0f, 0.0f, 1.0f);
+    private triangle in_tri;
+    private final triangle out_tri1 = new triangle(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f));
+    private final triangle out_tri2 = new triangle(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f));
+    private final Clipper clipper = new Clipper();
+
+    @Setup
+    public void Setup() {
+        float[] z = new float[3];
+        for (int k = 0; k < 3; k++) {
+            z[k] = k < inside ? 1.0f : -1.0f;
+        }
+        in_tri = new triangle(new vec3d(-1.0f, -1.0f, z[0]), new vec3d(1.0f, -1.0f, z[1]), new vec3d(0.0f, 1.0f, z[2]));
+        clipper.AddPlane(0.0f, 0.0f, 1.0f, -0.1f);
+    }
+
+    @Benchmark
+    public triangle[] TriangleClipAgainstPlane() {
+        return VectorUtil.TriangleClipAgainstPlane(plane_p, plane_n, in_tri, out_tri1, out_tri2);
+    }
+
+    @Benchmark
+    public int Clipper() {
+        vec3d[] p = in_tri.points;
+        clipper.Begin();
+        clipper.AddVertex(p[0].x, p[0].y, p[0].z, 1.0f);
+        clipper.AddVertex(p[1].x, p[1].y, p[1].z, 1.0f);
+        clipper.AddVertex(p[2].x, p[2].y, p[2].z, 1.0f);
+        return clipper.Clip();
+    }
+}
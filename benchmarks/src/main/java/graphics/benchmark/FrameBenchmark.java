@@ -0,0 +1,98 @@
+package graphics.benchmark;
+
+import graphics.render.Camera;
+import graphics.render.RenderMode;
+import graphics.render.RenderPipeline;
+import graphics.render.Renderer;
+import graphics.render.ShadeMode;
+import graphics.scene.InstanceGrid;
+import graphics.scene.Scene;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/* One whole frame as HeadlessRenderer draws it, scene update, culling, geometry and rasterization,
+   with the model spinning between frames. The mesh path is relative to the repository root. With a
+   pipeline depth the score is the time between frames, rasterization overlapping the next geometry */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class FrameBenchmark {
+    @Param({"src/graphics/resources/teapot.obj"})
+    public String objFile;
+
+    @Param({"painter", "zbuffer", "tiled"})
+    public String renderMode;
+
+    @Param({"wireframe", "flat", "gouraud"})
+    public String shading;
+
+    @Param({"1", "100"})
+    public int instances;
+
+    @Param({"500x500"})
+    public String size;
+
+    /* Occlusion culling, which has little to cull in this open grid and so shows what it costs */
+    @Param({"true", "false"})
+    public boolean occlusion;
+
+    /* RenderPipeline depth, 0 renders each frame start to finish on the benchmark thread */
+    @Param({"0", "2"})
+    public int pipelineDepth;
+
+    private ForkJoinPool workers;
+    private Renderer renderer;
+    private final Camera camera = new Camera();
+    private final mat4x4 matWorld = new mat4x4();
+    private final Scene scene = new Scene();
+    private InstanceGrid grid;
+    private RenderPipeline pipeline;
+    private float fTheta;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        mesh meshObj = new mesh();
+        if (!meshObj.LoadFromObjectFile(objFile)) {
+            throw new IllegalStateException("could not load " + objFile + ", run from the repository root or pass -p objFile=<path>");
+        }
+        String[] dimensions = size.split("x");
+        workers = new ForkJoinPool();
+        renderer = new Renderer(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]),
+                RenderMode.valueOf(renderMode.toUpperCase(Locale.ROOT)), ShadeMode.valueOf(shading.toUpperCase(Locale.ROOT)), workers);
+        renderer.SetOcclusionCulling(occlusion);
+        grid = new InstanceGrid(meshObj, instances);
+        scene.root.AddChild(grid.group);
+        if (pipelineDepth > 0) {
+            pipeline = new RenderPipeline(renderer, pipelineDepth, (frameBuffer, frame) -> { });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() throws InterruptedException {
+        if (pipeline != null) {
+            pipeline.Drain();
+            pipeline.Close();
+        }
+        workers.shutdown();
+    }
+
+    @Benchmark
+    public int Frame() throws InterruptedException {
+        fTheta += 0.01f;
+        grid.Animate(renderer.MakeWorldMatrix(fTheta, matWorld));
+        if (pipeline != null) {
+            pipeline.Submit(scene, camera);
+        } else {
+            renderer.RenderFrame(scene, camera);
+        }
+        return renderer.TrianglesDrawn();
+    }
+}
@@ -0,0 +1,80 @@
+package graphics.benchmark;
+
+import graphics.io.MeshCache;
+import graphics.structures.mesh;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/* mesh.LoadFromObjectFile on synthetic grids, either parsing the OBJ (and reordering it) every time
+   or reading the binary cache next to it */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int triangles;
+
+    @Param({"false", "true"})
+    public boolean cache;
+
+    private Path objFile;
+
+    @Setup(Level.Trial)
+    public void Setup() throws IOException {
+        objFile = Files.createTempFile("grid" + triangles + "-", ".obj");
+        WriteGrid(objFile, triangles);
+        System.setProperty("graphics.meshcache", Boolean.toString(cache));
+        if (cache) {
+            /* First load writes the cache the measured ones read */
+            Load();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() throws IOException {
+        Files.deleteIfExists(MeshCache.CachePath(objFile));
+        Files.deleteIfExists(objFile);
+    }
+
+    @Benchmark
+    public mesh Load() {
+        mesh meshObj = new mesh();
+        if (!meshObj.LoadFromObjectFile(objFile.toString())) {
+            throw new IllegalStateException("could not load " + objFile);
+        }
+        return meshObj;
+    }
+
+    /* A gently rippled square grid of exactly nTriangles triangles */
+    static void WriteGrid(Path file, int nTriangles) throws IOException {
+        int side = (int) Math.ceil(Math.sqrt(nTriangles / 2.0));
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (int j = 0; j <= side; j++) {
+                for (int i = 0; i <= side; i++) {
+                    float x = i / (float) side - 0.5f, z = j / (float) side - 0.5f;
+                    float y = (float) (Math.sin(x * 20.0) * Math.cos(z * 20.0)) * 0.02f;
+                    out.write("v " + x + " " + y + " " + z + "\n");
+                }
+            }
+            int written = 0;
+            for (int j = 0; j < side && written < nTriangles; j++) {
+                for (int i = 0; i < side && written < nTriangles; i++) {
+                    int a = j * (side + 1) + i + 1, b = a + 1, c = a + side + 1, d = c + 1;
+                    out.write("f " + a + " " + c + " " + b + "\n");
+                    if (++written < nTriangles) {
+                        out.write("f " + b + " " + c + " " + d + "\n");
+                        written++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package graphics.benchmark;
+
+import graphics.structures.mat4x4;
+import graphics.structures.vec3d;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static graphics.utility.MatrixUtil.*;
+
+/* MatrixUtil on the per vertex and per object paths. The allocating forms are what the original
+   pipeline called, the out parameter forms what it calls now, the GC profiler shows the difference.
+   The Nested benchmarks run a private copy of the original matrix multiply and quick inverse on the
+   original float[4][4] matrix, for the before and after of the flat float[16] one */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixBenchmark {
+    private static final int POINTS = 1024;
+
+    private final mat4x4 matA = new mat4x4(), matB = new mat4x4(), matOut = new mat4x4();
+    private final vec3d vIn = new vec3d(0.0f, 0.0f, 0.0f), vOut = new vec3d(0.0f, 0.0f, 0.0f);
+    private final float[] points = new float[POINTS * 3], transformed = new float[POINTS * 3];
+    private final nestedMat4x4 nestedA = new nestedMat4x4(), nestedB = new nestedMat4x4();
+
+    @Setup
+    public void Setup() {
+        Random random = new Random(42);
+        MatrixMultiplyMatrix(MatrixMakeRotationX(0.7f), MatrixMakeTranslation(1.0f, 2.0f, 8.0f), matA);
+        MatrixMultiplyMatrix(matA, MatrixMakeProjection(90.0f, 1.0f, 0.1f, 1000.0f), matB);
+        vIn.x = random.nextFloat();
+        vIn.y = random.nextFloat();
+        vIn.z = random.nextFloat();
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        for (int r = 0; r < 4; r++) {
+            for (int c = 0; c < 4; c++) {
+                nestedA.m[r][c] = matA.m[r * 4 + c];
+                nestedB.m[r][c] = matB.m[r * 4 + c];
+            }
+        }
+    }
+
+    @Benchmark
+    public vec3d MultiplyVector() {
+        return MatrixMultiplyVector(matB, vIn);
+    }
+
+    @Benchmark
+    public vec3d MultiplyVectorInto() {
+        return MatrixMultiplyVector(matB, vIn, vOut);
+    }
+
+    @Benchmark
+    public mat4x4 MultiplyMatrix() {
+        return MatrixMultiplyMatrix(matA, matB);
+    }
+
+    @Benchmark
+    public mat4x4 MultiplyMatrixInto() {
+        return MatrixMultiplyMatrix(matA, matB, matOut);
+    }
+
+    @Benchmark
+    public nestedMat4x4 MultiplyMatrixNested() {
+        return NestedMultiplyMatrix(nestedA, nestedB);
+    }
+
+    /* matA is a rotation and translation, what the quick inverse is for */
+    @Benchmark
+    public mat4x4 QuickInverse() {
+        return MatrixQuickInverse(matA);
+    }
+
+    @Benchmark
+    public mat4x4 QuickInverseInto() {
+        return MatrixQuickInverse(matA, matOut);
+    }
+
+    @Benchmark
+    public nestedMat4x4 QuickInverseNested() {
+        return NestedQuickInverse(nestedA);
+    }
+
+    @Benchmark
+    public mat4x4 InverseInto() {
+        return MatrixInverse(matB, matOut);
+    }
+
+    /* Scored per point */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public float[] TransformPoints() {
+        MatrixTransformPoints(matB, points, transformed, POINTS);
+        return transformed;
+    }
+
+    /* The original mat4x4 */
+    public static final class nestedMat4x4 {
+        public float[][] m = new float[4][4];
+    }
+
+    /* The original MatrixMultiplyMatrix */
+    private static nestedMat4x4 NestedMultiplyMatrix(nestedMat4x4 m1, nestedMat4x4 m2) {
+        nestedMat4x4 matrix = new nestedMat4x4();
+        for (int c = 0; c < 4; c++) {
+            for (int r = 0; r < 4; r++) {
+                matrix.m[r][c] = m1.m[r][0] * m2.m[0][c] + m1.m[r][1] * m2.m[1][c] + m1.m[r][2] * m2.m[2][c] + m1.m[r][3] * m2.m[3][c];
+            }
+        }
+        return matrix;
+    }
+
+    /* The original MatrixQuickInverse */
+    private static nestedMat4x4 NestedQuickInverse(nestedMat4x4 m) {
+        nestedMat4x4 matrix = new nestedMat4x4();
+        matrix.m[0][0] = m.m[0][0]; matrix.m[0][1] = m.m[1][0]; matrix.m[0][2] = m.m[2][0]; matrix.m[0][3] = 0.0f;
+        matrix.m[1][0] = m.m[0][1]; matrix.m[1][1] = m.m[1][1]; matrix.m[1][2] = m.m[2][1]; matrix.m[1][3] = 0.0f;
+        matrix.m[2][0] = m.m[0][2]; matrix.m[2][1] = m.m[1][2]; matrix.m[2][2] = m.m[2][2]; matrix.m[2][3] = 0.0f;
+        matrix.m[3][0] = -(m.m[3][0] * matrix.m[0][0] + m.m[3][1] * matrix.m[1][0] + m.m[3][2] * matrix.m[2][0]);
+        matrix.m[3][1] = -(m.m[3][0] * matrix.m[0][1] + m.m[3][1] * matrix.m[1][1] + m.m[3][2] * matrix.m[2][1]);
+        matrix.m[3][2] = -(m.m[3][0] * matrix.m[0][2] + m.m[3][1] * matrix.m[1][2] + m.m[3][2] * matrix.m[2][2]);
+        matrix.m[3][3] = 1.0f;
+        return matrix;
+    }
+}
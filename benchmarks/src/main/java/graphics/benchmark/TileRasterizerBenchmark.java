@@ -0,0 +1,67 @@
+package graphics.benchmark;
+
+import graphics.render.FrameBuffer;
+import graphics.render.TileRasterizer;
+import graphics.render.TriangleBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/* How the tile rasterizer scales with threads, one frame of randomly placed triangles filled and
+   outlined per operation. threads 0 is one per core, compare the scores against threads 1 for the
+   speedup */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TileRasterizerBenchmark {
+    @Param({"1", "2", "4", "8", "0"})
+    public int threads;
+
+    @Param({"3840x2160"})
+    public String size;
+
+    @Param({"50000"})
+    public int triangles;
+
+    private ForkJoinPool pool;
+    private TileRasterizer rasterizer;
+    private TriangleBuffer scene;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]), height = Integer.parseInt(dimensions[1]);
+        pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        rasterizer = new TileRasterizer(new FrameBuffer(width, height), pool);
+        scene = MakeScene(width, height, triangles, new Random(42));
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void Draw() {
+        rasterizer.Draw(scene, 0, 0x202020, 0xffffff);
+    }
+
+    /* Randomly placed triangles between 4 and 36 pixels across at random depths */
+    private static TriangleBuffer MakeScene(int width, int height, int nTriangles, Random random) {
+        TriangleBuffer triangles = new TriangleBuffer(nTriangles);
+        for (int i = 0; i < nTriangles; i++) {
+            float cx = random.nextFloat() * width, cy = random.nextFloat() * height;
+            float size = 2 + random.nextFloat() * 16;
+            float z = random.nextFloat();
+            triangles.Add(cx, cy - size, z,
+                    cx + size, cy + size, z,
+                    cx - size, cy + size * random.nextFloat(), z);
+        }
+        return triangles;
+    }
+}
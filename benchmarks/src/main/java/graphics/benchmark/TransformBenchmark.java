@@ -0,0 +1,87 @@
+package graphics.benchmark;
+
+import graphics.render.BatchTransform;
+import graphics.render.Camera;
+import graphics.render.GeometryStage;
+import graphics.render.TriangleBuffer;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static graphics.utility.MatrixUtil.*;
+
+/* The scalar and Vector API BatchTransform back ends side by side. Transform is the kernel alone on
+   a batch of vertices around the view, clip space, outcodes and divide. Geometry is the whole
+   GeometryStage on the spinning mesh, backface test, gather, transform and triangle assembly, run
+   on the calling thread. The mesh path is relative to the repository root */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class TransformBenchmark {
+    @Param({"scalar", "vector"})
+    public String backend;
+
+    @Param({"4096"})
+    public int vertices;
+
+    @Param({"src/graphics/resources/teapot.obj"})
+    public String objFile;
+
+    private final mat4x4 matProj = MatrixMakeProjection(90.0f, 1.0f, 0.1f, 1000.0f);
+    private final mat4x4 matView = new mat4x4(), matWorld = new mat4x4(), matRotation = new mat4x4(), matTranslation = new mat4x4();
+    private final Camera camera = new Camera();
+    private final TriangleBuffer out = new TriangleBuffer();
+    private ForkJoinPool workers;
+    private BatchTransform batch;
+    private GeometryStage geometryStage;
+    private mesh meshObj;
+    private float fTheta;
+
+    @Setup(Level.Trial)
+    public void Setup() {
+        batch = BatchTransform.New(GeometryStage.NewClipper(), backend);
+        batch.Reserve(vertices);
+        Random random = new Random(1);
+        for (int i = 0; i < vertices; i++) {
+            batch.x[i] = random.nextFloat() * 4.0f - 2.0f;
+            batch.y[i] = random.nextFloat() * 4.0f - 2.0f;
+            batch.z[i] = random.nextFloat() * 4.0f;
+        }
+
+        meshObj = new mesh();
+        if (!meshObj.LoadFromObjectFile(objFile)) {
+            throw new IllegalStateException("could not load " + objFile + ", run from the repository root or pass -p objFile=<path>");
+        }
+        workers = new ForkJoinPool(1);
+        geometryStage = new GeometryStage(workers, 500, 500, matProj, Integer.MAX_VALUE, backend);
+        camera.Set(0.0f, 0.0f, -3.0f, 0.0f);
+        camera.ViewMatrix(matView);
+        MatrixMakeTranslation(0.0f, -1.0f, 5.0f, matTranslation);
+    }
+
+    @TearDown(Level.Trial)
+    public void TearDown() {
+        workers.shutdown();
+    }
+
+    @Benchmark
+    public int Transform() {
+        batch.Transform(vertices, matProj, 500.0f, 500.0f);
+        return batch.codes[vertices - 1];
+    }
+
+    @Benchmark
+    public int Geometry() {
+        fTheta += 0.01f;
+        MatrixMultiplyMatrix(MatrixMakeRotationY(fTheta, matRotation), matTranslation, matWorld);
+        geometryStage.Process(meshObj, matWorld, matView, camera.vPosition, out);
+        return out.count;
+    }
+}
@@ -0,0 +1,39 @@
+package graphics;
+
+import java.util.concurrent.locks.LockSupport;
+
+/* Holds a loop to a fixed frame rate without burning a core. LockSupport.parkNanos can wake up a
+   good fraction of a millisecond late, so Wait parks until SPIN_NANOS before the deadline and spins
+   only the rest. Deadlines advance by whole frames from the start, so an early or late frame doesn't
+   shift the ones after it, but a loop more than a frame behind starts over rather than rushing */
+public class FramePacer {
+    private static final long SPIN_NANOS = 500000L;
+
+    private final long frameNanos;
+    private long deadline;
+
+    /* fps of 0 or less means uncapped, Wait returns at once */
+    public FramePacer(double fps) {
+        this.frameNanos = fps > 0.0 ? (long) (1e9 / fps) : 0;
+        this.deadline = System.nanoTime();
+    }
+
+    public void Wait() {
+        if (frameNanos == 0) {
+            return;
+        }
+        deadline += frameNanos;
+        long now = System.nanoTime();
+        if (now - deadline > frameNanos) {
+            deadline = now;
+            return;
+        }
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > SPIN_NANOS) {
+            LockSupport.parkNanos(remaining - SPIN_NANOS);
+        }
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
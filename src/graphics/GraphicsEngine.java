@@ -1,16 +1,36 @@
 package graphics;
 
+import graphics.input.Action;
+import graphics.input.Bindings;
+import graphics.input.Input;
+import graphics.input.InputSnapshot;
+import graphics.lod.LodChain;
+import graphics.metrics.FrameMetrics;
+import graphics.metrics.MetricsOverlay;
+import graphics.metrics.Stage;
+import graphics.render.Camera;
+import graphics.render.RenderMode;
+import graphics.render.RenderPipeline;
+import graphics.render.Renderer;
+import graphics.render.ShadeMode;
+import graphics.render.Timeline;
+import graphics.scene.InstanceGrid;
+import graphics.scene.Scene;
 import graphics.structures.*;
 
 import java.awt.*;
-import java.awt.event.KeyEvent;
 import java.awt.image.BufferStrategy;
-import java.util.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.JFrame;
 import javax.swing.ImageIcon;
 
 import static graphics.utility.VectorUtil.*;
-import static graphics.utility.MatrixUtil.*;
 
 public class GraphicsEngine extends Canvas implements Runnable {
     private static final int WIDTH = 500;
@@ -18,30 +38,107 @@ public class GraphicsEngine extends Canvas implements Runnable {
     private final JFrame renderWindow;
 
     private Thread thread;
-    private boolean active = false;
+    private volatile boolean active = false;
 
-    private vec3d vCamera = new vec3d(0.0f, 0.0f, 0.0f);
-    private vec3d vLookDir = new vec3d(0.0f, 0.0f, 1.0f);
-
-    private static mat4x4 matProj; /* Projection matrix */
-    private float fYaw;
+    /* Simulation state, advanced in fixed steps. The previous step is kept so frames can be drawn
+       at any point between the two */
+    private final Camera camera = new Camera();
     private float fTheta;
+    private final vec3d vPreviousPosition = new vec3d(0.0f, 0.0f, 0.0f);
+    private float fPreviousYaw, fPreviousPitch, fPreviousTheta;
+
+    /* Simulation steps per second, fixed so movement doesn't depend on the frame rate */
+    private static final long TICK_NANOS = 1000000000L / 120;
+
+    /* Simulated seconds per real second. The loop used to advance 0.01 per frame at 144 fps and the
+       control speeds were tuned to that */
+    private static final float TIME_SCALE = 1.44f;
+
+    /* After a stall, a GC or the window being dragged, simulation time beyond this is dropped rather than replayed */
+    private static final long MAX_FRAME_NANOS = 250000000L;
+
+    /* Frame rate cap, -Dgraphics.fps, 0 draws as fast as possible */
+    static final double TARGET_FPS = Double.parseDouble(System.getProperty("graphics.fps", "144"));
+
+    /* -Dgraphics.renderahead=true presents each frame from another thread while the next one renders */
+    static final boolean RENDER_AHEAD = Boolean.getBoolean("graphics.renderahead");
+
+    /* -Dgraphics.pipeline=<depth> draws and presents on another thread while the next frame's geometry
+       runs, with up to depth frames in flight. Presenting is then already off the render thread, so
+       this takes the place of render ahead */
+    static final int PIPELINE_DEPTH = Integer.getInteger("graphics.pipeline", 0);
+
+    /* Back end chosen with -Dgraphics.renderer=painter|zbuffer|tiled. The tiled rasterizer and
+       geometry stage share -Dgraphics.threads workers, defaulting to one per core */
+    static final RenderMode RENDER_MODE = RenderMode.valueOf(System.getProperty("graphics.renderer", "tiled").toUpperCase());
+    static final int THREADS = Integer.getInteger("graphics.threads", Runtime.getRuntime().availableProcessors());
+
+    /* -Dgraphics.shading=wireframe|flat|gouraud */
+    static final ShadeMode SHADING = ShadeMode.valueOf(System.getProperty("graphics.shading", "gouraud").toUpperCase());
+
+    /* Copies of the mesh to lay out, -Dgraphics.instances */
+    static final int INSTANCES = Integer.getInteger("graphics.instances", 1);
+
+    /* Simplified levels picked by screen size, -Dgraphics.lod=false draws full detail always */
+    static final boolean USE_LOD = !"false".equals(System.getProperty("graphics.lod"));
+
+    /* -Dgraphics.occlusion=false draws instances hidden behind others too */
+    static final boolean OCCLUSION = !"false".equals(System.getProperty("graphics.occlusion"));
 
-    /* Object to be rendered */
+    /* -Dgraphics.record=<file> saves the camera and spin of every frame drawn as a Timeline on exit,
+       -Dgraphics.replay=<file> draws a saved one over and over in place of the controls. Either can
+       be replayed headless with HeadlessRenderer --timeline or RegressionHarness */
+    static final String RECORD = System.getProperty("graphics.record");
+    static final String REPLAY = System.getProperty("graphics.replay");
+
+    private final Renderer renderer = new Renderer(WIDTH, HEIGHT, RENDER_MODE, SHADING, new ForkJoinPool(THREADS));
+
+    /* Point light carried along with the camera, on top of the renderer's directional light */
+    private final int headlamp = renderer.lighting.AddPoint(0.0f, 0.0f, 0.0f, 0.5f, 5.0f);
+
+    /* Frame timing is always recorded and published over JMX, F3 or -Dgraphics.overlay=true shows it on screen */
+    private final FrameMetrics metrics = renderer.metrics.Register();
+    private final MetricsOverlay overlay = new MetricsOverlay(metrics);
+
+    /* Keys bound with -Dgraphics.keys.<action>, dragging the mouse looks around at
+       -Dgraphics.mouse.sensitivity radians per pixel, negative to invert */
+    private final Input input = new Input(Bindings.FromProperties());
+    static final float MOUSE_SENSITIVITY = Float.parseFloat(System.getProperty("graphics.mouse.sensitivity", "0.005"));
+
+    /* Object to be rendered, shared by every instance in the scene */
     private static final mesh meshObj = new mesh();
+    private final Scene scene = new Scene();
+    private final InstanceGrid grid;
+
+    /* Per frame scratch state, reused so steady state rendering allocates nothing */
+    private final vec3d vForward = new vec3d(0.0f, 0.0f, 0.0f);
+    private final mat4x4 matWorld = new mat4x4(), matView = new mat4x4();
+    private final Camera renderCamera = new Camera();
+    private Presenter presenter;
+    private RenderPipeline pipeline;
 
-    GraphicsEngine() {
+    private final Timeline recording = RECORD == null ? null : new Timeline();
+    private final Timeline replay;
+    private int nReplayFrame;
+
+    GraphicsEngine() throws IOException {
         this.renderWindow = new JFrame();
         this.renderWindow.setPreferredSize(new Dimension(WIDTH, HEIGHT));
 
         meshObj.LoadFromObjectFile("./src/graphics/resources/teapot.obj");
         // meshObj.LoadFromObjectFile("./src/graphics/resources/magnolia.obj");
 
-        matProj = MatrixMakeProjection(90.0f, (float)HEIGHT / (float)WIDTH, 0.1f, 1000.0f);
-
+        grid = new InstanceGrid(meshObj, USE_LOD ? LodChain.Build(meshObj) : null, INSTANCES);
+        scene.root.AddChild(grid.group);
+        renderer.SetOcclusionCulling(OCCLUSION);
+        overlay.visible = Boolean.getBoolean("graphics.overlay");
+        replay = REPLAY == null ? null : Timeline.Load(Paths.get(REPLAY));
+        if (replay != null && replay.FrameCount() == 0) {
+            throw new IOException(REPLAY + ": no frames");
+        }
     }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         GraphicsEngine window = new GraphicsEngine();
         window.renderWindow.add(window);
         window.renderWindow.pack();
@@ -49,11 +146,23 @@ public class GraphicsEngine extends Canvas implements Runnable {
         window.renderWindow.setResizable(false);
         window.renderWindow.setVisible(true);
         window.renderWindow.setIconImage(new ImageIcon("./src/graphics/resources/icon.png").getImage()); /* Replace JFrame icon with transparent 1x1 pixel */
+        window.input.Attach(window.renderWindow, window);
+        if (window.recording != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(window::SaveRecording, "GraphicsEngineRecording"));
+        }
         window.start();
     }
 
     public synchronized void start() {
         active = true;
+        if (PIPELINE_DEPTH > 0) {
+            pipeline = new RenderPipeline(renderer, PIPELINE_DEPTH, (frameBuffer, frame) -> Show(frameBuffer.image));
+        } else if (RENDER_AHEAD) {
+            presenter = new Presenter();
+            Thread presenterThread = new Thread(presenter, "GraphicsEnginePresenter");
+            presenterThread.setDaemon(true);
+            presenterThread.start();
+        }
         this.thread = new Thread(this, "GraphicsEngineWindow");
         this.thread.start();
     }
@@ -67,255 +176,180 @@ public class GraphicsEngine extends Canvas implements Runnable {
         }
     }
 
+    /* Catch the simulation up to real time in fixed steps, then draw one frame interpolated between
+       the last two steps however many it took, and sleep until the next frame is due */
     @Override
     public void run() {
-        long lastTime = System.nanoTime();
-        final double ns = 1000000000.0 / 144.0; /* run at 144fps */
-        float delta = 0;
-        while(active) {
+        FramePacer pacer = new FramePacer(TARGET_FPS);
+        long lastTime = System.nanoTime(), accumulator = 0;
+        while (active) {
             long now = System.nanoTime();
-            delta += (now - lastTime) / ns;
+            accumulator += Math.min(now - lastTime, MAX_FRAME_NANOS);
             lastTime = now;
-            while(delta >= 1){
-                render(0.01f);
-                delta--;
+
+            /* Pipelined frames are recorded by the pipeline once presented */
+            if (pipeline == null) {
+                metrics.BeginFrame();
             }
+            while (accumulator >= TICK_NANOS) {
+                update(TICK_NANOS / 1e9f * TIME_SCALE);
+                accumulator -= TICK_NANOS;
+            }
+            try {
+                render(accumulator / (float) TICK_NANOS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (pipeline == null) {
+                metrics.EndFrame();
+            }
+
+            pacer.Wait();
         }
-        stop();
     }
 
-    private void render(float fElapsedTime) {
+    /* One simulation step of fElapsedTime */
+    private void update(float fElapsedTime) {
+        vPreviousPosition.x = camera.vPosition.x;
+        vPreviousPosition.y = camera.vPosition.y;
+        vPreviousPosition.z = camera.vPosition.z;
+        fPreviousYaw = camera.fYaw;
+        fPreviousPitch = camera.fPitch;
+        fPreviousTheta = fTheta;
+
+        /* Controls, turning first and then refreshing vLookDir so the step goes the new way */
+        InputSnapshot controls = input.Poll();
+        camera.fYaw -= controls.LookX() * MOUSE_SENSITIVITY;
+        camera.fPitch = Math.max(-Camera.MAX_PITCH, Math.min(Camera.MAX_PITCH, camera.fPitch - controls.LookY() * MOUSE_SENSITIVITY));
+
+        if (controls.Held(Action.TURN_LEFT)) {
+            camera.fYaw += 2.0 * fElapsedTime;
+        }
+
+        if (controls.Held(Action.TURN_RIGHT)) {
+            camera.fYaw -= 2.0 * fElapsedTime;
+        }
 
-        /* Controls */
-        vec3d vForward = VectorMul(vLookDir, 8.0f * fElapsedTime);
+        camera.ViewMatrix(matView);
+        vec3d vCamera = camera.vPosition;
+        vec3d vForward = VectorMul(camera.vLookDir, 8.0f * fElapsedTime, this.vForward);
 
-        if (Keyboard.isKeyPressed(KeyEvent.VK_UP)) {
+        if (controls.Held(Action.RISE)) {
             vCamera.y -= 8.0f * fElapsedTime;
         }
 
-        if (Keyboard.isKeyPressed(KeyEvent.VK_DOWN)) {
+        if (controls.Held(Action.SINK)) {
             vCamera.y += 8.0f * fElapsedTime;
         }
 
-        if (Keyboard.isKeyPressed(KeyEvent.VK_W)) {
-            vCamera = VectorAdd(vCamera, vForward);
+        if (controls.Held(Action.FORWARD)) {
+            VectorAdd(vCamera, vForward, vCamera);
         }
 
-        if (Keyboard.isKeyPressed(KeyEvent.VK_S)) {
-            vCamera = VectorSub(vCamera, vForward);
+        if (controls.Held(Action.BACK)) {
+            VectorSub(vCamera, vForward, vCamera);
         }
 
-        if (Keyboard.isKeyPressed(KeyEvent.VK_A)) {
-            fYaw += 2.0 * fElapsedTime;
+        if (controls.Pressed(Action.TOGGLE_OVERLAY)) {
+            overlay.visible = !overlay.visible;
         }
 
-        if (Keyboard.isKeyPressed(KeyEvent.VK_D)) {
-            fYaw -= 2.0 * fElapsedTime;
+        /* Spin the model */
+        fTheta += fElapsedTime;
+    }
+
+    /* Draw the simulation fAlpha of the way from the previous step to the current one */
+    private void render(float fAlpha) throws InterruptedException {
+        float fFrameTheta;
+        if (replay != null) {
+            fFrameTheta = replay.Apply(nReplayFrame++ % replay.FrameCount(), renderCamera);
+        } else {
+            renderCamera.Set(Lerp(vPreviousPosition.x, camera.vPosition.x, fAlpha),
+                    Lerp(vPreviousPosition.y, camera.vPosition.y, fAlpha),
+                    Lerp(vPreviousPosition.z, camera.vPosition.z, fAlpha),
+                    Lerp(fPreviousYaw, camera.fYaw, fAlpha),
+                    Lerp(fPreviousPitch, camera.fPitch, fAlpha));
+            fFrameTheta = Lerp(fPreviousTheta, fTheta, fAlpha);
+        }
+        if (recording != null) {
+            recording.Record(renderCamera, fFrameTheta);
         }
+        grid.Animate(renderer.MakeWorldMatrix(fFrameTheta, matWorld));
+        renderer.lighting.Move(headlamp, renderCamera.vPosition.x, renderCamera.vPosition.y, renderCamera.vPosition.z);
 
-        BufferStrategy bufferStrategy = this.getBufferStrategy();
-        if(bufferStrategy == null) {
-            this.createBufferStrategy(3);
+        if (pipeline != null) {
+            pipeline.Submit(scene, renderCamera);
             return;
         }
+        renderer.RenderFrame(scene, renderCamera);
 
-        Graphics graphics = bufferStrategy.getDrawGraphics();
-        graphics.setColor(Color.BLACK);
-        graphics.fillRect(0, 0, WIDTH, HEIGHT);
-
-        /* Rotation matrices */
-        mat4x4 matRotZ, matRotX;
-        fTheta += fElapsedTime;
-
-        matRotZ = MatrixMakeRotationZ(fTheta * 0.5f);
-        matRotX = MatrixMakeRotationX(fTheta);
-
-        mat4x4 matWorld;
-        mat4x4 matTrans = MatrixMakeTranslation(0.0f, 0.0f, 5.0f);
-
-        matWorld = MatrixMultiplyMatrix(matRotZ, matRotX); /* Apply rotation matrices */
-        matWorld = MatrixMultiplyMatrix(matWorld, matTrans); /* Apply translation matrices */
-
-        vec3d vUp = new vec3d(0.0f, 1.0f, 0.0f);
-        vec3d vTarget = new vec3d(0.0f, 0.0f, 1.0f);
-
-        mat4x4 matCameraRot = MatrixMakeRotationY(fYaw);
-        vLookDir = MatrixMultiplyVector(matCameraRot, vTarget);
-
-        vTarget = VectorAdd(vCamera, vLookDir);
-
-        mat4x4 matCamera = MatrixPointAt(vCamera, vTarget, vUp);
-
-        mat4x4 matView = MatrixQuickInverse(matCamera);
-
-        Vector<triangle> vecTrianglesToRaster = new Vector<>();
-
-        /* Loop to project triangles */
-        for(triangle tri : meshObj.tris) {
-
-            triangle triProjected = new triangle(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f));
-            triangle triTransformed = new triangle(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f));
-            triangle triViewed = new triangle(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f));
-
-
-            triTransformed.points[0] = MatrixMultiplyVector(matWorld, tri.points[0]);
-            triTransformed.points[1] = MatrixMultiplyVector(matWorld, tri.points[1]);
-            triTransformed.points[2] = MatrixMultiplyVector(matWorld, tri.points[2]);
-
-            /* Calculate normal of triangles */
-            vec3d normal, line1, line2;
-
-            line1 = VectorSub(triTransformed.points[1], triTransformed.points[0]);
-            line2 = VectorSub(triTransformed.points[2], triTransformed.points[0]);
-
-            normal = VectorCrossProduct(line1, line2);
-            normal = VectorNormalize(normal);
-
-            vec3d vCameraRay = VectorSub(triTransformed.points[0], vCamera);
-
-            /* Draw triangles facing the camera only */
-            if(VectorDotProduct(normal, vCameraRay) < 0.0f) {
-
-                /* Convert world space -> view space */
-                triViewed.points[0] = MatrixMultiplyVector(matView, triTransformed.points[0]);
-                triViewed.points[1] = MatrixMultiplyVector(matView, triTransformed.points[1]);
-                triViewed.points[2] = MatrixMultiplyVector(matView, triTransformed.points[2]);
-
-                /* Clip viewed triangles against near plane */
-                int nClippedTriangles;
-                triangle triClip1 = new triangle();
-                triangle triClip2 = new triangle();
-                triangle[] triClipped = TriangleClipAgainstPlane(new vec3d(0.0f, 0.0f, 0.1f), new vec3d(0.0f, 0.0f, 1.0f), triViewed, triClip1, triClip2);
-                nClippedTriangles = triClipped.length;
-
-                for (int n = 0; n < nClippedTriangles; n++) {
-                    /* Project 3D triangles -> 2D */
-                    triProjected.points[0] = MatrixMultiplyVector(matProj, triClipped[n].points[0]);
-                    triProjected.points[1] = MatrixMultiplyVector(matProj, triClipped[n].points[1]);
-                    triProjected.points[2] = MatrixMultiplyVector(matProj, triClipped[n].points[2]);
-
-                    triProjected.points[0] = VectorDiv(triProjected.points[0], triProjected.points[0].w);
-                    triProjected.points[1] = VectorDiv(triProjected.points[1], triProjected.points[1].w);
-                    triProjected.points[2] = VectorDiv(triProjected.points[2], triProjected.points[2].w);
-
-                    /* Scale to view */
-                    vec3d vOffsetView = new vec3d(1, 1, 0);
-                    triProjected.points[0] = VectorAdd(triProjected.points[0], vOffsetView);
-                    triProjected.points[1] = VectorAdd(triProjected.points[1], vOffsetView);
-                    triProjected.points[2] = VectorAdd(triProjected.points[2], vOffsetView);
-
-                    triProjected.points[0].x *= 0.5f * (float) WIDTH; triProjected.points[0].y *= 0.5f * (float) HEIGHT;
-                    triProjected.points[1].x *= 0.5f * (float) WIDTH; triProjected.points[1].y *= 0.5f * (float) HEIGHT;
-                    triProjected.points[2].x *= 0.5f * (float) WIDTH; triProjected.points[2].y *= 0.5f * (float) HEIGHT;
-
-                    /* Create vector of all triangles */
-                    vecTrianglesToRaster.add(triProjected);
-                }
-            }
+        metrics.StageStart(Stage.PRESENT);
+        if (presenter != null) {
+            presenter.Submit(renderer.frameBuffer.pixels);
+        } else {
+            Show(renderer.frameBuffer.image);
         }
+        metrics.StageEnd(Stage.PRESENT);
+    }
 
-        /* Sort triangles by average Z value */
-        vecTrianglesToRaster.sort(new TriangleComparator());
-
-        /* Loop to draw triangles */
-        for (triangle triToRaster : vecTrianglesToRaster) {
-            /* Clip triangles against edges of viewing window */
-            triangle[] triClipped = new triangle[2];
-            Queue<triangle> listTriangles = new LinkedList<>();
-
-            /* Add initial triangle */
-            listTriangles.add(triToRaster);
-            int nNewTriangles = 1;
-            for (int i = 0; i < 4; i++) {
-                int nTrisToAdd = 0;
-                while (nNewTriangles > 0) {
-                    triangle triClip1 = new triangle();
-                    triangle triClip2 = new triangle();
-
-                    triangle front = listTriangles.peek();
-                    listTriangles.poll();
-                    nNewTriangles = nNewTriangles - 1;
-                    /* For each window boarder */
-                    switch(i) {
-                        case 0: triClipped = TriangleClipAgainstPlane(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 1.0f, 0.0f), front, triClip1, triClip2);
-                                nTrisToAdd = triClipped.length;
-                                break;
-                        case 1: triClipped = TriangleClipAgainstPlane(new vec3d(0.0f, (float)HEIGHT - 1, 0.0f), new vec3d(0.0f, -1.0f, 0.0f), front, triClip1, triClip2);
-                                nTrisToAdd = triClipped.length;
-                                break;
-                        case 2: triClipped = TriangleClipAgainstPlane(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(1.0f, 0.0f, 0.0f), front, triClip1, triClip2);
-                                nTrisToAdd = triClipped.length;
-                                break;
-                        case 3: triClipped = TriangleClipAgainstPlane(new vec3d((float)WIDTH - 1, 0.0f, 0.0f), new vec3d(-1.0f, 0.0f, 0.0f), front, triClip1, triClip2);
-                                nTrisToAdd = triClipped.length;
-                                break;
-                    }
-                    listTriangles.addAll(Arrays.asList(triClipped).subList(0, nTrisToAdd));
-                }
-                nNewTriangles = listTriangles.size();
-            }
-
-            for(triangle tri: listTriangles) {
-
-                /* Draw outline of triangle */
-                DrawTriangle((int) tri.points[0].x, (int) tri.points[0].y,
-                        (int) tri.points[1].x, (int) tri.points[1].y,
-                        (int) tri.points[2].x, (int) tri.points[2].y,
-                        graphics, Color.WHITE);
-
-                /* Draw filled triangle */
-                FillTriangle((int) tri.points[0].x, (int) tri.points[0].y,
-                        (int) tri.points[1].x, (int) tri.points[1].y,
-                        (int) tri.points[2].x, (int) tri.points[2].y,
-                        graphics, Color.BLACK);
-            }
-
+    /* Stop drawing first so the timeline isn't being appended to while it is written */
+    private void SaveRecording() {
+        stop();
+        try {
+            recording.Save(Paths.get(RECORD));
+            System.err.println("Recorded " + recording.FrameCount() + " frames to " + RECORD);
+        } catch (IOException e) {
+            System.err.println(e);
         }
+    }
 
+    private void Show(BufferedImage image) {
+        BufferStrategy bufferStrategy = this.getBufferStrategy();
+        if (bufferStrategy == null) {
+            this.createBufferStrategy(3);
+            return;
+        }
+        Graphics graphics = bufferStrategy.getDrawGraphics();
+        graphics.drawImage(image, 0, 0, null);
+        overlay.Draw(graphics);
         graphics.dispose();
         bufferStrategy.show();
     }
 
-    /* Draw graphics */
-    private void DrawTriangle(int x1, int y1, int x2, int y2, int x3, int y3, Graphics g, Color c) {
-        g.setColor(c);
-        g.drawLine(x1, y1, x2, y2);
-        g.drawLine(x2, y2, x3, y3);
-        g.drawLine(x3, y3, x1, y1);
+    private static float Lerp(float a, float b, float t) {
+        return a + (b - a) * t;
     }
 
-    private void FillTriangle(int x1, int y1, int x2, int y2, int x3, int y3, Graphics g, Color c) {
-        g.setColor(c);
-        g.fillPolygon(new int[]{x1, x2, x3}, new int[]{y1, y2, y3}, 3);
-    }
-
-    /* Utility */
-    static class TriangleComparator implements Comparator<triangle> {
-        @Override
-        public int compare(triangle t1, triangle t2) {
-            float z1 = (t1.points[0].z + t1.points[1].z + t1.points[2].z) / 3.0f;
-            float z2 = (t2.points[0].z + t2.points[1].z + t2.points[2].z) / 3.0f;
+    /* Shows finished frames from its own thread, so the next frame renders while this one is being
+       presented. Two images cycle between the render thread and the presenter, which bounds how far
+       rendering can run ahead to one frame */
+    private class Presenter implements Runnable {
+        private final BlockingQueue<BufferedImage> free = new ArrayBlockingQueue<>(2), ready = new ArrayBlockingQueue<>(1);
 
-            return Float.compare(z2, z1);
+        Presenter() {
+            for (int i = 0; i < 2; i++) {
+                free.add(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB));
+            }
         }
-    }
-
-    static class Keyboard {
 
-        private static final Map<Integer, Boolean> pressedKeys = new HashMap<>();
-
-        static {
-            KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(event -> {
-                synchronized (Keyboard.class) {
-                    if (event.getID() == KeyEvent.KEY_PRESSED) pressedKeys.put(event.getKeyCode(), true);
-                    else if (event.getID() == KeyEvent.KEY_RELEASED) pressedKeys.put(event.getKeyCode(), false);
-                    return false;
-                }
-            });
+        /* Copy the finished frame into a free image and queue it, waiting while the presenter is a frame behind */
+        void Submit(int[] pixels) throws InterruptedException {
+            BufferedImage image = free.take();
+            System.arraycopy(pixels, 0, ((DataBufferInt) image.getRaster().getDataBuffer()).getData(), 0, pixels.length);
+            ready.put(image);
         }
 
-        public static boolean isKeyPressed(int keyCode) {
-            return pressedKeys.getOrDefault(keyCode, false);
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    BufferedImage image = ready.take();
+                    Show(image);
+                    free.put(image);
+                }
+            } catch (InterruptedException e) {
+                /* Shutting down */
+            }
         }
     }
 
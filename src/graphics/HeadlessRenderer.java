@@ -0,0 +1,338 @@
+package graphics;
+
+import graphics.lod.LodChain;
+import graphics.metrics.FrameMetrics;
+import graphics.metrics.RingHistogram;
+import graphics.metrics.Stage;
+import graphics.render.BatchTransform;
+import graphics.render.Camera;
+import graphics.render.CameraPath;
+import graphics.render.FrameBuffer;
+import graphics.render.RenderPipeline;
+import graphics.render.RenderMode;
+import graphics.render.Renderer;
+import graphics.render.ShadeMode;
+import graphics.render.Timeline;
+import graphics.scene.InstanceGrid;
+import graphics.scene.Scene;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+
+import javax.imageio.ImageIO;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/* Renders a fixed number of frames of an OBJ into an offscreen frame buffer, with no window and
+   no display required. Frames can be written as PNG or raw RGBA files, or streamed as raw RGBA to
+   stdout. Per-frame timings go to stderr so they never mix with streamed frames */
+public class HeadlessRenderer {
+    private static final String USAGE = String.join("\n",
+            "usage: HeadlessRenderer --obj <file> [options]",
+            "  --frames <n>         frames to render (default 100, or the whole --timeline)",
+            "  --instances <n>      copies of the mesh on a grid, sharing its data (default 1)",
+            "  --lod                build simplified levels of the mesh and pick one per instance by screen size",
+            "  --no-occlusion       draw instances hidden behind others too",
+            "  --size <w>x<h>       frame size (default 500x500)",
+            "  --renderer <mode>    painter, zbuffer or tiled (default tiled)",
+            "  --shading <mode>     wireframe, flat or gouraud (default gouraud)",
+            "  --threads <n>        worker threads (default one per core)",
+            "  --pipeline <depth>   draw and write each frame on a second thread while the next one's geometry runs,",
+            "                       with up to depth frames in flight (default off)",
+            "  --camera <file>      camera keyframes, \"frame x y z yaw\" per line (default fixed at the origin)",
+            "  --dt <seconds>       model spin per frame (default 0.01, as in the interactive engine)",
+            "  --timeline <file>    replay camera and spin from a timeline recorded with -Dgraphics.record or",
+            "                       --record, in place of --camera and --dt",
+            "  --record <file>      save the camera and spin of every frame drawn as a timeline",
+            "  --out <dir>          write each frame into dir",
+            "  --format <png|raw>   file format for --out (default png)",
+            "  --stdout             stream raw RGBA frames to stdout",
+            "  --timings            print every frame time, not just the summary");
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        String objFile = null, outDir = null, format = "png";
+        File cameraFile = null, timelineFile = null, recordFile = null;
+        int frames = -1, instances = 1, width = 500, height = 500, pipelineDepth = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        RenderMode renderMode = RenderMode.TILED;
+        ShadeMode shading = ShadeMode.GOURAUD;
+        float dt = 0.01f;
+        boolean toStdout = false, printTimings = false, useLod = false, occlusion = true;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--obj": objFile = args[++i]; break;
+                    case "--frames": frames = Integer.parseInt(args[++i]); break;
+                    case "--instances": instances = Integer.parseInt(args[++i]); break;
+                    case "--lod": useLod = true; break;
+                    case "--no-occlusion": occlusion = false; break;
+                    case "--size": {
+                        String[] size = args[++i].toLowerCase(Locale.ROOT).split("x");
+                        width = Integer.parseInt(size[0]);
+                        height = Integer.parseInt(size[1]);
+                        break;
+                    }
+                    case "--renderer": renderMode = RenderMode.valueOf(args[++i].toUpperCase(Locale.ROOT)); break;
+                    case "--shading": shading = ShadeMode.valueOf(args[++i].toUpperCase(Locale.ROOT)); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--pipeline": pipelineDepth = Integer.parseInt(args[++i]); break;
+                    case "--camera": cameraFile = new File(args[++i]); break;
+                    case "--dt": dt = Float.parseFloat(args[++i]); break;
+                    case "--timeline": timelineFile = new File(args[++i]); break;
+                    case "--record": recordFile = new File(args[++i]); break;
+                    case "--out": outDir = args[++i]; break;
+                    case "--format": format = args[++i].toLowerCase(Locale.ROOT); break;
+                    case "--stdout": toStdout = true; break;
+                    case "--timings": printTimings = true; break;
+                    case "--help": System.err.println(USAGE); return;
+                    default: throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (objFile == null) {
+                throw new IllegalArgumentException("--obj is required");
+            }
+            if (!format.equals("png") && !format.equals("raw")) {
+                throw new IllegalArgumentException("unknown format " + format);
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            if (frames < 0 && timelineFile == null) {
+                frames = 100;
+            }
+            Timeline timeline = LoadTimeline(timelineFile, cameraFile, frames, dt);
+            if (frames < 0) {
+                frames = timeline.FrameCount();
+            }
+            Timeline recorded = recordFile == null ? null : new Timeline();
+            int status = Run(objFile, frames, instances, useLod, occlusion, width, height, renderMode, shading, threads, pipelineDepth, timeline, recorded, outDir, format, toStdout, printTimings);
+            if (status == 0 && recorded != null) {
+                recorded.Save(recordFile.toPath());
+            }
+            System.exit(status);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.exit(1);
+        }
+    }
+
+    /* With a pipeline the per frame time is that of submitting it, which settles at the interval between
+       frames, and the stage summary's frame times are the latencies from geometry to written frame.
+       Every frame drawn is appended to recorded unless it is null */
+    static int Run(String objFile, int frames, int instances, boolean useLod, boolean occlusion, int width, int height, RenderMode renderMode, ShadeMode shading, int threads, int pipelineDepth,
+                   Timeline timeline, Timeline recorded, String outDir, String format, boolean toStdout, boolean printTimings) throws IOException, InterruptedException {
+        mesh meshObj = new mesh();
+        if (!meshObj.LoadFromObjectFile(objFile)) {
+            return 1;
+        }
+        if (outDir != null) {
+            Paths.get(outDir).toFile().mkdirs();
+        }
+
+        ForkJoinPool workers = new ForkJoinPool(threads);
+        Renderer renderer = new Renderer(width, height, renderMode, shading, workers);
+        renderer.SetOcclusionCulling(occlusion);
+        Camera camera = new Camera();
+        mat4x4 matWorld = new mat4x4();
+        Scene scene = new Scene();
+        LodChain lod = useLod ? BuildLod(meshObj) : null;
+        InstanceGrid grid = new InstanceGrid(meshObj, lod, instances);
+        scene.root.AddChild(grid.group);
+
+        OutputStream stdout = toStdout ? new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 20) : null;
+        FrameWriter writer = new FrameWriter(outDir, format, stdout, width, height);
+        RenderPipeline pipeline = pipelineDepth > 0 ? new RenderPipeline(renderer, pipelineDepth, writer) : null;
+        long[] frameNanos = new long[frames];
+
+        try {
+            for (int frame = 0; frame < frames; frame++) {
+                long start = System.nanoTime();
+                if (pipeline == null) {
+                    renderer.metrics.BeginFrame();
+                }
+
+                float fTheta = timeline.Apply(frame, camera);
+                if (recorded != null) {
+                    recorded.Record(camera, fTheta);
+                }
+                grid.Animate(renderer.MakeWorldMatrix(fTheta, matWorld));
+                if (pipeline != null) {
+                    pipeline.Submit(scene, camera);
+                } else {
+                    renderer.RenderFrame(scene, camera);
+                }
+
+                frameNanos[frame] = System.nanoTime() - start;
+                if (printTimings) {
+                    System.err.printf(Locale.ROOT, "frame %d %.3f ms %d triangles %d vertices %d/%d nodes %d/%d chunks %d nodes %d chunks occluded%n",
+                            frame, frameNanos[frame] / 1e6, renderer.TrianglesDrawn(), renderer.VerticesTransformed(), renderer.NodesVisible(), instances,
+                            renderer.ChunksVisible(), meshObj.ChunkCount() * instances, renderer.NodesOccluded(), renderer.ChunksOccluded());
+                }
+
+                if (pipeline == null) {
+                    renderer.metrics.StageStart(Stage.PRESENT);
+                    writer.Write(renderer.frameBuffer, frame);
+                    renderer.metrics.StageEnd(Stage.PRESENT);
+                    renderer.metrics.EndFrame();
+                }
+            }
+            if (pipeline != null) {
+                pipeline.Drain();
+            }
+        } catch (IllegalStateException e) {
+            /* A frame the pipeline failed to write, as the serial path's IOException would */
+            if (pipeline == null) {
+                throw e;
+            }
+            System.err.println(e.getCause());
+            pipeline.Close();
+            workers.shutdown();
+            return 1;
+        }
+        if (pipeline != null) {
+            pipeline.Close();
+        }
+        if (stdout != null) {
+            stdout.flush();
+        }
+        workers.shutdown();
+
+        PrintSummary(frameNanos, width, height, renderMode, threads, meshObj, instances);
+        PrintStages(renderer.metrics);
+        return 0;
+    }
+
+    /* The recorded timeline if there is one, otherwise frames frames along the camera path spinning by dt */
+    static Timeline LoadTimeline(File timelineFile, File cameraFile, int frames, float dt) throws IOException {
+        if (timelineFile != null) {
+            Timeline timeline = Timeline.Load(timelineFile.toPath());
+            if (timeline.FrameCount() == 0) {
+                throw new IOException(timelineFile + ": no frames");
+            }
+            return timeline;
+        }
+        CameraPath path = cameraFile == null ? CameraPath.Static() : CameraPath.Load(cameraFile.toPath());
+        return Timeline.FromPath(path, frames, dt);
+    }
+
+    static LodChain BuildLod(mesh meshObj) {
+        long start = System.nanoTime();
+        LodChain lod = LodChain.Build(meshObj);
+        StringBuilder counts = new StringBuilder();
+        for (int i = 0; i < lod.LevelCount(); i++) {
+            counts.append(i == 0 ? "" : ", ").append(lod.Level(i).TriangleCount());
+        }
+        System.err.printf(Locale.ROOT, "Built %d LOD levels (%s triangles) in %.1f ms%n", lod.LevelCount(), counts, (System.nanoTime() - start) / 1e6);
+        return lod;
+    }
+
+    /* Writes finished frames wherever --out and --stdout asked for, on whichever thread presents them */
+    private static class FrameWriter implements RenderPipeline.Presenter {
+        private final String outDir, format;
+        private final OutputStream stdout;
+        private final byte[] rgba;
+
+        FrameWriter(String outDir, String format, OutputStream stdout, int width, int height) {
+            this.outDir = outDir;
+            this.format = format;
+            this.stdout = stdout;
+            this.rgba = new byte[width * height * 4];
+        }
+
+        void Write(FrameBuffer frameBuffer, long frame) throws IOException {
+            if (outDir != null && format.equals("png")) {
+                ImageIO.write(frameBuffer.image, "png", new File(outDir, String.format(Locale.ROOT, "frame_%05d.png", frame)));
+            } else if (outDir != null || stdout != null) {
+                ToRgba(frameBuffer.pixels, rgba);
+                if (outDir != null) {
+                    try (OutputStream out = new FileOutputStream(new File(outDir, String.format(Locale.ROOT, "frame_%05d.rgba", frame)))) {
+                        out.write(rgba);
+                    }
+                }
+                if (stdout != null) {
+                    stdout.write(rgba);
+                }
+            }
+        }
+
+        @Override
+        public void Present(FrameBuffer frameBuffer, long frame) {
+            try {
+                Write(frameBuffer, frame);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /* Unpack 0xRRGGBB ints into R, G, B, A bytes */
+    static void ToRgba(int[] pixels, byte[] rgba) {
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 4) {
+            int p = pixels[i];
+            rgba[j] = (byte) (p >> 16);
+            rgba[j + 1] = (byte) (p >> 8);
+            rgba[j + 2] = (byte) p;
+            rgba[j + 3] = (byte) 0xff;
+        }
+    }
+
+    private static void PrintSummary(long[] frameNanos, int width, int height, RenderMode renderMode, int threads, mesh meshObj, int instances) {
+        if (frameNanos.length == 0) {
+            return;
+        }
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long t : sorted) {
+            total += t;
+        }
+        double mean = total / (double) sorted.length;
+        System.err.printf(Locale.ROOT, "%d frames %dx%d %s, %d threads, %s transform, %d triangles x %d instances%n",
+                sorted.length, width, height, renderMode.name().toLowerCase(Locale.ROOT), threads, BatchTransform.Describe(), meshObj.TriangleCount(), instances);
+        System.err.printf(Locale.ROOT, "frame ms: min %.3f  mean %.3f  p50 %.3f  p99 %.3f  max %.3f  (%.1f fps)%n",
+                sorted[0] / 1e6, mean / 1e6, Percentile(sorted, 0.50) / 1e6, Percentile(sorted, 0.99) / 1e6,
+                sorted[sorted.length - 1] / 1e6, 1e9 / mean);
+    }
+
+    /* Per stage times and latency over the last FrameMetrics.HISTORY frames and the last frame's triangle counts */
+    private static void PrintStages(FrameMetrics metrics) {
+        if (metrics.getFrameCount() == 0) {
+            return;
+        }
+        StringBuilder stages = new StringBuilder("stage ms p50/p99/max:");
+        for (Stage stage : Stage.values()) {
+            RingHistogram.Summary s = metrics.StageTimes(stage);
+            stages.append(String.format(Locale.ROOT, "  %s %.3f/%.3f/%.3f", stage.name().toLowerCase(Locale.ROOT), s.p50 / 1e6, s.p99 / 1e6, s.max / 1e6));
+        }
+        System.err.println(stages);
+        RingHistogram.Summary latency = metrics.FrameTimes(), interval = metrics.FrameIntervals();
+        System.err.printf(Locale.ROOT, "latency ms p50/p99/max: %.3f/%.3f/%.3f  interval ms p50/p99: %.3f/%.3f%n",
+                latency.p50 / 1e6, latency.p99 / 1e6, latency.max / 1e6, interval.p50 / 1e6, interval.p99 / 1e6);
+        System.err.printf(Locale.ROOT, "triangles: in %d  culled %d  clipped %d  drawn %d%n",
+                metrics.getTrianglesIn(), metrics.getTrianglesCulled(), metrics.getTrianglesClipped(), metrics.getTrianglesDrawn());
+    }
+
+    /* Nearest rank percentile of an ascending array */
+    static long Percentile(long[] sorted, double p) {
+        int rank = (int) Math.ceil(p * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,401 @@
+package graphics;
+
+import graphics.render.BatchTransform;
+import graphics.render.Camera;
+import graphics.render.RenderMode;
+import graphics.render.Renderer;
+import graphics.render.ShadeMode;
+import graphics.render.Timeline;
+import graphics.scene.InstanceGrid;
+import graphics.scene.Scene;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/* Replays a recorded Timeline headless a number of times over and times every frame, for catching
+   frame time regressions in a nightly job. The timed passes come after untimed warm up passes so the
+   JIT has settled. Frame times can be written as CSV, one row per frame per pass, and the CSV of an
+   earlier run passed back as the baseline. The p50, p99 and mean of the two are then compared, each
+   with a bootstrap confidence interval on the relative change. Every pass draws the same frames, so
+   each frame's time is resampled from that frame's times in the other passes, which keeps the mix of
+   cheap and expensive frames fixed and leaves only the run to run noise. A metric regresses when even
+   the low end of its interval is slower than the threshold, so noise alone doesn't fail the build.
+   Exits 3 on a regression, 1 on an error and 2 on bad arguments */
+public class RegressionHarness {
+    private static final String USAGE = String.join("\n",
+            "usage: RegressionHarness --obj <file> --timeline <file> [options]",
+            "  --instances <n>        copies of the mesh on a grid, sharing its data (default 1)",
+            "  --lod                  build simplified levels of the mesh and pick one per instance by screen size",
+            "  --no-occlusion         draw instances hidden behind others too",
+            "  --size <w>x<h>         frame size (default 500x500)",
+            "  --renderer <mode>      painter, zbuffer or tiled (default tiled)",
+            "  --shading <mode>       wireframe, flat or gouraud (default gouraud)",
+            "  --threads <n>          worker threads (default one per core)",
+            "  --warmup <n>           untimed passes over the timeline first (default 2)",
+            "  --runs <n>             timed passes over the timeline (default 5)",
+            "  --csv <file>           write every frame time as pass,frame,ms,triangles",
+            "  --json <file>          write the summary and the comparison with the baseline",
+            "  --baseline <file>      CSV of an earlier run to compare against",
+            "  --threshold <percent>  slowdown that counts as a regression (default 5)",
+            "  --confidence <level>   of the intervals (default 0.95)");
+
+    public static final int REGRESSED = 3;
+
+    private static final int RESAMPLES = 2000;
+    private static final long SEED = 1;
+
+    /* What is compared, in report order */
+    private static final String[] METRICS = {"p50", "p99", "mean"};
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        String objFile = null;
+        File timelineFile = null, csvFile = null, jsonFile = null, baselineFile = null;
+        int instances = 1, width = 500, height = 500, warmup = 2, runs = 5;
+        int threads = Runtime.getRuntime().availableProcessors();
+        RenderMode renderMode = RenderMode.TILED;
+        ShadeMode shading = ShadeMode.GOURAUD;
+        boolean useLod = false, occlusion = true;
+        double threshold = 5.0, confidence = 0.95;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--obj": objFile = args[++i]; break;
+                    case "--timeline": timelineFile = new File(args[++i]); break;
+                    case "--instances": instances = Integer.parseInt(args[++i]); break;
+                    case "--lod": useLod = true; break;
+                    case "--no-occlusion": occlusion = false; break;
+                    case "--size": {
+                        String[] size = args[++i].toLowerCase(Locale.ROOT).split("x");
+                        width = Integer.parseInt(size[0]);
+                        height = Integer.parseInt(size[1]);
+                        break;
+                    }
+                    case "--renderer": renderMode = RenderMode.valueOf(args[++i].toUpperCase(Locale.ROOT)); break;
+                    case "--shading": shading = ShadeMode.valueOf(args[++i].toUpperCase(Locale.ROOT)); break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                    case "--runs": runs = Integer.parseInt(args[++i]); break;
+                    case "--csv": csvFile = new File(args[++i]); break;
+                    case "--json": jsonFile = new File(args[++i]); break;
+                    case "--baseline": baselineFile = new File(args[++i]); break;
+                    case "--threshold": threshold = Double.parseDouble(args[++i]); break;
+                    case "--confidence": confidence = Double.parseDouble(args[++i]); break;
+                    case "--help": System.err.println(USAGE); return;
+                    default: throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+            if (objFile == null || timelineFile == null) {
+                throw new IllegalArgumentException("--obj and --timeline are required");
+            }
+            if (runs < 1 || warmup < 0) {
+                throw new IllegalArgumentException("--runs must be at least 1 and --warmup at least 0");
+            }
+            if (!(confidence > 0.0 && confidence < 1.0)) {
+                throw new IllegalArgumentException("--confidence must be between 0 and 1");
+            }
+        } catch (RuntimeException e) {
+            System.err.println(e.getMessage() == null ? e.toString() : e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            Timeline timeline = Timeline.Load(timelineFile.toPath());
+            if (timeline.FrameCount() == 0) {
+                throw new IOException(timelineFile + ": no frames");
+            }
+            mesh meshObj = new mesh();
+            if (!meshObj.LoadFromObjectFile(objFile)) {
+                System.exit(1);
+                return;
+            }
+
+            /* Settings that make runs comparable, kept with the frame times and checked against the baseline's */
+            Map<String, String> config = new LinkedHashMap<>();
+            config.put("obj", new File(objFile).getName());
+            config.put("timeline", timelineFile.getName());
+            config.put("frames", Integer.toString(timeline.FrameCount()));
+            config.put("instances", Integer.toString(instances));
+            config.put("lod", Boolean.toString(useLod));
+            config.put("occlusion", Boolean.toString(occlusion));
+            config.put("size", width + "x" + height);
+            config.put("renderer", renderMode.name().toLowerCase(Locale.ROOT));
+            config.put("shading", shading.name().toLowerCase(Locale.ROOT));
+            config.put("threads", Integer.toString(threads));
+            config.put("transform", BatchTransform.Describe());
+
+            ForkJoinPool workers = new ForkJoinPool(threads);
+            Renderer renderer = new Renderer(width, height, renderMode, shading, workers);
+            renderer.SetOcclusionCulling(occlusion);
+            Scene scene = new Scene();
+            InstanceGrid grid = new InstanceGrid(meshObj, useLod ? HeadlessRenderer.BuildLod(meshObj) : null, instances);
+            scene.root.AddChild(grid.group);
+
+            int frames = timeline.FrameCount();
+            long[] frameNanos = new long[runs * frames];
+            int[] triangles = new int[runs * frames];
+            for (int pass = 0; pass < warmup; pass++) {
+                Replay(renderer, scene, grid, timeline, null, null, 0);
+            }
+            System.gc();
+            for (int pass = 0; pass < runs; pass++) {
+                Replay(renderer, scene, grid, timeline, frameNanos, triangles, pass * frames);
+            }
+            workers.shutdown();
+
+            if (csvFile != null) {
+                WriteCsv(csvFile.toPath(), config, frames, frameNanos, triangles);
+            }
+
+            long[] baseline = null;
+            if (baselineFile != null) {
+                Map<String, String> baselineConfig = new LinkedHashMap<>();
+                baseline = ReadCsv(baselineFile.toPath(), baselineConfig);
+                for (Map.Entry<String, String> setting : config.entrySet()) {
+                    String was = baselineConfig.get(setting.getKey());
+                    if (was != null && !was.equals(setting.getValue())) {
+                        System.err.printf(Locale.ROOT, "warning: baseline %s was %s, now %s%n", setting.getKey(), was, setting.getValue());
+                    }
+                }
+            }
+
+            Comparison[] comparisons = Compare(frameNanos, baseline, frames, threshold, confidence);
+            boolean regressed = Report(config, runs, frameNanos, baseline, comparisons, threshold, confidence);
+            if (jsonFile != null) {
+                WriteJson(jsonFile.toPath(), config, runs, frameNanos, baseline, comparisons, threshold, confidence, regressed);
+            }
+            System.exit(regressed ? REGRESSED : 0);
+        } catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    /* One pass over the timeline, frame i's time and triangle count going to index offset + i when given */
+    private static void Replay(Renderer renderer, Scene scene, InstanceGrid grid, Timeline timeline, long[] frameNanos, int[] triangles, int offset) {
+        Camera camera = new Camera();
+        mat4x4 matWorld = new mat4x4();
+        for (int frame = 0; frame < timeline.FrameCount(); frame++) {
+            long start = System.nanoTime();
+            float fTheta = timeline.Apply(frame, camera);
+            grid.Animate(renderer.MakeWorldMatrix(fTheta, matWorld));
+            renderer.RenderFrame(scene, camera);
+            long elapsed = System.nanoTime() - start;
+            if (frameNanos != null) {
+                frameNanos[offset + frame] = elapsed;
+                triangles[offset + frame] = renderer.TrianglesDrawn();
+            }
+        }
+    }
+
+    /* One metric of this run against the baseline, times in nanoseconds and changes in percent */
+    static final class Comparison {
+        String metric;
+        double baseline, current, delta, low, high;
+        boolean regressed;
+    }
+
+    /* Null without a baseline */
+    static Comparison[] Compare(long[] current, long[] baseline, int frames, double threshold, double confidence) {
+        if (baseline == null) {
+            return null;
+        }
+        Comparison[] comparisons = new Comparison[METRICS.length];
+        double[] deltas = new double[RESAMPLES];
+        long[] a = new long[baseline.length], b = new long[current.length];
+        for (int m = 0; m < METRICS.length; m++) {
+            Comparison c = new Comparison();
+            c.metric = METRICS[m];
+            c.baseline = Statistic(METRICS[m], Sorted(baseline));
+            c.current = Statistic(METRICS[m], Sorted(current));
+            c.delta = (c.current - c.baseline) / c.baseline * 100.0;
+
+            /* Same seed for every metric and every run, so the same two files always give the same answer */
+            Random random = new Random(SEED);
+            for (int r = 0; r < RESAMPLES; r++) {
+                Resample(baseline, frames, random, a);
+                Resample(current, frames, random, b);
+                Arrays.sort(a);
+                Arrays.sort(b);
+                double base = Statistic(METRICS[m], a);
+                deltas[r] = (Statistic(METRICS[m], b) - base) / base * 100.0;
+            }
+            Arrays.sort(deltas);
+            double tail = (1.0 - confidence) / 2.0;
+            c.low = deltas[(int) Math.floor(tail * (RESAMPLES - 1))];
+            c.high = deltas[(int) Math.ceil((1.0 - tail) * (RESAMPLES - 1))];
+            c.regressed = c.low > threshold;
+            comparisons[m] = c;
+        }
+        return comparisons;
+    }
+
+    /* Fill resampled with times drawn from times with replacement, frame by frame when times is whole
+       passes of frames frames and from all of them at once for a baseline of some other timeline */
+    private static void Resample(long[] times, int frames, Random random, long[] resampled) {
+        if (times.length % frames != 0) {
+            for (int i = 0; i < times.length; i++) {
+                resampled[i] = times[random.nextInt(times.length)];
+            }
+            return;
+        }
+        int passes = times.length / frames;
+        for (int i = 0; i < times.length; i++) {
+            resampled[i] = times[random.nextInt(passes) * frames + i % frames];
+        }
+    }
+
+    /* Of ascending times */
+    private static double Statistic(String metric, long[] sorted) {
+        switch (metric) {
+            case "p50": return HeadlessRenderer.Percentile(sorted, 0.50);
+            case "p99": return HeadlessRenderer.Percentile(sorted, 0.99);
+            default: {
+                double total = 0.0;
+                for (long t : sorted) {
+                    total += t;
+                }
+                return total / sorted.length;
+            }
+        }
+    }
+
+    private static long[] Sorted(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /* Print the summary and comparison to stderr and return whether anything regressed */
+    private static boolean Report(Map<String, String> config, int runs, long[] frameNanos, long[] baseline, Comparison[] comparisons, double threshold, double confidence) {
+        long[] sorted = Sorted(frameNanos);
+        System.err.printf(Locale.ROOT, "%s frames x %d runs %s %s, %s threads, %s transform, %s x %s instances%n",
+                config.get("frames"), runs, config.get("size"), config.get("renderer"), config.get("threads"), config.get("transform"), config.get("obj"), config.get("instances"));
+        System.err.printf(Locale.ROOT, "frame ms: min %.3f  mean %.3f  p50 %.3f  p99 %.3f  max %.3f%n",
+                sorted[0] / 1e6, Statistic("mean", sorted) / 1e6, Statistic("p50", sorted) / 1e6, Statistic("p99", sorted) / 1e6, sorted[sorted.length - 1] / 1e6);
+        if (comparisons == null) {
+            return false;
+        }
+        boolean regressed = false;
+        System.err.printf(Locale.ROOT, "against %d baseline frames, %.0f%% intervals, regression above %+.1f%%:%n", baseline.length, confidence * 100.0, threshold);
+        for (Comparison c : comparisons) {
+            System.err.printf(Locale.ROOT, "  %-4s %8.3f -> %8.3f ms  %+6.1f%% [%+6.1f%%, %+6.1f%%]  %s%n",
+                    c.metric, c.baseline / 1e6, c.current / 1e6, c.delta, c.low, c.high, c.regressed ? "REGRESSED" : "ok");
+            regressed |= c.regressed;
+        }
+        return regressed;
+    }
+
+    private static void WriteCsv(Path file, Map<String, String> config, int frames, long[] frameNanos, int[] triangles) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (Map.Entry<String, String> setting : config.entrySet()) {
+                out.println("# " + setting.getKey() + "=" + setting.getValue());
+            }
+            out.println("pass,frame,ms,triangles");
+            for (int i = 0; i < frameNanos.length; i++) {
+                out.printf(Locale.ROOT, "%d,%d,%.6f,%d%n", i / frames, i % frames, frameNanos[i] / 1e6, triangles[i]);
+            }
+        }
+    }
+
+    /* Frame times of a CSV written by WriteCsv, its settings going into config */
+    static long[] ReadCsv(Path file, Map<String, String> config) throws IOException {
+        long[] times = new long[1024];
+        int n = 0, lineNumber = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.startsWith("#")) {
+                    int equals = line.indexOf('=');
+                    if (equals > 0) {
+                        config.put(line.substring(1, equals).trim(), line.substring(equals + 1).trim());
+                    }
+                    continue;
+                }
+                if (line.isEmpty() || line.startsWith("pass,")) {
+                    continue;
+                }
+                String[] columns = line.split(",");
+                try {
+                    if (n == times.length) {
+                        times = Arrays.copyOf(times, n * 2);
+                    }
+                    times[n++] = Math.round(Double.parseDouble(columns[2]) * 1e6);
+                } catch (RuntimeException e) {
+                    throw new IOException(file + ":" + lineNumber + ": expected pass,frame,ms,triangles");
+                }
+            }
+        }
+        if (n == 0) {
+            throw new IOException(file + ": no frame times");
+        }
+        return Arrays.copyOf(times, n);
+    }
+
+    private static void WriteJson(Path file, Map<String, String> config, int runs, long[] frameNanos, long[] baseline, Comparison[] comparisons,
+                                  double threshold, double confidence, boolean regressed) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"config\": {");
+        String separator = "";
+        for (Map.Entry<String, String> setting : config.entrySet()) {
+            json.append(separator).append("\n    ").append(Quote(setting.getKey())).append(": ").append(Quote(setting.getValue()));
+            separator = ",";
+        }
+        json.append("\n  },\n");
+        json.append(String.format(Locale.ROOT, "  \"runs\": %d,%n", runs));
+        json.append("  \"current\": ").append(Summary(frameNanos)).append(",\n");
+        if (baseline != null) {
+            json.append("  \"baseline\": ").append(Summary(baseline)).append(",\n");
+            json.append("  \"comparison\": [");
+            separator = "";
+            for (Comparison c : comparisons) {
+                json.append(separator).append(String.format(Locale.ROOT,
+                        "%n    {\"metric\": %s, \"baseline_ms\": %.6f, \"current_ms\": %.6f, \"delta_pct\": %.3f, \"ci_low_pct\": %.3f, \"ci_high_pct\": %.3f, \"regressed\": %b}",
+                        Quote(c.metric), c.baseline / 1e6, c.current / 1e6, c.delta, c.low, c.high, c.regressed));
+                separator = ",";
+            }
+            json.append("\n  ],\n");
+        }
+        json.append(String.format(Locale.ROOT, "  \"threshold_pct\": %.3f,%n  \"confidence\": %.3f,%n  \"regressed\": %b%n}%n", threshold, confidence, regressed));
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String Summary(long[] times) {
+        long[] sorted = Sorted(times);
+        return String.format(Locale.ROOT, "{\"frames\": %d, \"min_ms\": %.6f, \"mean_ms\": %.6f, \"p50_ms\": %.6f, \"p99_ms\": %.6f, \"max_ms\": %.6f}",
+                sorted.length, sorted[0] / 1e6, Statistic("mean", sorted) / 1e6, Statistic("p50", sorted) / 1e6, Statistic("p99", sorted) / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static String Quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                quoted.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) ch));
+            } else {
+                quoted.append(ch);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,24 @@
+package graphics.input;
+
+import java.awt.event.KeyEvent;
+
+/* What the controls do, each bound to keys by Bindings. The keys here are the defaults */
+public enum Action {
+    /* Fly the camera along its view direction */
+    FORWARD(KeyEvent.VK_W),
+    BACK(KeyEvent.VK_S),
+    /* Turn the camera around the vertical */
+    TURN_LEFT(KeyEvent.VK_A),
+    TURN_RIGHT(KeyEvent.VK_D),
+    /* Raise and lower the camera straight up and down */
+    RISE(KeyEvent.VK_UP),
+    SINK(KeyEvent.VK_DOWN),
+    /* Show or hide the metrics overlay, once per press */
+    TOGGLE_OVERLAY(KeyEvent.VK_F3);
+
+    final int[] defaultKeys;
+
+    Action(int... defaultKeys) {
+        this.defaultKeys = defaultKeys;
+    }
+}
@@ -0,0 +1,85 @@
+package graphics.input;
+
+import javax.swing.KeyStroke;
+import java.util.Arrays;
+import java.util.Locale;
+
+/* Which keys drive each Action, up to MAX_KEYS of them. Starts from the defaults in Action, and
+   -Dgraphics.keys.<action>=<keys> rebinds one, for example -Dgraphics.keys.forward=W,UP, with keys
+   named as KeyStroke spells them (A, F3, SPACE, LEFT) and an empty list leaving the action unbound.
+   Read by the simulation thread on every InputSnapshot query, so change it from that thread only */
+public final class Bindings {
+    public static final int MAX_KEYS = 4;
+
+    private static final int UNBOUND = -1;
+
+    /* MAX_KEYS slots per action in Action order, UNBOUND past the last key */
+    private final int[] keys = new int[Action.values().length * MAX_KEYS];
+
+    public Bindings() {
+        Reset();
+    }
+
+    /* The defaults overridden by any graphics.keys.<action> system properties */
+    public static Bindings FromProperties() {
+        Bindings bindings = new Bindings();
+        for (Action action : Action.values()) {
+            String property = "graphics.keys." + action.name().toLowerCase(Locale.ROOT);
+            String value = System.getProperty(property);
+            if (value == null) {
+                continue;
+            }
+            bindings.Unbind(action);
+            for (String name : value.split(",")) {
+                name = name.trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
+                KeyStroke stroke = KeyStroke.getKeyStroke(name.toUpperCase(Locale.ROOT));
+                if (stroke == null) {
+                    throw new IllegalArgumentException(property + ": unknown key " + name);
+                }
+                bindings.Bind(action, stroke.getKeyCode());
+            }
+        }
+        return bindings;
+    }
+
+    /* Back to the keys in Action */
+    public void Reset() {
+        Arrays.fill(keys, UNBOUND);
+        for (Action action : Action.values()) {
+            for (int keyCode : action.defaultKeys) {
+                Bind(action, keyCode);
+            }
+        }
+    }
+
+    /* Add keyCode to the keys driving action */
+    public void Bind(Action action, int keyCode) {
+        if (keyCode < 0 || keyCode >= Input.KEY_CODES) {
+            throw new IllegalArgumentException("key code out of range: " + keyCode);
+        }
+        int o = action.ordinal() * MAX_KEYS;
+        for (int i = o; i < o + MAX_KEYS; i++) {
+            if (keys[i] == keyCode) {
+                return;
+            }
+            if (keys[i] == UNBOUND) {
+                keys[i] = keyCode;
+                return;
+            }
+        }
+        throw new IllegalArgumentException(action + " already has " + MAX_KEYS + " keys");
+    }
+
+    public void Unbind(Action action) {
+        int o = action.ordinal() * MAX_KEYS;
+        Arrays.fill(keys, o, o + MAX_KEYS, UNBOUND);
+    }
+
+    /* The i-th key bound to action, or -1 past the last one */
+    public int Key(Action action, int i) {
+        return keys[action.ordinal() * MAX_KEYS + i];
+    }
+}
@@ -0,0 +1,217 @@
+package graphics.input;
+
+import java.awt.Component;
+import java.awt.KeyboardFocusManager;
+import java.awt.Window;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Keyboard and mouse state handed from the AWT event thread to the simulation thread without locks.
+   The event thread keeps which keys are down in an atomic bitset and also queues every change on
+   a ring of ints, the same single producer, single consumer scheme as SpscQueue but holding
+   primitives, so nothing is boxed or allocated per event. Key repeats while a key is held change
+   nothing and are not queued. Once per tick the simulation thread calls Poll, which replays the
+   queued changes onto the previous tick's state to give that tick's InputSnapshot, presses and
+   releases included however short. Should the ring ever fill, later changes are dropped and the
+   next Poll takes the down state from the bitset instead. Mouse drags add up into two counters
+   that Poll takes and zeroes. Losing the window releases every key, AWT would otherwise never send
+   the releases for keys let go elsewhere and they would stay down */
+public final class Input {
+    /* Key codes tracked, the VK_ constants AWT sends for ordinary keys all fall below this */
+    public static final int KEY_CODES = 1024;
+
+    private static final int WORDS = KEY_CODES / 64;
+
+    /* Ring events, the key code shifted up past the kind */
+    private static final int PRESS = 0, RELEASE = 1, RELEASE_ALL = 2;
+    private static final int KIND_BITS = 2, KIND_MASK = (1 << KIND_BITS) - 1;
+
+    /* Event thread: keys down now, and the queued changes */
+    private final AtomicLongArray keys = new AtomicLongArray(WORDS);
+    private final int[] events;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    private final AtomicInteger nLookX = new AtomicInteger(), nLookY = new AtomicInteger();
+    private volatile long nDropped;
+    private int nLastX, nLastY;
+
+    /* Simulation thread */
+    public final Bindings bindings;
+    private final InputSnapshot snapshot = new InputSnapshot();
+    private long nDroppedSeen;
+
+    public Input(Bindings bindings) {
+        this(bindings, 256);
+    }
+
+    /* capacity is the changes that can queue between two Polls */
+    public Input(Bindings bindings, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.bindings = bindings;
+        this.events = new int[capacity];
+        this.mask = capacity - 1;
+        snapshot.bindings = bindings;
+    }
+
+    /* Listen to every key pressed while window has the focus and to mouse drags over lookArea */
+    public void Attach(Window window, Component lookArea) {
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(event -> {
+            if (event.getID() == KeyEvent.KEY_PRESSED) {
+                KeyPressed(event.getKeyCode());
+            } else if (event.getID() == KeyEvent.KEY_RELEASED) {
+                KeyReleased(event.getKeyCode());
+            }
+            return false;
+        });
+        window.addWindowFocusListener(new WindowAdapter() {
+            @Override
+            public void windowLostFocus(WindowEvent event) {
+                ReleaseAll();
+            }
+        });
+        MouseAdapter look = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent event) {
+                nLastX = event.getX();
+                nLastY = event.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent event) {
+                Look(event.getX() - nLastX, event.getY() - nLastY);
+                nLastX = event.getX();
+                nLastY = event.getY();
+            }
+        };
+        lookArea.addMouseListener(look);
+        lookArea.addMouseMotionListener(look);
+    }
+
+    /* Event thread only, codes outside 0 to KEY_CODES - 1 are ignored */
+    public void KeyPressed(int keyCode) {
+        if (keyCode >= 0 && keyCode < KEY_CODES && Change(keyCode, true)) {
+            Queue(keyCode << KIND_BITS | PRESS);
+        }
+    }
+
+    /* Event thread only */
+    public void KeyReleased(int keyCode) {
+        if (keyCode >= 0 && keyCode < KEY_CODES && Change(keyCode, false)) {
+            Queue(keyCode << KIND_BITS | RELEASE);
+        }
+    }
+
+    /* Event thread only, every key up */
+    public void ReleaseAll() {
+        for (int w = 0; w < WORDS; w++) {
+            keys.set(w, 0L);
+        }
+        Queue(RELEASE_ALL);
+    }
+
+    /* Any thread, adds a mouse drag in pixels to the next Poll */
+    public void Look(int dx, int dy) {
+        nLookX.addAndGet(dx);
+        nLookY.addAndGet(dy);
+    }
+
+    /* Any thread, whether keyCode is down right now. Simulation code should use the snapshot */
+    public boolean IsDown(int keyCode) {
+        return keyCode >= 0 && keyCode < KEY_CODES && (keys.get(keyCode >>> 6) & (1L << keyCode)) != 0;
+    }
+
+    /* Simulation thread only, once per tick. Returns the same snapshot every time, refilled */
+    public InputSnapshot Poll() {
+        long[] down = snapshot.down, pressed = snapshot.pressed, released = snapshot.released;
+        for (int w = 0; w < WORDS; w++) {
+            pressed[w] = 0L;
+            released[w] = 0L;
+        }
+
+        long h = head.get(), t = tail.get();
+        for (; h < t; h++) {
+            int event = events[(int) (h & mask)];
+            int keyCode = event >>> KIND_BITS, w = keyCode >>> 6;
+            long bit = 1L << keyCode;
+            /* Only changes count, after a catch up the ring may still hold ones the bitset gave already */
+            switch (event & KIND_MASK) {
+                case PRESS:
+                    pressed[w] |= bit & ~down[w];
+                    down[w] |= bit;
+                    break;
+                case RELEASE:
+                    released[w] |= bit & down[w];
+                    down[w] &= ~bit;
+                    break;
+                default:
+                    for (int i = 0; i < WORDS; i++) {
+                        released[i] |= down[i];
+                        down[i] = 0L;
+                    }
+                    break;
+            }
+        }
+        head.set(t);
+
+        /* Changes were lost, catch up with the bitset. The event thread sets a key's bit before it queues
+           or drops the change, so with the drop count and then the tail read before the bitset, every
+           change queued up to that tail is in the bitset already and is skipped. One dropped after the
+           count was read shows up as another drop next tick. Changes queued after the tail may be in
+           the bitset as well, replaying them next tick flags only what still changes */
+        long dropped = nDropped;
+        if (dropped != nDroppedSeen) {
+            nDroppedSeen = dropped;
+            head.set(tail.get());
+            for (int w = 0; w < WORDS; w++) {
+                long now = keys.get(w);
+                pressed[w] |= now & ~down[w];
+                released[w] |= down[w] & ~now;
+                down[w] = now;
+            }
+        }
+
+        snapshot.nLookX = nLookX.getAndSet(0);
+        snapshot.nLookY = nLookY.getAndSet(0);
+        snapshot.nTick++;
+        return snapshot;
+    }
+
+    /* Changes lost to a full ring since creation */
+    public long Dropped() {
+        return nDropped;
+    }
+
+    /* Set or clear keyCode's bit, false if it already was, as for a key repeat */
+    private boolean Change(int keyCode, boolean isDown) {
+        int w = keyCode >>> 6;
+        long bit = 1L << keyCode;
+        while (true) {
+            long old = keys.get(w);
+            long now = isDown ? old | bit : old & ~bit;
+            if (now == old) {
+                return false;
+            }
+            if (keys.compareAndSet(w, old, now)) {
+                return true;
+            }
+        }
+    }
+
+    private void Queue(int event) {
+        long t = tail.get();
+        if (t - head.get() == events.length) {
+            nDropped++;
+            return;
+        }
+        events[(int) (t & mask)] = event;
+        tail.set(t + 1);
+    }
+}
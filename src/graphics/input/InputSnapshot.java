@@ -0,0 +1,69 @@
+package graphics.input;
+
+/* The controls over one simulation tick, filled in by Input.Poll and read only to everyone else.
+   Down is the state at the end of the tick, pressed and released whether the key went down or
+   came up at any point during it, so a tap that starts and ends between two ticks still shows as
+   pressed even though the key is already up again. Mouse look is the drag since the last tick in
+   pixels. Poll refills the same object, queries hold until the next one */
+public final class InputSnapshot {
+    private static final int WORDS = Input.KEY_CODES / 64;
+
+    final long[] down = new long[WORDS], pressed = new long[WORDS], released = new long[WORDS];
+    int nLookX, nLookY;
+    long nTick;
+    Bindings bindings;
+
+    InputSnapshot() {
+    }
+
+    public boolean IsDown(int keyCode) {
+        return Test(down, keyCode);
+    }
+
+    public boolean WasPressed(int keyCode) {
+        return Test(pressed, keyCode);
+    }
+
+    public boolean WasReleased(int keyCode) {
+        return Test(released, keyCode);
+    }
+
+    /* Any key of action down at the end of the tick or pressed during it, for controls applied
+       every tick they are held, so the shortest tap still moves the camera one tick's worth */
+    public boolean Held(Action action) {
+        for (int i = 0, key; i < Bindings.MAX_KEYS && (key = bindings.Key(action, i)) >= 0; i++) {
+            if (Test(down, key) || Test(pressed, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Any key of action pressed during the tick, for controls that act once per press */
+    public boolean Pressed(Action action) {
+        for (int i = 0, key; i < Bindings.MAX_KEYS && (key = bindings.Key(action, i)) >= 0; i++) {
+            if (Test(pressed, key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Mouse drag over the tick in pixels, right and down positive */
+    public int LookX() {
+        return nLookX;
+    }
+
+    public int LookY() {
+        return nLookY;
+    }
+
+    /* Polls so far, this one included */
+    public long Tick() {
+        return nTick;
+    }
+
+    private static boolean Test(long[] bits, int keyCode) {
+        return keyCode >= 0 && keyCode < Input.KEY_CODES && (bits[keyCode >>> 6] & (1L << keyCode)) != 0;
+    }
+}
@@ -0,0 +1,148 @@
+package graphics.io;
+
+import graphics.structures.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/* Binary copy of a parsed mesh, stored next to its source as <name>.obj.mesh. Layout, all little endian:
+
+       int   magic 'MESH'
+       int   format version
+       long  size of the source file in bytes
+       long  last modified time of the source file in milliseconds
+       int   vertex count
+       int   index count
+       float x, y, z per vertex
+       int   three indices per triangle
+
+   A cache only counts when its version, source size and source mtime all match */
+public final class MeshCache {
+    private static final int MAGIC = 0x4853454D; /* "MESH" read as a little endian int */
+    /* 2: vertices and triangles are stored in VertexCacheOptimizer order */
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private MeshCache() {
+    }
+
+    public static Path CachePath(Path source) {
+        return source.resolveSibling(source.getFileName() + ".mesh");
+    }
+
+    /* Fill target from the cache of source, returns false if there is no valid cache, target is then untouched */
+    public static boolean Load(Path source, mesh target) throws IOException {
+        Path cache = CachePath(source);
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                return false;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+                    || map.getLong(8) != Files.size(source)
+                    || map.getLong(16) != Files.getLastModifiedTime(source).toMillis()) {
+                return false;
+            }
+            int nVertices = map.getInt(24), nIndices = map.getInt(28);
+            if (nVertices < 0 || nIndices < 0 || nIndices % 3 != 0 || HEADER_BYTES + 12L * nVertices + 4L * nIndices != size) {
+                return false;
+            }
+
+            /* One bulk copy per array straight out of the page cache */
+            float[] vertices = new float[nVertices * 3];
+            int[] indices = new int[nIndices];
+            map.position(HEADER_BYTES);
+            map.asFloatBuffer().get(vertices);
+            map.position(HEADER_BYTES + vertices.length * 4);
+            map.asIntBuffer().get(indices);
+
+            /* A damaged cache must not hand the renderer an index past the vertex pool, parse instead */
+            for (int index : indices) {
+                if (index < 0 || index >= nVertices) {
+                    return false;
+                }
+            }
+
+            target.vertices = vertices;
+            target.indices = indices;
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /* Write the cache for source. The file is written under a temporary name and then moved into place,
+       so a concurrent reader never sees a partial cache. Returns false, leaving the old cache where it
+       was, if an existing cache could not be replaced. On Windows that happens while another process,
+       or a mapping from an earlier Load not yet collected, still holds it open. The stale cache is then
+       refused on every load until the replacement succeeds */
+    public static boolean Write(Path source, mesh meshObj) throws IOException {
+        Path cache = CachePath(source);
+        Path temp = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+        try {
+            /* Written through a buffer rather than a mapping, a file that is still mapped can't be moved on Windows */
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION)
+                        .putLong(Files.size(source))
+                        .putLong(Files.getLastModifiedTime(source).toMillis())
+                        .putInt(meshObj.VertexCount())
+                        .putInt(meshObj.indices.length);
+                float[] vertices = meshObj.vertices;
+                for (int i = 0; i < vertices.length; ) {
+                    if (!buffer.hasRemaining()) {
+                        Flush(channel, buffer);
+                    }
+                    int n = Math.min(vertices.length - i, buffer.remaining() / 4);
+                    buffer.asFloatBuffer().put(vertices, i, n);
+                    buffer.position(buffer.position() + n * 4);
+                    i += n;
+                }
+                int[] indices = meshObj.indices;
+                for (int i = 0; i < indices.length; ) {
+                    if (!buffer.hasRemaining()) {
+                        Flush(channel, buffer);
+                    }
+                    int n = Math.min(indices.length - i, buffer.remaining() / 4);
+                    buffer.asIntBuffer().put(indices, i, n);
+                    buffer.position(buffer.position() + n * 4);
+                    i += n;
+                }
+                Flush(channel, buffer);
+                channel.force(false);
+            }
+            try {
+                Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileSystemException e) {
+                if (!Files.exists(cache)) {
+                    throw e;
+                }
+                return false;
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /* Write out what buffer holds and empty it, every value is four bytes so it only fills up exactly */
+    private static void Flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,380 @@
+package graphics.io;
+
+import graphics.structures.mesh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Wavefront OBJ reader working straight on memory mapped bytes. The file is cut into chunks at line
+   boundaries and the chunks are parsed in parallel into primitive arrays, with no String or boxed
+   value created per line. Vertex indices are resolved once every chunk knows how many vertices came
+   before it. Supports v, and f with v, v/vt, v//vn or v/vt/vn references, negative (relative)
+   indices and polygons of any size, which are fan triangulated. Every other statement is skipped */
+public final class ObjLoader {
+    /* Files are split into chunks of about this size, small files are parsed on the calling thread */
+    private static final long CHUNK_BYTES = 8L << 20;
+
+    private ObjLoader() {
+    }
+
+    public static void Load(Path file, mesh target) throws IOException {
+        Load(file, target, ForkJoinPool.commonPool());
+    }
+
+    public static void Load(Path file, mesh target, ForkJoinPool pool) throws IOException {
+        Load(file, target, pool, CHUNK_BYTES);
+    }
+
+    /* With chunks of about chunkBytes, so that small files can be split across several chunks too */
+    static void Load(Path file, mesh target, ForkJoinPool pool, long chunkBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = SplitAtLines(channel, size, (int) Math.max(1, (size + chunkBytes - 1) / chunkBytes));
+
+            Chunk[] chunks = new Chunk[bounds.length - 1];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = new Chunk(channel, bounds[i], bounds[i + 1]);
+            }
+            if (chunks.length == 1) {
+                chunks[0].compute();
+            } else {
+                pool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(chunks);
+                    }
+                });
+            }
+
+            /* Each chunk now knows its vertex count, so relative indices can be made absolute */
+            int nVertices = 0, nIndices = 0;
+            for (Chunk chunk : chunks) {
+                if (chunk.error != null) {
+                    throw new IOException(file + ": " + chunk.error);
+                }
+                chunk.vertexOffset = nVertices;
+                nVertices += chunk.vertices.size / 3;
+                nIndices += chunk.indices.size;
+            }
+
+            float[] vertices = new float[nVertices * 3];
+            int[] indices = new int[nIndices];
+            int v = 0, f = 0;
+            for (Chunk chunk : chunks) {
+                int[] local = chunk.indices.data;
+                for (int k = 0; k < chunk.relative.size; k++) {
+                    local[chunk.relative.data[k]] += chunk.vertexOffset;
+                }
+                System.arraycopy(chunk.vertices.data, 0, vertices, v, chunk.vertices.size);
+                System.arraycopy(local, 0, indices, f, chunk.indices.size);
+                v += chunk.vertices.size;
+                f += chunk.indices.size;
+            }
+            for (int index : indices) {
+                if (index < 0 || index >= nVertices) {
+                    throw new IOException(file + ": face references vertex " + (index + 1) + " but there are only " + nVertices);
+                }
+            }
+
+            target.vertices = vertices;
+            target.indices = indices;
+        }
+    }
+
+    /* Chunk boundaries, each moved forward to just past the next newline so no line is split */
+    private static long[] SplitAtLines(FileChannel channel, long size, int nChunks) throws IOException {
+        long[] bounds = new long[nChunks + 1];
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (int i = 1; i < nChunks; i++) {
+            long pos = Math.max(bounds[i - 1], size * i / nChunks);
+            search:
+            while (pos < size) {
+                probe.clear();
+                int n = channel.read(probe, pos);
+                if (n <= 0) {
+                    pos = size;
+                    break;
+                }
+                for (int k = 0; k < n; k++) {
+                    if (probe.get(k) == '\n') {
+                        pos += k + 1;
+                        break search;
+                    }
+                }
+                pos += n;
+            }
+            bounds[i] = Math.min(pos, size);
+        }
+        bounds[nChunks] = size;
+        return bounds;
+    }
+
+    private static final class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start, end;
+
+        final FloatList vertices = new FloatList();
+        final IntList indices = new IntList();
+        /* Positions in indices holding chunk local values that still need vertexOffset added */
+        final IntList relative = new IntList();
+        int vertexOffset;
+        String error;
+
+        private MappedByteBuffer buffer;
+        private int pos, limit;
+
+        /* Polygon being read, as resolved indices plus whether each one is chunk relative */
+        private int[] polygon = new int[16];
+        private boolean[] polygonRelative = new boolean[16];
+
+        Chunk(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (end > start) {
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                    limit = (int) (end - start);
+                    Parse();
+                }
+            } catch (IOException | RuntimeException e) {
+                error = "byte " + (start + pos) + ": " + e.getMessage();
+            }
+        }
+
+        private void Parse() throws IOException {
+            while (pos < limit) {
+                SkipBlanks();
+                if (pos >= limit) {
+                    break;
+                }
+                byte c = buffer.get(pos);
+                if (c == 'v' && IsBlank(pos + 1)) {
+                    pos++;
+                    vertices.Add(ParseFloat());
+                    vertices.Add(ParseFloat());
+                    vertices.Add(ParseFloat());
+                } else if (c == 'f' && IsBlank(pos + 1)) {
+                    pos++;
+                    ParseFace();
+                }
+                SkipLine();
+            }
+        }
+
+        private void ParseFace() throws IOException {
+            int n = 0;
+            while (true) {
+                SkipBlanks();
+                if (pos >= limit || IsEndOfLine(buffer.get(pos))) {
+                    break;
+                }
+                int ref = ParseInt("an index");
+                /* Skip any /vt and /vn parts */
+                while (pos < limit && !IsBlank(pos) && !IsEndOfLine(buffer.get(pos))) {
+                    pos++;
+                }
+                if (n == polygon.length) {
+                    polygon = Arrays.copyOf(polygon, n * 2);
+                    polygonRelative = Arrays.copyOf(polygonRelative, n * 2);
+                }
+                if (ref > 0) {
+                    polygon[n] = ref - 1;
+                    polygonRelative[n] = false;
+                } else if (ref < 0) {
+                    /* Relative to the vertices read so far, known only within this chunk for now */
+                    polygon[n] = vertices.size / 3 + ref;
+                    polygonRelative[n] = true;
+                } else {
+                    throw new IOException("vertex index 0 in face");
+                }
+                n++;
+            }
+            if (n < 3) {
+                throw new IOException("face with fewer than three vertices");
+            }
+            /* Fan triangulate, (0, 1, 2), (0, 2, 3), ... */
+            for (int k = 2; k < n; k++) {
+                AddIndex(0);
+                AddIndex(k - 1);
+                AddIndex(k);
+            }
+        }
+
+        private void AddIndex(int k) {
+            if (polygonRelative[k]) {
+                relative.Add(indices.size);
+            }
+            indices.Add(polygon[k]);
+        }
+
+        /* Decimal int, what names it in errors */
+        private int ParseInt(String what) throws IOException {
+            boolean negative = false;
+            if (pos < limit && buffer.get(pos) == '-') {
+                negative = true;
+                pos++;
+            } else if (pos < limit && buffer.get(pos) == '+') {
+                pos++;
+            }
+            int begin = pos;
+            long value = 0;
+            while (pos < limit) {
+                int d = buffer.get(pos) - '0';
+                if (d < 0 || d > 9) {
+                    break;
+                }
+                value = value * 10 + d;
+                if (value > Integer.MAX_VALUE) {
+                    throw new IOException(what + " out of range");
+                }
+                pos++;
+            }
+            if (pos == begin) {
+                throw new IOException("expected " + what);
+            }
+            return negative ? (int) -value : (int) value;
+        }
+
+        /* Decimal float of the form [+-]digits[.digits][(e|E)[+-]digits]. Up to MAX_DIGITS significant
+           digits and a power of ten in POWERS_OF_TEN the value is worked out here, otherwise the number
+           is handed to Float.parseFloat */
+        private float ParseFloat() throws IOException {
+            SkipBlanks();
+            int begin = pos;
+            boolean negative = false;
+            if (pos < limit && buffer.get(pos) == '-') {
+                negative = true;
+                pos++;
+            } else if (pos < limit && buffer.get(pos) == '+') {
+                pos++;
+            }
+
+            long mantissa = 0;
+            int exponent = 0, digits = 0;
+            boolean seenDigit = false, exact = true;
+            while (pos < limit) {
+                int d = buffer.get(pos) - '0';
+                if (d < 0 || d > 9) {
+                    break;
+                }
+                seenDigit = true;
+                if (digits < MAX_DIGITS) {
+                    mantissa = mantissa * 10 + d;
+                    if (mantissa != 0) digits++;
+                } else {
+                    exact &= d == 0;
+                    exponent++;
+                }
+                pos++;
+            }
+            if (pos < limit && buffer.get(pos) == '.') {
+                pos++;
+                while (pos < limit) {
+                    int d = buffer.get(pos) - '0';
+                    if (d < 0 || d > 9) {
+                        break;
+                    }
+                    seenDigit = true;
+                    if (digits < MAX_DIGITS) {
+                        mantissa = mantissa * 10 + d;
+                        if (mantissa != 0) digits++;
+                        exponent--;
+                    } else {
+                        exact &= d == 0;
+                    }
+                    pos++;
+                }
+            }
+            if (!seenDigit) {
+                throw new IOException("expected a number");
+            }
+            if (pos < limit && (buffer.get(pos) == 'e' || buffer.get(pos) == 'E')) {
+                pos++;
+                exponent += ParseInt("an exponent");
+            }
+
+            if (!exact || Math.abs(exponent) >= POWERS_OF_TEN.length) {
+                byte[] text = new byte[pos - begin];
+                buffer.get(begin, text);
+                return Float.parseFloat(new String(text, StandardCharsets.ISO_8859_1));
+            }
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return (float) (negative ? -value : value);
+        }
+
+        private void SkipBlanks() {
+            while (pos < limit && IsBlank(pos)) {
+                pos++;
+            }
+        }
+
+        private void SkipLine() {
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+
+        private boolean IsBlank(int at) {
+            if (at >= limit) {
+                return false;
+            }
+            byte c = buffer.get(at);
+            return c == ' ' || c == '\t';
+        }
+
+        private static boolean IsEndOfLine(byte c) {
+            return c == '\n' || c == '\r' || c == '#';
+        }
+    }
+
+    /* Significant digits kept in the mantissa, so that it stays below 2^53 and is an exact double */
+    private static final int MAX_DIGITS = 15;
+
+    /* Exact doubles, so with an exact mantissa the multiplication or division rounds once, to the
+       nearest double. Rounding that to float can still come out 1 ulp from Float.parseFloat when the
+       double lands exactly halfway between two floats */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final class FloatList {
+        float[] data = new float[3 * 1024];
+        int size;
+
+        void Add(float value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+
+    private static final class IntList {
+        int[] data = new int[3 * 1024];
+        int size;
+
+        void Add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+    }
+}
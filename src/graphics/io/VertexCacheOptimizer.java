@@ -0,0 +1,135 @@
+package graphics.io;
+
+import graphics.structures.mesh;
+
+import java.util.Arrays;
+
+/* Reorders a mesh for locality at load time. Triangles are put in Tipsify order (Sander, Nehab and
+   Barczak, "Fast Triangle Reordering for Vertex Locality and Reduced Overdraw", 2007), which fans
+   around one vertex at a time and prefers next vertices still likely to be in a FIFO cache of
+   CACHE_SIZE entries. Vertices are then renumbered in order of first use, so the triangles of any
+   contiguous range reference a tight range of vertices. Only the order changes, never the geometry.
+   Derived data such as bounds and normals has to be recomputed afterwards */
+public final class VertexCacheOptimizer {
+    public static final int CACHE_SIZE = 16;
+
+    private VertexCacheOptimizer() {
+    }
+
+    public static void Optimize(mesh meshObj) {
+        int[] indices = Tipsify(meshObj.indices, meshObj.VertexCount(), CACHE_SIZE);
+        int nVertices = meshObj.VertexCount();
+
+        /* Number vertices by first use, unused ones keep their relative order at the end */
+        int[] remap = new int[nVertices];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int index : indices) {
+            if (remap[index] < 0) {
+                remap[index] = next++;
+            }
+        }
+        for (int v = 0; v < nVertices; v++) {
+            if (remap[v] < 0) {
+                remap[v] = next++;
+            }
+        }
+        float[] vertices = new float[meshObj.vertices.length];
+        for (int v = 0; v < nVertices; v++) {
+            System.arraycopy(meshObj.vertices, v * 3, vertices, remap[v] * 3, 3);
+        }
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = remap[indices[i]];
+        }
+        meshObj.vertices = vertices;
+        meshObj.indices = indices;
+    }
+
+    /* Triangle order for a vertex cache of cacheSize entries, returned as a new index array */
+    static int[] Tipsify(int[] indices, int nVertices, int cacheSize) {
+        int nTriangles = indices.length / 3;
+
+        /* Triangles around each vertex, as offsets into one shared array */
+        int[] live = new int[nVertices];
+        for (int index : indices) {
+            live[index]++;
+        }
+        int[] offset = new int[nVertices + 1];
+        for (int v = 0; v < nVertices; v++) {
+            offset[v + 1] = offset[v] + live[v];
+        }
+        int[] adjacency = new int[indices.length];
+        int[] fill = new int[nVertices];
+        for (int t = 0; t < nTriangles; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                adjacency[offset[v] + fill[v]++] = t;
+            }
+        }
+
+        int[] out = new int[indices.length];
+        int nOut = 0;
+        boolean[] emitted = new boolean[nTriangles];
+        int[] cacheTime = new int[nVertices];
+        int[] deadEnd = new int[indices.length];
+        int nDeadEnd = 0;
+        int[] candidates = new int[indices.length];
+        int time = cacheSize + 1, cursor = 0;
+
+        int fan = nVertices > 0 ? 0 : -1;
+        while (fan >= 0) {
+            int nCandidates = 0;
+            for (int a = offset[fan]; a < offset[fan + 1]; a++) {
+                int t = adjacency[a];
+                if (emitted[t]) {
+                    continue;
+                }
+                emitted[t] = true;
+                for (int k = 0; k < 3; k++) {
+                    int v = indices[t * 3 + k];
+                    out[nOut++] = v;
+                    deadEnd[nDeadEnd++] = v;
+                    candidates[nCandidates++] = v;
+                    live[v]--;
+                    /* Not in the simulated cache any more, so this use brings it back in */
+                    if (time - cacheTime[v] > cacheSize) {
+                        cacheTime[v] = time++;
+                    }
+                }
+            }
+
+            /* Next fan: the candidate with triangles left that would stay in cache longest once fanned */
+            fan = -1;
+            int best = -1;
+            for (int c = 0; c < nCandidates; c++) {
+                int v = candidates[c];
+                if (live[v] > 0) {
+                    int priority = 0;
+                    if (time - cacheTime[v] + 2 * live[v] <= cacheSize) {
+                        priority = time - cacheTime[v];
+                    }
+                    if (priority > best) {
+                        best = priority;
+                        fan = v;
+                    }
+                }
+            }
+            if (fan < 0) {
+                /* Dead end, back up through recently used vertices, then scan for any vertex left */
+                while (nDeadEnd > 0 && fan < 0) {
+                    int v = deadEnd[--nDeadEnd];
+                    if (live[v] > 0) {
+                        fan = v;
+                    }
+                }
+                while (fan < 0 && cursor < nVertices) {
+                    if (live[cursor] > 0) {
+                        fan = cursor;
+                    }
+                    cursor++;
+                }
+            }
+        }
+        return out;
+    }
+}
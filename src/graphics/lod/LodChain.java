@@ -0,0 +1,69 @@
+package graphics.lod;
+
+import graphics.structures.mesh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* A mesh plus successively simplified copies, each with about half the triangles of the one
+   before. Select picks a level from how large the object appears on screen */
+public class LodChain {
+    /* Levels stop once a level would have fewer triangles than this */
+    public static final int MIN_TRIANGLES = 256;
+    public static final int MAX_LEVELS = 8;
+
+    /* Fraction either side of a switch radius that must be crossed before the level changes, so an
+       object sitting right at a boundary doesn't flicker between levels */
+    public static final float HYSTERESIS = 0.15f;
+
+    /* Screen radius in pixels below which level 1 is used, each later level halves it again */
+    public float fSwitchRadius = 100.0f;
+
+    private final mesh[] levels;
+
+    public LodChain(mesh... levels) {
+        this.levels = levels;
+    }
+
+    /* Build the chain for base, simplifying each level from the previous one */
+    public static LodChain Build(mesh base) {
+        List<mesh> levels = new ArrayList<>();
+        levels.add(base);
+        mesh level = base;
+        while (levels.size() < MAX_LEVELS && level.TriangleCount() / 2 >= MIN_TRIANGLES) {
+            mesh next = MeshSimplifier.Simplify(level, level.TriangleCount() / 2);
+            /* Collapses ran out well short of the target, further levels would barely differ */
+            if (next.TriangleCount() > level.TriangleCount() * 3 / 4) {
+                break;
+            }
+            levels.add(next);
+            level = next;
+        }
+        return new LodChain(levels.toArray(new mesh[0]));
+    }
+
+    public int LevelCount() {
+        return levels.length;
+    }
+
+    public mesh Level(int level) {
+        return levels[level];
+    }
+
+    /* Level to draw at fScreenRadius pixels given the level drawn last frame */
+    public int Select(int current, float fScreenRadius) {
+        int level = Math.max(0, Math.min(levels.length - 1, current));
+        while (level < levels.length - 1 && fScreenRadius < SwitchRadius(level + 1) * (1.0f - HYSTERESIS)) {
+            level++;
+        }
+        while (level > 0 && fScreenRadius > SwitchRadius(level) * (1.0f + HYSTERESIS)) {
+            level--;
+        }
+        return level;
+    }
+
+    /* Screen radius at which level takes over from level - 1 */
+    private float SwitchRadius(int level) {
+        return fSwitchRadius / (1 << (level - 1));
+    }
+}
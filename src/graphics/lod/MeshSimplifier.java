@@ -0,0 +1,405 @@
+package graphics.lod;
+
+import graphics.io.VertexCacheOptimizer;
+import graphics.structures.mesh;
+
+import java.util.Arrays;
+
+/* Quadric error edge collapse (Garland and Heckbert). Every vertex carries the sum of the squared
+   distance quadrics of the planes of its faces, and edges are collapsed cheapest first into the
+   point minimising the combined quadric. Open borders get extra perpendicular planes so silhouettes
+   of unclosed meshes don't erode, and collapses that would flip a face are refused */
+public final class MeshSimplifier {
+    /* Weight of the planes that hold border edges in place */
+    private static final double BORDER_WEIGHT = 1000.0;
+
+    /* A collapse is refused if any moved face normal turns by more than about 78 degrees */
+    private static final double MIN_NORMAL_COSINE = 0.2;
+
+    private final double[] position;
+    private final double[] quadric;
+    private final int[] tris;
+    private final boolean[] triDeleted;
+    private final boolean[] vertexDead;
+    private final int[] version;
+
+    /* Faces around each vertex, may contain deleted faces which are skipped on use */
+    private final int[][] vertexFaces;
+    private final int[] vertexFaceCount;
+
+    private final EdgeHeap heap = new EdgeHeap();
+    private final double[] target = new double[3];
+    private int liveTriangles;
+
+    private MeshSimplifier(mesh source) {
+        int nVertices = source.VertexCount(), nTriangles = source.TriangleCount();
+        position = new double[nVertices * 3];
+        for (int i = 0; i < position.length; i++) {
+            position[i] = source.vertices[i];
+        }
+        quadric = new double[nVertices * 10];
+        tris = source.indices.clone();
+        triDeleted = new boolean[nTriangles];
+        vertexDead = new boolean[nVertices];
+        version = new int[nVertices];
+        liveTriangles = nTriangles;
+
+        vertexFaceCount = new int[nVertices];
+        for (int index : tris) {
+            vertexFaceCount[index]++;
+        }
+        vertexFaces = new int[nVertices][];
+        for (int v = 0; v < nVertices; v++) {
+            vertexFaces[v] = new int[Math.max(4, vertexFaceCount[v])];
+            vertexFaceCount[v] = 0;
+        }
+        for (int t = 0; t < nTriangles; t++) {
+            for (int k = 0; k < 3; k++) {
+                AddFace(tris[t * 3 + k], t);
+            }
+        }
+    }
+
+    /* A new mesh with at most targetTriangles triangles, or as close as collapses allow. Unused
+       vertices are dropped and the result is reordered for vertex locality */
+    public static mesh Simplify(mesh source, int targetTriangles) {
+        MeshSimplifier simplifier = new MeshSimplifier(source);
+        simplifier.Run(targetTriangles);
+        return simplifier.Compact();
+    }
+
+    private void Run(int targetTriangles) {
+        int nTriangles = triDeleted.length;
+        for (int t = 0; t < nTriangles; t++) {
+            AddFaceQuadric(t);
+        }
+        for (int t = 0; t < nTriangles; t++) {
+            for (int k = 0; k < 3; k++) {
+                PushEdge(tris[t * 3 + k], tris[t * 3 + (k + 1) % 3]);
+            }
+        }
+
+        while (liveTriangles > targetTriangles && heap.size > 0) {
+            heap.Pop();
+            int a = heap.poppedA, b = heap.poppedB;
+            /* Entries go stale once either end has changed since they were pushed */
+            if (vertexDead[a] || vertexDead[b] || version[a] != heap.poppedVersionA || version[b] != heap.poppedVersionB) {
+                continue;
+            }
+            Optimal(a, b, target);
+            if (Flips(a, b, target) || Flips(b, a, target)) {
+                continue;
+            }
+            Collapse(a, b, target);
+        }
+    }
+
+    /* Plane quadric of face t, weighted by its area, added to its three vertices. Border edges also
+       add a plane through the edge perpendicular to the face */
+    private void AddFaceQuadric(int t) {
+        int i0 = tris[t * 3], i1 = tris[t * 3 + 1], i2 = tris[t * 3 + 2];
+        double ux = position[i1 * 3] - position[i0 * 3], uy = position[i1 * 3 + 1] - position[i0 * 3 + 1], uz = position[i1 * 3 + 2] - position[i0 * 3 + 2];
+        double vx = position[i2 * 3] - position[i0 * 3], vy = position[i2 * 3 + 1] - position[i0 * 3 + 1], vz = position[i2 * 3 + 2] - position[i0 * 3 + 2];
+        double nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0.0) {
+            return;
+        }
+        double area = length * 0.5;
+        nx /= length; ny /= length; nz /= length;
+        double d = -(nx * position[i0 * 3] + ny * position[i0 * 3 + 1] + nz * position[i0 * 3 + 2]);
+        for (int k = 0; k < 3; k++) {
+            AddPlane(tris[t * 3 + k], nx, ny, nz, d, area);
+        }
+
+        for (int k = 0; k < 3; k++) {
+            int a = tris[t * 3 + k], b = tris[t * 3 + (k + 1) % 3];
+            if (SharedFaces(a, b) != 1) {
+                continue;
+            }
+            double ex = position[b * 3] - position[a * 3], ey = position[b * 3 + 1] - position[a * 3 + 1], ez = position[b * 3 + 2] - position[a * 3 + 2];
+            double px = ey * nz - ez * ny, py = ez * nx - ex * nz, pz = ex * ny - ey * nx;
+            double pLength = Math.sqrt(px * px + py * py + pz * pz);
+            if (pLength == 0.0) {
+                continue;
+            }
+            px /= pLength; py /= pLength; pz /= pLength;
+            double pd = -(px * position[a * 3] + py * position[a * 3 + 1] + pz * position[a * 3 + 2]);
+            double weight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+            AddPlane(a, px, py, pz, pd, weight);
+            AddPlane(b, px, py, pz, pd, weight);
+        }
+    }
+
+    private void AddPlane(int v, double a, double b, double c, double d, double weight) {
+        double[] q = quadric;
+        int o = v * 10;
+        q[o]     += weight * a * a; q[o + 1] += weight * a * b; q[o + 2] += weight * a * c; q[o + 3] += weight * a * d;
+        q[o + 4] += weight * b * b; q[o + 5] += weight * b * c; q[o + 6] += weight * b * d;
+        q[o + 7] += weight * c * c; q[o + 8] += weight * c * d;
+        q[o + 9] += weight * d * d;
+    }
+
+    /* Live faces using both a and b */
+    private int SharedFaces(int a, int b) {
+        int count = 0;
+        for (int k = 0; k < vertexFaceCount[a]; k++) {
+            int t = vertexFaces[a][k];
+            if (!triDeleted[t] && (tris[t * 3] == b || tris[t * 3 + 1] == b || tris[t * 3 + 2] == b)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void PushEdge(int a, int b) {
+        Optimal(a, b, target);
+        heap.Push(Error(a, b, target[0], target[1], target[2]), a, b, version[a], version[b]);
+    }
+
+    /* Error of the combined quadric of a and b at (x, y, z) */
+    private double Error(int a, int b, double x, double y, double z) {
+        double[] q = quadric;
+        int i = a * 10, j = b * 10;
+        double q00 = q[i] + q[j], q01 = q[i + 1] + q[j + 1], q02 = q[i + 2] + q[j + 2], q03 = q[i + 3] + q[j + 3];
+        double q11 = q[i + 4] + q[j + 4], q12 = q[i + 5] + q[j + 5], q13 = q[i + 6] + q[j + 6];
+        double q22 = q[i + 7] + q[j + 7], q23 = q[i + 8] + q[j + 8], q33 = q[i + 9] + q[j + 9];
+        return x * x * q00 + 2 * x * y * q01 + 2 * x * z * q02 + 2 * x * q03
+                + y * y * q11 + 2 * y * z * q12 + 2 * y * q13
+                + z * z * q22 + 2 * z * q23 + q33;
+    }
+
+    /* Point minimising the combined quadric, or the best of the two ends and the midpoint when the
+       quadric is singular, as on flat or straight regions, or its minimum lies far from the edge */
+    private void Optimal(int a, int b, double[] out) {
+        double[] q = quadric;
+        int i = a * 10, j = b * 10;
+        double q00 = q[i] + q[j], q01 = q[i + 1] + q[j + 1], q02 = q[i + 2] + q[j + 2], q03 = q[i + 3] + q[j + 3];
+        double q11 = q[i + 4] + q[j + 4], q12 = q[i + 5] + q[j + 5], q13 = q[i + 6] + q[j + 6];
+        double q22 = q[i + 7] + q[j + 7], q23 = q[i + 8] + q[j + 8];
+
+        double ax = position[a * 3], ay = position[a * 3 + 1], az = position[a * 3 + 2];
+        double bx = position[b * 3], by = position[b * 3 + 1], bz = position[b * 3 + 2];
+        double edge2 = (bx - ax) * (bx - ax) + (by - ay) * (by - ay) + (bz - az) * (bz - az);
+
+        double c00 = q11 * q22 - q12 * q12, c01 = q02 * q12 - q01 * q22, c02 = q01 * q12 - q02 * q11;
+        double det = q00 * c00 + q01 * c01 + q02 * c02;
+        double scale = Math.abs(q00) + Math.abs(q11) + Math.abs(q22);
+        if (Math.abs(det) > 1e-9 * scale * scale * scale) {
+            double c11 = q00 * q22 - q02 * q02, c12 = q01 * q02 - q00 * q12, c22 = q00 * q11 - q01 * q01;
+            double x = -(c00 * q03 + c01 * q13 + c02 * q23) / det;
+            double y = -(c01 * q03 + c11 * q13 + c12 * q23) / det;
+            double z = -(c02 * q03 + c12 * q13 + c22 * q23) / det;
+            double mx = x - (ax + bx) * 0.5, my = y - (ay + by) * 0.5, mz = z - (az + bz) * 0.5;
+            if (mx * mx + my * my + mz * mz <= edge2) {
+                out[0] = x; out[1] = y; out[2] = z;
+                return;
+            }
+        }
+
+        double mx = (ax + bx) * 0.5, my = (ay + by) * 0.5, mz = (az + bz) * 0.5;
+        double ea = Error(a, b, ax, ay, az), eb = Error(a, b, bx, by, bz), em = Error(a, b, mx, my, mz);
+        if (em <= ea && em <= eb) {
+            out[0] = mx; out[1] = my; out[2] = mz;
+        } else if (ea <= eb) {
+            out[0] = ax; out[1] = ay; out[2] = az;
+        } else {
+            out[0] = bx; out[1] = by; out[2] = bz;
+        }
+    }
+
+    /* Whether moving v to p turns over, or squashes flat, any face of v that doesn't also use other */
+    private boolean Flips(int v, int other, double[] p) {
+        for (int k = 0; k < vertexFaceCount[v]; k++) {
+            int t = vertexFaces[v][k];
+            if (triDeleted[t]) {
+                continue;
+            }
+            int i0 = tris[t * 3], i1 = tris[t * 3 + 1], i2 = tris[t * 3 + 2];
+            if (i0 == other || i1 == other || i2 == other) {
+                continue;
+            }
+            double nx0, ny0, nz0, nx1, ny1, nz1;
+            {
+                double ux = position[i1 * 3] - position[i0 * 3], uy = position[i1 * 3 + 1] - position[i0 * 3 + 1], uz = position[i1 * 3 + 2] - position[i0 * 3 + 2];
+                double vx = position[i2 * 3] - position[i0 * 3], vy = position[i2 * 3 + 1] - position[i0 * 3 + 1], vz = position[i2 * 3 + 2] - position[i0 * 3 + 2];
+                nx0 = uy * vz - uz * vy; ny0 = uz * vx - ux * vz; nz0 = ux * vy - uy * vx;
+            }
+            {
+                double p0x = i0 == v ? p[0] : position[i0 * 3], p0y = i0 == v ? p[1] : position[i0 * 3 + 1], p0z = i0 == v ? p[2] : position[i0 * 3 + 2];
+                double p1x = i1 == v ? p[0] : position[i1 * 3], p1y = i1 == v ? p[1] : position[i1 * 3 + 1], p1z = i1 == v ? p[2] : position[i1 * 3 + 2];
+                double p2x = i2 == v ? p[0] : position[i2 * 3], p2y = i2 == v ? p[1] : position[i2 * 3 + 1], p2z = i2 == v ? p[2] : position[i2 * 3 + 2];
+                double ux = p1x - p0x, uy = p1y - p0y, uz = p1z - p0z;
+                double vx = p2x - p0x, vy = p2y - p0y, vz = p2z - p0z;
+                nx1 = uy * vz - uz * vy; ny1 = uz * vx - ux * vz; nz1 = ux * vy - uy * vx;
+            }
+            double l0 = Math.sqrt(nx0 * nx0 + ny0 * ny0 + nz0 * nz0), l1 = Math.sqrt(nx1 * nx1 + ny1 * ny1 + nz1 * nz1);
+            if (l1 == 0.0) {
+                return true;
+            }
+            if (l0 > 0.0 && (nx0 * nx1 + ny0 * ny1 + nz0 * nz1) < MIN_NORMAL_COSINE * l0 * l1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Merge b into a at p, dropping the faces that used both */
+    private void Collapse(int a, int b, double[] p) {
+        position[a * 3] = p[0]; position[a * 3 + 1] = p[1]; position[a * 3 + 2] = p[2];
+        for (int k = 0; k < 10; k++) {
+            quadric[a * 10 + k] += quadric[b * 10 + k];
+        }
+        for (int k = 0; k < vertexFaceCount[b]; k++) {
+            int t = vertexFaces[b][k];
+            if (triDeleted[t]) {
+                continue;
+            }
+            int i0 = tris[t * 3], i1 = tris[t * 3 + 1], i2 = tris[t * 3 + 2];
+            if (i0 == a || i1 == a || i2 == a) {
+                triDeleted[t] = true;
+                liveTriangles--;
+            } else {
+                for (int c = 0; c < 3; c++) {
+                    if (tris[t * 3 + c] == b) {
+                        tris[t * 3 + c] = a;
+                    }
+                }
+                AddFace(a, t);
+            }
+        }
+        vertexDead[b] = true;
+        vertexFaceCount[b] = 0;
+        version[a]++;
+
+        /* Drop deleted faces from a's list, then re-cost every edge now touching a */
+        int n = 0;
+        int[] faces = vertexFaces[a];
+        for (int k = 0; k < vertexFaceCount[a]; k++) {
+            if (!triDeleted[faces[k]]) {
+                faces[n++] = faces[k];
+            }
+        }
+        vertexFaceCount[a] = n;
+        for (int k = 0; k < n; k++) {
+            int t = faces[k];
+            for (int c = 0; c < 3; c++) {
+                int v = tris[t * 3 + c];
+                if (v != a) {
+                    PushEdge(a, v);
+                }
+            }
+        }
+    }
+
+    private void AddFace(int v, int t) {
+        if (vertexFaceCount[v] == vertexFaces[v].length) {
+            vertexFaces[v] = Arrays.copyOf(vertexFaces[v], vertexFaceCount[v] * 2);
+        }
+        vertexFaces[v][vertexFaceCount[v]++] = t;
+    }
+
+    private mesh Compact() {
+        int nVertices = vertexDead.length;
+        int[] remap = new int[nVertices];
+        Arrays.fill(remap, -1);
+        int[] indices = new int[liveTriangles * 3];
+        int n = 0;
+        for (int t = 0; t < triDeleted.length; t++) {
+            if (!triDeleted[t]) {
+                for (int c = 0; c < 3; c++) {
+                    remap[tris[t * 3 + c]] = 0;
+                    indices[n++] = tris[t * 3 + c];
+                }
+            }
+        }
+        int nUsed = 0;
+        for (int v = 0; v < nVertices; v++) {
+            if (remap[v] == 0) {
+                remap[v] = nUsed++;
+            }
+        }
+        float[] vertices = new float[nUsed * 3];
+        for (int v = 0; v < nVertices; v++) {
+            if (remap[v] >= 0) {
+                vertices[remap[v] * 3]     = (float) position[v * 3];
+                vertices[remap[v] * 3 + 1] = (float) position[v * 3 + 1];
+                vertices[remap[v] * 3 + 2] = (float) position[v * 3 + 2];
+            }
+        }
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = remap[indices[i]];
+        }
+
+        mesh result = new mesh();
+        result.vertices = vertices;
+        result.indices = indices;
+        VertexCacheOptimizer.Optimize(result);
+        result.UpdateBounds();
+        result.UpdateNormals();
+        return result;
+    }
+
+    /* Binary min heap of candidate collapses with the vertex versions they were costed at */
+    private static final class EdgeHeap {
+        double[] cost = new double[1024];
+        int[] a = new int[1024], b = new int[1024], versionA = new int[1024], versionB = new int[1024];
+        int size;
+        int poppedA, poppedB, poppedVersionA, poppedVersionB;
+
+        void Push(double c, int va, int vb, int ka, int kb) {
+            if (size == cost.length) {
+                int capacity = size * 2;
+                cost = Arrays.copyOf(cost, capacity);
+                a = Arrays.copyOf(a, capacity);
+                b = Arrays.copyOf(b, capacity);
+                versionA = Arrays.copyOf(versionA, capacity);
+                versionB = Arrays.copyOf(versionB, capacity);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (cost[parent] <= c) {
+                    break;
+                }
+                Move(parent, i);
+                i = parent;
+            }
+            Set(i, c, va, vb, ka, kb);
+        }
+
+        void Pop() {
+            poppedA = a[0]; poppedB = b[0]; poppedVersionA = versionA[0]; poppedVersionB = versionB[0];
+            int last = --size;
+            double c = cost[last];
+            int va = a[last], vb = b[last], ka = versionA[last], kb = versionB[last];
+            int i = 0;
+            while (true) {
+                int child = i * 2 + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && cost[child + 1] < cost[child]) {
+                    child++;
+                }
+                if (c <= cost[child]) {
+                    break;
+                }
+                Move(child, i);
+                i = child;
+            }
+            if (size > 0) {
+                Set(i, c, va, vb, ka, kb);
+            }
+        }
+
+        private void Move(int from, int to) {
+            cost[to] = cost[from]; a[to] = a[from]; b[to] = b[from];
+            versionA[to] = versionA[from]; versionB[to] = versionB[from];
+        }
+
+        private void Set(int i, double c, int va, int vb, int ka, int kb) {
+            cost[i] = c; a[i] = va; b[i] = vb; versionA[i] = ka; versionB[i] = kb;
+        }
+    }
+}
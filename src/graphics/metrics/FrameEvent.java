@@ -0,0 +1,52 @@
+package graphics.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/* One frame as a JFR event. Written only while a recording is running, for example
+   java -XX:StartFlightRecording:filename=frames.jfr ..., then jfr print --events graphics.Frame frames.jfr */
+@Name("graphics.Frame")
+@Label("Frame")
+@Category("Graphics Engine")
+@Description("Stage times, triangle counts and render thread allocation of one frame")
+@StackTrace(false)
+public class FrameEvent extends Event {
+    @Label("Frame Time") @Timespan
+    long frameTime;
+
+    @Label("Scene") @Timespan
+    long scene;
+
+    @Label("Geometry") @Timespan
+    long geometry;
+
+    @Label("Sort") @Timespan
+    long sort;
+
+    @Label("Raster") @Timespan
+    long raster;
+
+    @Label("Present") @Timespan
+    long present;
+
+    @Label("Triangles In")
+    int trianglesIn;
+
+    @Label("Triangles Culled")
+    int trianglesCulled;
+
+    @Label("Triangles Clipped")
+    int trianglesClipped;
+
+    @Label("Triangles Drawn")
+    int trianglesDrawn;
+
+    @Label("Allocated") @DataAmount
+    long allocated;
+}
@@ -0,0 +1,247 @@
+package graphics.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/* Always on frame instrumentation. The render thread brackets each frame with BeginFrame and
+   EndFrame and each stage with StageStart and StageEnd, which cost a System.nanoTime each. EndFrame
+   records the frame and stage times into RingHistograms, publishes the triangle counts and commits a
+   FrameEvent if JFR is recording. Anything else, the overlay or a JMX client, reads from any thread.
+   Pipelined frames carry their own FrameSample from thread to thread instead, and whichever thread
+   finishes them passes it to EndFrame. Frame time runs from the start of a frame to the end of its
+   last stage, its latency, which only equals the time between frames when nothing overlaps.
+   Allocation is that of the threads running the frame's stages, the worker pools are not included */
+public class FrameMetrics implements FrameMetricsMBean {
+    /* Frames the percentiles are taken over */
+    public static final int HISTORY = 1024;
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean ALLOCATION_SUPPORTED = AllocationSupported();
+
+    private final RingHistogram frameTimes = new RingHistogram(HISTORY), frameIntervals = new RingHistogram(HISTORY);
+    private final RingHistogram[] stageTimes = new RingHistogram[STAGES.length];
+
+    /* Frame in progress for callers that run it on one thread */
+    private final FrameSample current = new FrameSample();
+    private long lastEndNanos;
+
+    /* Allocation rate is published once per second of frames */
+    private long windowBytes, windowNanos;
+
+    /* Last completed frame, for readers on other threads */
+    private volatile int lastIn, lastCulled, lastClipped, lastDrawn;
+    private volatile long allocationRate = -1;
+
+    public FrameMetrics() {
+        for (int s = 0; s < STAGES.length; s++) {
+            stageTimes[s] = new RingHistogram(HISTORY);
+        }
+    }
+
+    public void BeginFrame() {
+        current.Begin();
+    }
+
+    /* The sample BeginFrame and EndFrame work on */
+    public FrameSample Current() {
+        return current;
+    }
+
+    public void StageStart(Stage stage) {
+        current.StageStart(stage);
+    }
+
+    public void StageEnd(Stage stage) {
+        current.StageEnd(stage);
+    }
+
+    public void CountTriangles(int in, int culled, int clipped, int drawn) {
+        current.CountTriangles(in, culled, clipped, drawn);
+    }
+
+    public void EndFrame() {
+        EndFrame(current);
+    }
+
+    /* Record a finished frame, only ever from one thread at a time */
+    public void EndFrame(FrameSample sample) {
+        sample.End();
+        long frameNanos = sample.endNanos - sample.startNanos;
+        long allocated = ALLOCATION_SUPPORTED ? sample.allocated : -1;
+        long[] stageNanos = sample.stageNanos;
+
+        long intervalNanos = lastEndNanos == 0 ? frameNanos : sample.endNanos - lastEndNanos;
+        frameTimes.Record(frameNanos);
+        if (lastEndNanos != 0) {
+            frameIntervals.Record(intervalNanos);
+        }
+        lastEndNanos = sample.endNanos;
+        for (int s = 0; s < STAGES.length; s++) {
+            stageTimes[s].Record(stageNanos[s]);
+        }
+        lastIn = sample.nIn;
+        lastCulled = sample.nCulled;
+        lastClipped = sample.nClipped;
+        lastDrawn = sample.nDrawn;
+
+        if (ALLOCATION_SUPPORTED) {
+            windowBytes += allocated;
+            windowNanos += intervalNanos;
+            if (windowNanos >= 1000000000L) {
+                allocationRate = (long) (windowBytes * 1e9 / windowNanos);
+                windowBytes = 0;
+                windowNanos = 0;
+            }
+        }
+
+        FrameEvent event = new FrameEvent();
+        if (event.isEnabled()) {
+            event.frameTime = frameNanos;
+            event.scene = stageNanos[Stage.SCENE.ordinal()];
+            event.geometry = stageNanos[Stage.GEOMETRY.ordinal()];
+            event.sort = stageNanos[Stage.SORT.ordinal()];
+            event.raster = stageNanos[Stage.RASTER.ordinal()];
+            event.present = stageNanos[Stage.PRESENT.ordinal()];
+            event.trianglesIn = sample.nIn;
+            event.trianglesCulled = sample.nCulled;
+            event.trianglesClipped = sample.nClipped;
+            event.trianglesDrawn = sample.nDrawn;
+            event.allocated = allocated;
+            event.commit();
+        }
+    }
+
+    public RingHistogram.Summary FrameTimes() {
+        return frameTimes.Summarize();
+    }
+
+    /* Time between the ends of consecutive frames */
+    public RingHistogram.Summary FrameIntervals() {
+        return frameIntervals.Summarize();
+    }
+
+    public RingHistogram.Summary StageTimes(Stage stage) {
+        return stageTimes[stage.ordinal()].Summarize();
+    }
+
+    /* Register as graphics:type=FrameMetrics on the platform MBean server */
+    public FrameMetrics Register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName("graphics:type=FrameMetrics"));
+        } catch (JMException e) {
+            System.err.println("Could not register frame metrics with JMX: " + e);
+        }
+        return this;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameTimes.Count();
+    }
+
+    @Override
+    public double getFrameTimeP50Millis() {
+        return frameTimes.Summarize().p50 / 1e6;
+    }
+
+    @Override
+    public double getFrameTimeP99Millis() {
+        return frameTimes.Summarize().p99 / 1e6;
+    }
+
+    @Override
+    public double getFrameTimeMaxMillis() {
+        return frameTimes.Summarize().max / 1e6;
+    }
+
+    @Override
+    public double getFrameIntervalP50Millis() {
+        return frameIntervals.Summarize().p50 / 1e6;
+    }
+
+    @Override
+    public double getFrameIntervalP99Millis() {
+        return frameIntervals.Summarize().p99 / 1e6;
+    }
+
+    @Override
+    public String[] getStageNames() {
+        String[] names = new String[STAGES.length];
+        for (int s = 0; s < STAGES.length; s++) {
+            names[s] = STAGES[s].name();
+        }
+        return names;
+    }
+
+    @Override
+    public double[] getStageP50Millis() {
+        double[] millis = new double[STAGES.length];
+        for (int s = 0; s < STAGES.length; s++) {
+            millis[s] = stageTimes[s].Summarize().p50 / 1e6;
+        }
+        return millis;
+    }
+
+    @Override
+    public double[] getStageP99Millis() {
+        double[] millis = new double[STAGES.length];
+        for (int s = 0; s < STAGES.length; s++) {
+            millis[s] = stageTimes[s].Summarize().p99 / 1e6;
+        }
+        return millis;
+    }
+
+    @Override
+    public double[] getStageMaxMillis() {
+        double[] millis = new double[STAGES.length];
+        for (int s = 0; s < STAGES.length; s++) {
+            millis[s] = stageTimes[s].Summarize().max / 1e6;
+        }
+        return millis;
+    }
+
+    @Override
+    public int getTrianglesIn() {
+        return lastIn;
+    }
+
+    @Override
+    public int getTrianglesCulled() {
+        return lastCulled;
+    }
+
+    @Override
+    public int getTrianglesClipped() {
+        return lastClipped;
+    }
+
+    @Override
+    public int getTrianglesDrawn() {
+        return lastDrawn;
+    }
+
+    /* Render thread bytes per second, -1 until the first second has passed or if the JVM can't tell */
+    @Override
+    public long getAllocationBytesPerSecond() {
+        return allocationRate;
+    }
+
+    private static boolean AllocationSupported() {
+        if (!(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return false;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return true;
+    }
+
+    static long AllocatedBytes() {
+        return ALLOCATION_SUPPORTED ? ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes() : 0;
+    }
+}
@@ -0,0 +1,36 @@
+package graphics.metrics;
+
+/* JMX view of FrameMetrics, times in milliseconds over the last FrameMetrics.HISTORY frames */
+public interface FrameMetricsMBean {
+    long getFrameCount();
+
+    double getFrameTimeP50Millis();
+
+    double getFrameTimeP99Millis();
+
+    double getFrameTimeMaxMillis();
+
+    /* Time between frames, below the frame time when frames are pipelined */
+    double getFrameIntervalP50Millis();
+
+    double getFrameIntervalP99Millis();
+
+    /* Stage names in the order of the arrays below */
+    String[] getStageNames();
+
+    double[] getStageP50Millis();
+
+    double[] getStageP99Millis();
+
+    double[] getStageMaxMillis();
+
+    int getTrianglesIn();
+
+    int getTrianglesCulled();
+
+    int getTrianglesClipped();
+
+    int getTrianglesDrawn();
+
+    long getAllocationBytesPerSecond();
+}
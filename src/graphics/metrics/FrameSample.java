@@ -0,0 +1,55 @@
+package graphics.metrics;
+
+/* Stage times, triangle counts and allocation of one frame while it is in flight. A pipelined frame
+   moves between threads, the thread handing it on calls Suspend and the one taking over Resume so
+   the allocation of both is counted. Only one thread may touch a sample at a time */
+public final class FrameSample {
+    private static final int STAGES = Stage.values().length;
+
+    final long[] stageNanos = new long[STAGES];
+    private final long[] stageStart = new long[STAGES];
+    long startNanos, endNanos, allocated;
+    private long allocatedStart;
+    int nIn, nCulled, nClipped, nDrawn;
+
+    public void Begin() {
+        for (int s = 0; s < STAGES; s++) {
+            stageNanos[s] = 0;
+        }
+        nIn = nCulled = nClipped = nDrawn = 0;
+        allocated = 0;
+        Resume();
+        startNanos = System.nanoTime();
+    }
+
+    public void StageStart(Stage stage) {
+        stageStart[stage.ordinal()] = System.nanoTime();
+    }
+
+    /* Stages may be entered more than once a frame, their times add up */
+    public void StageEnd(Stage stage) {
+        stageNanos[stage.ordinal()] += System.nanoTime() - stageStart[stage.ordinal()];
+    }
+
+    /* Triangles handed to the geometry stage, dropped by culling of any kind, cut by a clip plane
+       and sent to the back end, which can exceed in - culled when clipping splits triangles */
+    public void CountTriangles(int in, int culled, int clipped, int drawn) {
+        nIn += in;
+        nCulled += culled;
+        nClipped += clipped;
+        nDrawn += drawn;
+    }
+
+    public void Suspend() {
+        allocated += FrameMetrics.AllocatedBytes() - allocatedStart;
+    }
+
+    public void Resume() {
+        allocatedStart = FrameMetrics.AllocatedBytes();
+    }
+
+    void End() {
+        Suspend();
+        endNanos = System.nanoTime();
+    }
+}
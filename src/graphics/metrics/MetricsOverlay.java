@@ -0,0 +1,62 @@
+package graphics.metrics;
+
+import java.awt.*;
+import java.util.Locale;
+
+/* Text panel of FrameMetrics drawn over the frame. The text is rebuilt a few times a second rather
+   than every frame, so an open overlay costs little and a closed one nothing */
+public class MetricsOverlay {
+    private static final long REFRESH_NANOS = 250000000L;
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+    private static final Color TEXT = new Color(80, 255, 80);
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+
+    private final FrameMetrics metrics;
+    private final String[] lines = new String[Stage.values().length + 4];
+    private long lastRefresh;
+    public volatile boolean visible;
+
+    public MetricsOverlay(FrameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void Draw(Graphics g) {
+        if (!visible) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (lines[0] == null || now - lastRefresh >= REFRESH_NANOS) {
+            Refresh();
+            lastRefresh = now;
+        }
+
+        g.setFont(FONT);
+        FontMetrics fontMetrics = g.getFontMetrics();
+        int lineHeight = fontMetrics.getHeight(), width = 0;
+        for (String line : lines) {
+            width = Math.max(width, fontMetrics.stringWidth(line));
+        }
+        g.setColor(BACKGROUND);
+        g.fillRect(4, 4, width + 8, lineHeight * lines.length + 6);
+        g.setColor(TEXT);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 8, 6 + fontMetrics.getAscent() + i * lineHeight);
+        }
+    }
+
+    private void Refresh() {
+        RingHistogram.Summary frame = metrics.FrameTimes(), interval = metrics.FrameIntervals();
+        int l = 0;
+        lines[l++] = String.format(Locale.ROOT, "%-8s %6s %6s %6s", "ms", "p50", "p99", "max");
+        lines[l++] = String.format(Locale.ROOT, "%-8s %6.2f %6.2f %6.2f  %.0f fps",
+                "frame", frame.p50 / 1e6, frame.p99 / 1e6, frame.max / 1e6, interval.mean > 0 ? 1e9 / interval.mean : 0.0);
+        for (Stage stage : Stage.values()) {
+            RingHistogram.Summary s = metrics.StageTimes(stage);
+            lines[l++] = String.format(Locale.ROOT, "%-8s %6.2f %6.2f %6.2f", stage.name().toLowerCase(Locale.ROOT), s.p50 / 1e6, s.p99 / 1e6, s.max / 1e6);
+        }
+        lines[l++] = String.format(Locale.ROOT, "tris in %d culled %d clipped %d drawn %d",
+                metrics.getTrianglesIn(), metrics.getTrianglesCulled(), metrics.getTrianglesClipped(), metrics.getTrianglesDrawn());
+        long rate = metrics.getAllocationBytesPerSecond();
+        lines[l] = rate < 0 ? "alloc    -" : String.format(Locale.ROOT, "alloc    %.1f KB/s", rate / 1024.0);
+    }
+}
@@ -0,0 +1,73 @@
+package graphics.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* The last capacity samples of a value, written by one thread and read by any number of others
+   without locks. The writer stores into the slot after the newest one and then publishes it by
+   advancing the sequence, readers copy out the slots behind the sequence. A reader racing the writer
+   may find the oldest slot already holding a newer sample, which doesn't matter for percentiles */
+public final class RingHistogram {
+    private final AtomicLongArray samples;
+    private final AtomicLong sequence = new AtomicLong();
+    private final int mask;
+
+    public RingHistogram(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.samples = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /* Writer thread only */
+    public void Record(long value) {
+        long s = sequence.get();
+        samples.lazySet((int) (s & mask), value);
+        sequence.lazySet(s + 1);
+    }
+
+    /* Samples recorded since creation, including those already overwritten */
+    public long Count() {
+        return sequence.get();
+    }
+
+    /* Percentiles over the samples currently held, any thread */
+    public Summary Summarize() {
+        long end = sequence.get();
+        int n = (int) Math.min(end, samples.length());
+        long[] sorted = new long[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = samples.get((int) ((end - n + i) & mask));
+        }
+        Arrays.sort(sorted);
+        return new Summary(sorted);
+    }
+
+    public static final class Summary {
+        public final int count;
+        public final long p50, p99, max;
+        public final double mean;
+
+        Summary(long[] sorted) {
+            count = sorted.length;
+            p50 = Percentile(sorted, 0.50);
+            p99 = Percentile(sorted, 0.99);
+            max = count == 0 ? 0 : sorted[count - 1];
+            long total = 0;
+            for (long value : sorted) {
+                total += value;
+            }
+            mean = count == 0 ? 0.0 : total / (double) count;
+        }
+
+        /* Nearest rank */
+        private static long Percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+        }
+    }
+}
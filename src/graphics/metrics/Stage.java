@@ -0,0 +1,15 @@
+package graphics.metrics;
+
+/* Timed parts of a frame, in pipeline order */
+public enum Stage {
+    /* Scene graph update and BVH culling */
+    SCENE,
+    /* LOD selection, chunk culling, backface test, transform, clipping and projection */
+    GEOMETRY,
+    /* Painter's depth sort */
+    SORT,
+    /* Rasterization, or AWT drawing on the painter's path */
+    RASTER,
+    /* Handing the finished frame to the window, or to the output files when headless */
+    PRESENT
+}
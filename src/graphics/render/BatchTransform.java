@@ -0,0 +1,137 @@
+package graphics.render;
+
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+
+/* Batches of vertices to clip space, outcodes and screen space, and runs of triangles tested for
+   facing a point, each in one straight pass over per coordinate arrays, the caller's gathered x, y
+   and z or the mesh's face planes (mesh.faceNormalX and so on), into per coordinate results. This
+   class loops a vertex at a time. VectorBatchTransform does the same arithmetic in the same order on
+   the incubating Vector API, as many vertices per instruction as the CPU's widest float vectors
+   hold, 8 with AVX2 and 16 with AVX-512, so both give identical results to the bit. New picks the
+   vector one if the JVM was started with --add-modules jdk.incubator.vector, unless
+   -Dgraphics.simd=false, once at startup */
+public class BatchTransform {
+    public static final String SCALAR = "scalar", VECTOR = "vector";
+
+    /* Back end New returns */
+    public static final String BACKEND = ChooseBackend();
+
+    /* The clipper's outcode planes, packed a, b, c, d, and the outcode bit each one sets */
+    protected final float[] planes;
+    protected final int[] planeBits;
+    protected final int nPlanes;
+
+    /* Vertices of the next Transform, filled in by the caller after Reserve */
+    public float[] x = new float[0], y = new float[0], z = new float[0];
+
+    /* Results of the last Transform, index i for vertex i */
+    public float[] clipX = new float[0], clipY = new float[0], clipZ = new float[0], clipW = new float[0];
+    public float[] screenX = new float[0], screenY = new float[0], screenZ = new float[0];
+    public int[] codes = new int[0];
+
+    /* Results of the last Facing, index i for triangle first + i */
+    public boolean[] facing = new boolean[0];
+
+    protected BatchTransform(Clipper clipper) {
+        planes = clipper.OutcodePlanes();
+        nPlanes = planes.length / 4;
+        planeBits = new int[nPlanes];
+        for (int p = 0; p < nPlanes; p++) {
+            planeBits[p] = p < clipper.PlaneCount() ? 1 << p : 1 << (Clipper.MAX_PLANES + p - clipper.PlaneCount());
+        }
+    }
+
+    /* A transform on the startup back end computing outcodes against clipper's planes as they are now */
+    public static BatchTransform New(Clipper clipper) {
+        return New(clipper, BACKEND);
+    }
+
+    public static BatchTransform New(Clipper clipper, String backend) {
+        switch (backend) {
+            case SCALAR: return new BatchTransform(clipper);
+            case VECTOR: return new VectorBatchTransform(clipper);
+            default: throw new IllegalArgumentException("unknown backend: " + backend);
+        }
+    }
+
+    /* Back end and lane count, for logs */
+    public static String Describe() {
+        return BACKEND.equals(VECTOR) ? VECTOR + " x" + VectorBatchTransform.Lanes() : SCALAR;
+    }
+
+    /* Make room for batches of up to n vertices, which may drop the vertices already filled in */
+    public void Reserve(int n) {
+        if (x.length < n) {
+            x = new float[n]; y = new float[n]; z = new float[n];
+            clipX = new float[n]; clipY = new float[n]; clipZ = new float[n]; clipW = new float[n];
+            screenX = new float[n]; screenY = new float[n]; screenZ = new float[n];
+            codes = new int[n];
+        }
+    }
+
+    /* The first n vertices of x, y and z through matrix, object space to clip space, with their
+       outcodes, then divided by w and scaled to a width x height view */
+    public void Transform(int n, mat4x4 matrix, float width, float height) {
+        Transform(0, n, matrix.m, width, height);
+    }
+
+    /* Mark which of triangles first to last - 1 of meshObj face the point (px, py, pz) and return how
+       many do. A sign of -1 turns every triangle around, for meshes drawn mirrored. Degenerate
+       triangles have a zero normal and never face anything */
+    public int Facing(mesh meshObj, int first, int last, float px, float py, float pz, float sign) {
+        int n = Math.max(0, last - first);
+        if (facing.length < n) {
+            facing = new boolean[n];
+        }
+        return Facing(meshObj.faceNormalX, meshObj.faceNormalY, meshObj.faceNormalZ, meshObj.faceDistance, first, 0, n, px, py, pz, sign);
+    }
+
+    protected void Transform(int start, int end, float[] m, float width, float height) {
+        for (int i = start; i < end; i++) {
+            float vx = x[i], vy = y[i], vz = z[i];
+            float cx = vx * m[0] + vy * m[4] + vz * m[8] + m[12];
+            float cy = vx * m[1] + vy * m[5] + vz * m[9] + m[13];
+            float cz = vx * m[2] + vy * m[6] + vz * m[10] + m[14];
+            float cw = vx * m[3] + vy * m[7] + vz * m[11] + m[15];
+            clipX[i] = cx; clipY[i] = cy; clipZ[i] = cz; clipW[i] = cw;
+
+            int code = 0;
+            for (int p = 0; p < nPlanes; p++) {
+                int o = p * 4;
+                if (planes[o] * cx + planes[o + 1] * cy + planes[o + 2] * cz + planes[o + 3] * cw < 0.0f) {
+                    code |= planeBits[p];
+                }
+            }
+            codes[i] = code;
+
+            screenX[i] = (cx / cw + 1.0f) * 0.5f * width;
+            screenY[i] = (cy / cw + 1.0f) * 0.5f * height;
+            screenZ[i] = cz / cw;
+        }
+    }
+
+    protected int Facing(float[] nx, float[] ny, float[] nz, float[] d, int first, int start, int end, float px, float py, float pz, float sign) {
+        int nFacing = 0;
+        for (int i = start; i < end; i++) {
+            int t = first + i;
+            boolean front = (nx[t] * px + ny[t] * py + nz[t] * pz - d[t]) * sign > 0.0f;
+            facing[i] = front;
+            nFacing += front ? 1 : 0;
+        }
+        return nFacing;
+    }
+
+    private static String ChooseBackend() {
+        if ("false".equals(System.getProperty("graphics.simd"))) {
+            return SCALAR;
+        }
+        try {
+            Class.forName("jdk.incubator.vector.FloatVector");
+        } catch (ClassNotFoundException e) {
+            return SCALAR;
+        }
+        /* Below four lanes the vector code is no faster, and without vector units at all much slower */
+        return VectorBatchTransform.Lanes() >= 4 ? VECTOR : SCALAR;
+    }
+}
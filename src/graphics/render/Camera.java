@@ -0,0 +1,49 @@
+package graphics.render;
+
+import graphics.structures.mat4x4;
+import graphics.structures.vec3d;
+
+import static graphics.utility.MatrixUtil.*;
+import static graphics.utility.VectorUtil.*;
+
+/* First person camera, a position plus a yaw around the y axis and a pitch up or down from level */
+public class Camera {
+    /* Pitch is held short of straight up or down, where the view would flip over the up vector */
+    public static final float MAX_PITCH = 1.5f;
+
+    public final vec3d vPosition = new vec3d(0.0f, 0.0f, 0.0f);
+    public final vec3d vLookDir = new vec3d(0.0f, 0.0f, 1.0f);
+    public float fYaw, fPitch;
+
+    private final vec3d vUp = new vec3d(0.0f, 1.0f, 0.0f);
+    private final vec3d vTarget = new vec3d(0.0f, 0.0f, 1.0f);
+    private final mat4x4 matCameraRot = new mat4x4(), matCamera = new mat4x4();
+
+    public void Set(float x, float y, float z, float fYaw) {
+        Set(x, y, z, fYaw, 0.0f);
+    }
+
+    public void Set(float x, float y, float z, float fYaw, float fPitch) {
+        vPosition.x = x; vPosition.y = y; vPosition.z = z;
+        this.fYaw = fYaw;
+        this.fPitch = fPitch;
+    }
+
+    /* Refresh vLookDir from the yaw and pitch and write the matching view matrix into matView */
+    public mat4x4 ViewMatrix(mat4x4 matView) {
+        vTarget.x = 0.0f; vTarget.y = 0.0f; vTarget.z = 1.0f; vTarget.w = 1.0f;
+
+        /* Tip up or down first, positive pitch looking up the screen, then turn */
+        float fClamped = Math.max(-MAX_PITCH, Math.min(MAX_PITCH, fPitch));
+        MatrixMakeRotationX(fClamped, matCameraRot);
+        MatrixMultiplyVector(matCameraRot, vTarget, vTarget);
+        MatrixMakeRotationY(fYaw, matCameraRot);
+        MatrixMultiplyVector(matCameraRot, vTarget, vLookDir);
+
+        VectorAdd(vPosition, vLookDir, vTarget);
+
+        MatrixPointAt(vPosition, vTarget, vUp, matCamera);
+
+        return MatrixQuickInverse(matCamera, matView);
+    }
+}
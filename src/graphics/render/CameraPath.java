@@ -0,0 +1,81 @@
+package graphics.render;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/* Camera keyframes, one per line as "frame x y z yaw", with blank lines and # comments ignored.
+   Frames between keys are linearly interpolated and frames outside the keys hold the nearest one */
+public class CameraPath {
+    private int[] frames = new int[0];
+    private float[] keys = new float[0]; /* x, y, z, yaw per keyframe */
+
+    /* A path that holds the camera where the interactive engine starts, at the origin looking down +z */
+    public static CameraPath Static() {
+        CameraPath path = new CameraPath();
+        path.AddKey(0, 0.0f, 0.0f, 0.0f, 0.0f);
+        return path;
+    }
+
+    public static CameraPath Load(Path file) throws IOException {
+        CameraPath path = new CameraPath();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tokens = line.split("\\s+");
+                if (tokens.length != 5) {
+                    throw new IOException(file + ":" + lineNumber + ": expected \"frame x y z yaw\"");
+                }
+                try {
+                    path.AddKey(Integer.parseInt(tokens[0]), Float.parseFloat(tokens[1]), Float.parseFloat(tokens[2]),
+                            Float.parseFloat(tokens[3]), Float.parseFloat(tokens[4]));
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        if (path.frames.length == 0) {
+            throw new IOException(file + ": no keyframes");
+        }
+        return path;
+    }
+
+    /* Keys must be added in increasing frame order */
+    public void AddKey(int frame, float x, float y, float z, float fYaw) {
+        int n = frames.length;
+        if (n > 0 && frame <= frames[n - 1]) {
+            throw new IllegalArgumentException("keyframe " + frame + " is not after " + frames[n - 1]);
+        }
+        frames = Arrays.copyOf(frames, n + 1);
+        keys = Arrays.copyOf(keys, (n + 1) * 4);
+        frames[n] = frame;
+        keys[n * 4] = x; keys[n * 4 + 1] = y; keys[n * 4 + 2] = z; keys[n * 4 + 3] = fYaw;
+    }
+
+    /* Place camera where the path is at the given frame */
+    public void Apply(int frame, Camera camera) {
+        int n = frames.length;
+        int next = 0;
+        while (next < n && frames[next] <= frame) {
+            next++;
+        }
+        int a = Math.max(0, next - 1), b = Math.min(n - 1, next);
+        float t = a == b ? 0.0f : (float) (frame - frames[a]) / (float) (frames[b] - frames[a]);
+        camera.Set(Lerp(keys[a * 4], keys[b * 4], t),
+                Lerp(keys[a * 4 + 1], keys[b * 4 + 1], t),
+                Lerp(keys[a * 4 + 2], keys[b * 4 + 2], t),
+                Lerp(keys[a * 4 + 3], keys[b * 4 + 3], t));
+    }
+
+    private static float Lerp(float a, float b, float t) {
+        return a + (b - a) * t;
+    }
+}
@@ -0,0 +1,162 @@
+package graphics.render;
+
+/* Sutherland-Hodgman polygon clipper over a fixed ring of x, y, z, w vertices. Planes are stored
+   as equations a*x + b*y + c*z + d*w >= 0 for the inside, so the same code clips screen space
+   points (w = 1) and homogeneous clip space points. Each pass reads the polygon left by the previous
+   one and appends its output behind it, so nothing is allocated or copied back between passes.
+   Outcodes settle the common cases first, a polygon inside every plane is passed through untouched
+   and one outside any single plane is dropped without clipping. Reject planes only take part in
+   that first test, so a guard band can be clipped against while rejecting by the true view edges.
+   Each vertex also carries a shade value, interpolated along with the coordinates */
+public final class Clipper {
+    public static final int MAX_PLANES = 8;
+
+    /* Bits of an outcode that belong to clip planes, the reject planes use the byte above */
+    public static final int CLIP_BITS = (1 << MAX_PLANES) - 1;
+
+    /* Ring size, a power of two comfortably above two passes worth of vertices (3 + MAX_PLANES each) */
+    private static final int RING = 64;
+    private static final int MASK = RING - 1;
+
+    private final float[] planes = new float[MAX_PLANES * 4];
+    private int nPlanes;
+    private final float[] rejectPlanes = new float[MAX_PLANES * 4];
+    private int nRejectPlanes;
+
+    private final float[] x = new float[RING], y = new float[RING], z = new float[RING], w = new float[RING], s = new float[RING];
+    private final float[] distance = new float[RING];
+    private int head, count;
+
+    /* Result of the last Clip, vertex i of the polygon is at ring slot (first + i) & MASK */
+    private int first;
+
+    public int AddPlane(float a, float b, float c, float d) {
+        if (nPlanes == MAX_PLANES) {
+            throw new IllegalStateException("at most " + MAX_PLANES + " planes");
+        }
+        int p = nPlanes * 4;
+        planes[p] = a; planes[p + 1] = b; planes[p + 2] = c; planes[p + 3] = d;
+        return nPlanes++;
+    }
+
+    /* A plane polygons are dropped for being entirely outside of, but never clipped against */
+    public int AddRejectPlane(float a, float b, float c, float d) {
+        if (nRejectPlanes == MAX_PLANES) {
+            throw new IllegalStateException("at most " + MAX_PLANES + " reject planes");
+        }
+        int p = nRejectPlanes * 4;
+        rejectPlanes[p] = a; rejectPlanes[p + 1] = b; rejectPlanes[p + 2] = c; rejectPlanes[p + 3] = d;
+        return nRejectPlanes++;
+    }
+
+    public void ClearPlanes() {
+        nPlanes = 0;
+        nRejectPlanes = 0;
+    }
+
+    /* Start a new input polygon */
+    public void Begin() {
+        head = 0;
+        count = 0;
+    }
+
+    public void AddVertex(float vx, float vy, float vz, float vw) {
+        AddVertex(vx, vy, vz, vw, 0.0f);
+    }
+
+    public void AddVertex(float vx, float vy, float vz, float vw, float vs) {
+        int i = (head + count++) & MASK;
+        x[i] = vx; y[i] = vy; z[i] = vz; w[i] = vw; s[i] = vs;
+    }
+
+    /* Clip the polygon given since Begin against every plane, returns the number of vertices left,
+       0 if it was entirely outside */
+    public int Clip() {
+        /* Bit p of the outcode is set for vertices outside plane p */
+        int orCode = 0, andCode = -1, rejectCode = -1;
+        for (int k = 0; k < count; k++) {
+            int i = (head + k) & MASK;
+            int code = Outcode(planes, nPlanes, i);
+            orCode |= code;
+            andCode &= code;
+            rejectCode &= Outcode(rejectPlanes, nRejectPlanes, i);
+        }
+        first = head;
+        if (andCode != 0 || rejectCode != 0) {
+            return 0;
+        }
+        if (orCode == 0) {
+            return count;
+        }
+
+        int in = head, nIn = count;
+        for (int p = 0; p < nPlanes && nIn > 0; p++) {
+            if ((orCode & (1 << p)) == 0) {
+                continue;
+            }
+            int out = (in + nIn) & MASK, nOut = 0;
+            float a = planes[p * 4], b = planes[p * 4 + 1], c = planes[p * 4 + 2], d = planes[p * 4 + 3];
+            for (int k = 0; k < nIn; k++) {
+                int i = (in + k) & MASK;
+                distance[i] = a * x[i] + b * y[i] + c * z[i] + d * w[i];
+            }
+            for (int k = 0; k < nIn; k++) {
+                int i = (in + k) & MASK, j = (in + (k + 1) % nIn) & MASK;
+                float di = distance[i], dj = distance[j];
+                if (di >= 0.0f) {
+                    Copy(i, (out + nOut++) & MASK);
+                }
+                if ((di >= 0.0f) != (dj >= 0.0f)) {
+                    /* Edge crosses the plane, always interpolate from the inside end so shared edges clip identically */
+                    int from = di >= 0.0f ? i : j, to = di >= 0.0f ? j : i;
+                    float t = distance[from] / (distance[from] - distance[to]);
+                    int o = (out + nOut++) & MASK;
+                    x[o] = x[from] + (x[to] - x[from]) * t;
+                    y[o] = y[from] + (y[to] - y[from]) * t;
+                    z[o] = z[from] + (z[to] - z[from]) * t;
+                    w[o] = w[from] + (w[to] - w[from]) * t;
+                    s[o] = s[from] + (s[to] - s[from]) * t;
+                }
+            }
+            in = out;
+            nIn = nOut;
+        }
+        first = in;
+        return nIn;
+    }
+
+    /* Clip planes then reject planes packed a, b, c, d, for code working out outcodes of many vertices
+       at once. Plane p of the result sets bit p of an outcode if p < PlaneCount(), else bit
+       MAX_PLANES + p - PlaneCount(), as Clip's outcodes do */
+    public float[] OutcodePlanes() {
+        float[] result = new float[(nPlanes + nRejectPlanes) * 4];
+        System.arraycopy(planes, 0, result, 0, nPlanes * 4);
+        System.arraycopy(rejectPlanes, 0, result, nPlanes * 4, nRejectPlanes * 4);
+        return result;
+    }
+
+    public int PlaneCount() {
+        return nPlanes;
+    }
+
+    public float X(int i) { return x[(first + i) & MASK]; }
+    public float Y(int i) { return y[(first + i) & MASK]; }
+    public float Z(int i) { return z[(first + i) & MASK]; }
+    public float W(int i) { return w[(first + i) & MASK]; }
+    public float S(int i) { return s[(first + i) & MASK]; }
+
+    private int Outcode(float[] planes, int nPlanes, int i) {
+        int code = 0;
+        for (int p = 0; p < nPlanes; p++) {
+            int o = p * 4;
+            if (planes[o] * x[i] + planes[o + 1] * y[i] + planes[o + 2] * z[i] + planes[o + 3] * w[i] < 0.0f) {
+                code |= 1 << p;
+            }
+        }
+        return code;
+    }
+
+    private void Copy(int from, int to) {
+        x[to] = x[from]; y[to] = y[from]; z[to] = z[from]; w[to] = w[from]; s[to] = s[from];
+    }
+}
@@ -0,0 +1,259 @@
+package graphics.render;
+
+import graphics.structures.bounds;
+import graphics.structures.mat4x4;
+
+import java.util.Arrays;
+
+import static java.lang.Math.*;
+
+/* Hierarchical depth for occlusion culling. Screen space triangles are rasterized into a depth
+   buffer at a quarter of the frame's resolution each way. Every texel gathers which of its 4 x 4
+   frame pixels the triangles landing on it cover, by the same pixel centre rule as Rasterizer, and
+   the farthest depth of any of them over the texel. Once all of its pixels are covered that depth
+   becomes the texel's and the gathering starts over, so each texel holds a depth no frame pixel
+   under it can be farther than, whatever else is drawn, even where a mesh's triangles are each far
+   smaller than a texel. Build reduces the base into levels of half the size each down to one
+   texel, every texel keeping the farthest depth of the ones below it, so a box on screen of any
+   size is tested against a handful of texels. Depth is post-divide z as in TriangleBuffer,
+   smaller is closer */
+public class DepthPyramid {
+    /* Frame pixels per base texel, each way */
+    public static final int TEXEL_SIZE = 4;
+
+    private static final int SUBPIXEL_BITS = 4;
+    private static final int SUBPIXEL_SCALE = 1 << SUBPIXEL_BITS;
+    private static final float COORD_LIMIT = 1 << 24;
+
+    /* Most texels a box is tested against each way. Two would do for any box, a few more let the
+       test stay on finer levels where the edges of occluders are sharper */
+    private static final int TEST_TEXELS = 8;
+
+    /* Boxes reaching closer to the eye than this in clip w are never occluded, their projection is unbounded */
+    private static final float MIN_W = 1e-5f;
+
+    private final int width, height;
+    private final int[] levelWidth, levelHeight, levelOffset;
+    private final int nLevels;
+
+    /* Every level packed one after another, the base first */
+    private final float[] depth;
+
+    /* Per base texel, the pixels covered since it last took a depth, a bit per pixel row by row, and
+       the farthest depth of the triangles that covered them */
+    private final int[] coverage;
+    private final float[] coverageDepth;
+
+    public DepthPyramid(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        int levels = 1;
+        for (int w = (width + TEXEL_SIZE - 1) / TEXEL_SIZE, h = (height + TEXEL_SIZE - 1) / TEXEL_SIZE; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2) {
+            levels++;
+        }
+        nLevels = levels;
+        levelWidth = new int[levels];
+        levelHeight = new int[levels];
+        levelOffset = new int[levels];
+        int size = 0;
+        for (int l = 0, w = (width + TEXEL_SIZE - 1) / TEXEL_SIZE, h = (height + TEXEL_SIZE - 1) / TEXEL_SIZE; l < levels; l++, w = (w + 1) / 2, h = (h + 1) / 2) {
+            levelWidth[l] = w;
+            levelHeight[l] = h;
+            levelOffset[l] = size;
+            size += w * h;
+        }
+        depth = new float[size];
+        coverage = new int[levelWidth[0] * levelHeight[0]];
+        coverageDepth = new float[levelWidth[0] * levelHeight[0]];
+        Clear();
+    }
+
+    /* Nothing drawn, nothing occluded */
+    public void Clear() {
+        Arrays.fill(depth, Float.POSITIVE_INFINITY);
+        Arrays.fill(coverage, 0);
+        Arrays.fill(coverageDepth, Float.NEGATIVE_INFINITY);
+    }
+
+    /* Add triangles first to last - 1 of triangles to the base level, Build before testing against them */
+    public void Rasterize(TriangleBuffer triangles, int first, int last) {
+        float[] d = triangles.data;
+        for (int i = first * TriangleBuffer.STRIDE, end = last * TriangleBuffer.STRIDE; i < end; i += TriangleBuffer.STRIDE) {
+            RasterizeTriangle(d[i], d[i + 1], d[i + 2], d[i + 3], d[i + 4], d[i + 5], d[i + 6], d[i + 7], d[i + 8]);
+        }
+    }
+
+    /* Bring every level above the base up to date with it */
+    public void Build() {
+        for (int l = 1; l < nLevels; l++) {
+            int srcWidth = levelWidth[l - 1], srcHeight = levelHeight[l - 1], src = levelOffset[l - 1];
+            int dstWidth = levelWidth[l], dstHeight = levelHeight[l], dst = levelOffset[l];
+            for (int y = 0; y < dstHeight; y++) {
+                int y0 = src + 2 * y * srcWidth, y1 = src + min(2 * y + 1, srcHeight - 1) * srcWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int x0 = 2 * x, x1 = min(2 * x + 1, srcWidth - 1);
+                    depth[dst + y * dstWidth + x] = max(max(depth[y0 + x0], depth[y0 + x1]), max(depth[y1 + x0], depth[y1 + x1]));
+                }
+            }
+        }
+    }
+
+    /* True if the box b, in whatever space matrix takes to clip space, is certainly hidden behind what
+       has been rasterized. Boxes crossing the near plane or off screen are never occluded */
+    public boolean Occluded(bounds b, mat4x4 matrix) {
+        return !b.IsEmpty() && Occluded(b.minX, b.minY, b.minZ, b.maxX, b.maxY, b.maxZ, matrix);
+    }
+
+    public boolean Occluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, mat4x4 matrix) {
+        float[] m = matrix.m;
+        float left = Float.POSITIVE_INFINITY, right = Float.NEGATIVE_INFINITY;
+        float top = Float.POSITIVE_INFINITY, bottom = Float.NEGATIVE_INFINITY;
+        float nearest = Float.POSITIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            float vx = (corner & 1) == 0 ? minX : maxX;
+            float vy = (corner & 2) == 0 ? minY : maxY;
+            float vz = (corner & 4) == 0 ? minZ : maxZ;
+            float cw = vx * m[3] + vy * m[7] + vz * m[11] + m[15];
+            float cz = vx * m[2] + vy * m[6] + vz * m[10] + m[14];
+            if (cw < MIN_W || cz < 0.0f) {
+                return false;
+            }
+            float cx = vx * m[0] + vy * m[4] + vz * m[8] + m[12];
+            float cy = vx * m[1] + vy * m[5] + vz * m[9] + m[13];
+            float sx = (cx / cw + 1.0f) * 0.5f * width;
+            float sy = (cy / cw + 1.0f) * 0.5f * height;
+            left = min(left, sx); right = max(right, sx);
+            top = min(top, sy); bottom = max(bottom, sy);
+            nearest = min(nearest, cz / cw);
+        }
+
+        /* Every frame pixel the box touches, as base texels */
+        int x0 = max(0, (int) floor(left)), x1 = min(width - 1, (int) floor(right));
+        int y0 = max(0, (int) floor(top)), y1 = min(height - 1, (int) floor(bottom));
+        if (x0 > x1 || y0 > y1) {
+            return false;
+        }
+        x0 /= TEXEL_SIZE; x1 /= TEXEL_SIZE;
+        y0 /= TEXEL_SIZE; y1 /= TEXEL_SIZE;
+
+        /* Up to the level where the box spans at most TEST_TEXELS texels each way */
+        int l = 0;
+        while (x1 - x0 >= TEST_TEXELS || y1 - y0 >= TEST_TEXELS) {
+            x0 >>= 1; x1 >>= 1; y0 >>= 1; y1 >>= 1;
+            l++;
+        }
+        int w = levelWidth[l], o = levelOffset[l];
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                if (depth[o + y * w + x] >= nearest) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void RasterizeTriangle(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2) {
+        long X0 = Snap(x0), Y0 = Snap(y0), X1 = Snap(x1), Y1 = Snap(y1), X2 = Snap(x2), Y2 = Snap(y2);
+        long area = (X1 - X0) * (Y2 - Y0) - (Y1 - Y0) * (X2 - X0);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            long t;
+            t = X1; X1 = X2; X2 = t;
+            t = Y1; Y1 = Y2; Y2 = t;
+            float tz = z1; z1 = z2; z2 = tz;
+            area = -area;
+        }
+
+        int minX = max(0, (int) (min(X0, min(X1, X2)) >> SUBPIXEL_BITS) / TEXEL_SIZE);
+        int minY = max(0, (int) (min(Y0, min(Y1, Y2)) >> SUBPIXEL_BITS) / TEXEL_SIZE);
+        int maxX = min(levelWidth[0] - 1, (int) (max(X0, max(X1, X2)) >> SUBPIXEL_BITS) / TEXEL_SIZE);
+        int maxY = min(levelHeight[0] - 1, (int) (max(Y0, max(Y1, Y2)) >> SUBPIXEL_BITS) / TEXEL_SIZE);
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        long a0 = Y1 - Y2, b0 = X2 - X1;
+        long a1 = Y2 - Y0, b1 = X0 - X2;
+        long a2 = Y0 - Y1, b2 = X1 - X0;
+        long stepX0 = a0 << SUBPIXEL_BITS, stepX1 = a1 << SUBPIXEL_BITS, stepX2 = a2 << SUBPIXEL_BITS;
+        long stepY0 = b0 << SUBPIXEL_BITS, stepY1 = b1 << SUBPIXEL_BITS, stepY2 = b2 << SUBPIXEL_BITS;
+        float invArea = 1.0f / (float) area;
+        float dz1 = (z1 - z0) * invArea, dz2 = (z2 - z0) * invArea;
+
+        /* Depth change per sub-pixel step each way */
+        float dzdx = a1 * dz1 + a2 * dz2, dzdy = b1 * dz1 + b2 * dz2;
+
+        /* Extremes of the edge functions and farthest depth over a texel's pixels, which are at its
+           corners, relative to its first pixel centre. Texels cut short by the frame's right or
+           bottom edge use them too, which only makes their tests more cautious */
+        long spanX = (long) (TEXEL_SIZE - 1) << SUBPIXEL_BITS, spanY = spanX;
+        long low0 = min(0, a0 * spanX) + min(0, b0 * spanY), high0 = max(0, a0 * spanX) + max(0, b0 * spanY);
+        long low1 = min(0, a1 * spanX) + min(0, b1 * spanY), high1 = max(0, a1 * spanX) + max(0, b1 * spanY);
+        long low2 = min(0, a2 * spanX) + min(0, b2 * spanY), high2 = max(0, a2 * spanX) + max(0, b2 * spanY);
+        float farZ = max(0.0f, dzdx * spanX) + max(0.0f, dzdy * spanY);
+        long texelX0 = stepX0 * TEXEL_SIZE, texelX1 = stepX1 * TEXEL_SIZE, texelX2 = stepX2 * TEXEL_SIZE;
+        int baseWidth = levelWidth[0];
+
+        for (int ty = minY; ty <= maxY; ty++) {
+            int firstY = ty * TEXEL_SIZE, rows = min(TEXEL_SIZE, height - firstY);
+            long py = ((long) firstY << SUBPIXEL_BITS) + SUBPIXEL_SCALE / 2;
+            long px = ((long) minX * TEXEL_SIZE << SUBPIXEL_BITS) + SUBPIXEL_SCALE / 2;
+
+            /* Edge functions at the first pixel centre of each texel along the row */
+            long w0 = (px - X1) * a0 + (py - Y1) * b0 - texelX0;
+            long w1 = (px - X2) * a1 + (py - Y2) * b1 - texelX1;
+            long w2 = (px - X0) * a2 + (py - Y0) * b2 - texelX2;
+            for (int tx = minX; tx <= maxX; tx++) {
+                w0 += texelX0; w1 += texelX1; w2 += texelX2;
+                if (w0 + high0 < 0 || w1 + high1 < 0 || w2 + high2 < 0) {
+                    continue;
+                }
+
+                /* Farthest over the whole texel, which is no nearer than over the pixels covered */
+                float z = z0 + w1 * dz1 + w2 * dz2 + farZ;
+                int t = ty * baseWidth + tx;
+                if (z >= depth[t]) {
+                    continue;
+                }
+
+                int columns = min(TEXEL_SIZE, width - tx * TEXEL_SIZE);
+                int full = (0x1111 * ((1 << columns) - 1)) & ((1 << (rows * TEXEL_SIZE)) - 1);
+
+                /* Pixel by pixel unless no edge crosses the texel */
+                int mask = full;
+                if (w0 + low0 < 0 || w1 + low1 < 0 || w2 + low2 < 0) {
+                    mask = 0;
+                    long r0 = w0, r1 = w1, r2 = w2;
+                    for (int y = 0; y < rows; y++) {
+                        long e0 = r0, e1 = r1, e2 = r2;
+                        for (int x = 0; x < columns; x++) {
+                            if ((e0 | e1 | e2) >= 0) {
+                                mask |= 1 << (y * TEXEL_SIZE + x);
+                            }
+                            e0 += stepX0; e1 += stepX1; e2 += stepX2;
+                        }
+                        r0 += stepY0; r1 += stepY1; r2 += stepY2;
+                    }
+                    if (mask == 0) {
+                        continue;
+                    }
+                }
+                coverageDepth[t] = max(coverageDepth[t], z);
+                coverage[t] |= mask;
+                if (coverage[t] == full) {
+                    depth[t] = coverageDepth[t];
+                    coverage[t] = 0;
+                    coverageDepth[t] = Float.NEGATIVE_INFINITY;
+                }
+            }
+        }
+    }
+
+    private static long Snap(float v) {
+        return (long) (max(-COORD_LIMIT, min(COORD_LIMIT, v)) * SUBPIXEL_SCALE);
+    }
+}
@@ -0,0 +1,117 @@
+package graphics.render;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/* Colour and depth targets for the software rasterizer. The colour buffer is the backing
+   array of image, so writing to pixels is all it takes to update what gets presented */
+public class FrameBuffer {
+    public final int width, height;
+    public final BufferedImage image;
+    public final int[] pixels;
+    public final float[] depth;
+
+    /* FillPolygon's edges, where each crosses its first row, the rows it spans and its step per
+       row as a whole number of pixels plus a fraction of ERROR_STEP, and the crossings of a row */
+    private static final int ERROR_STEP = 0x7fffffff;
+    private int[] edgeX = new int[0], edgeFirstY = new int[0], edgeLastY = new int[0];
+    private int[] edgeError = new int[0], edgeBumpX = new int[0], edgeBumpError = new int[0], crossings = new int[0];
+
+    public FrameBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.depth = new float[width * height];
+    }
+
+    public void Clear(int rgb) {
+        Arrays.fill(pixels, rgb);
+        Arrays.fill(depth, Float.POSITIVE_INFINITY);
+    }
+
+    /* Fill the polygon of the first n points of polygonX and polygonY with rgb, the same pixels as
+       AWT's Graphics.fillPolygon but without the span iterator that allocates on every call. Follows
+       AWT's own arithmetic step for step, down to its float rounding, as exact arithmetic differs
+       from it on a pixel here and there. Vertices are nudged a quarter pixel down and right, each
+       edge is crossed on the rows whose pixel centres it spans, at the first pixel whose centre is
+       at or right of it, and spans between crossings are filled by the even-odd rule */
+    public void FillPolygon(int[] polygonX, int[] polygonY, int n, int rgb) {
+        if (edgeX.length < n) {
+            edgeX = new int[n]; edgeFirstY = new int[n]; edgeLastY = new int[n];
+            edgeError = new int[n]; edgeBumpX = new int[n]; edgeBumpError = new int[n];
+            crossings = new int[n + 1];
+        }
+        int nEdges = 0, minY = Integer.MAX_VALUE, maxY = Integer.MIN_VALUE;
+        for (int k = 0, prev = n - 1; k < n; prev = k++) {
+            float x0 = polygonX[prev] + 0.25f, y0 = polygonY[prev] + 0.25f, x1 = polygonX[k] + 0.25f, y1 = polygonY[k] + 0.25f;
+            if (y0 == y1 || Math.max(y0, y1) <= 0.0f || Math.min(y0, y1) >= height || Math.min(x0, x1) >= width) {
+                continue;
+            }
+            /* Wholly left of the frame only its rows matter, AWT stands it up at its right end */
+            if (Math.max(x0, x1) <= 0.0f) {
+                x0 = x1 = Math.max(x0, x1);
+            }
+            if (y0 > y1) {
+                float t = x0; x0 = x1; x1 = t;
+                t = y0; y0 = y1; y1 = t;
+            }
+            int firstY = (int) Math.ceil(y0 - 0.5f), lastY = (int) Math.ceil(y1 - 0.5f);
+            if (firstY >= lastY || firstY >= height || lastY <= 0) {
+                continue;
+            }
+            float dx = x1 - x0, dy = y1 - y0, slope = dx / dy;
+            float x = x0 + (firstY + 0.5f - y0) * dx / dy;
+            int startX = (int) Math.ceil(x - 0.5f);
+            edgeX[nEdges] = startX;
+            edgeFirstY[nEdges] = firstY;
+            edgeLastY[nEdges] = lastY;
+            edgeBumpX[nEdges] = (int) Math.floor(slope);
+            edgeBumpError[nEdges] = (int) ((slope - Math.floor(slope)) * (double) ERROR_STEP);
+            edgeError[nEdges] = (int) ((x - (startX - 0.5f)) * (double) ERROR_STEP);
+            minY = Math.min(minY, firstY);
+            maxY = Math.max(maxY, lastY);
+            nEdges++;
+        }
+
+        for (int y = Math.max(0, minY), lastY = Math.min(height, maxY); y < lastY; y++) {
+            int nCrossings = 0;
+            for (int e = 0; e < nEdges; e++) {
+                if (y < edgeFirstY[e] || y >= edgeLastY[e]) {
+                    continue;
+                }
+                /* Where stepping down a row at a time would have got to, carrying the error at 2^31 */
+                long steps = y - edgeFirstY[e], error = edgeError[e] + steps * edgeBumpError[e];
+                int x = (int) (edgeX[e] + steps * edgeBumpX[e] + (error >> 31));
+
+                /* Insertion sort, polygons here have a handful of edges */
+                int i = nCrossings++;
+                for (; i > 0 && crossings[i - 1] > x; i--) {
+                    crossings[i] = crossings[i - 1];
+                }
+                crossings[i] = x;
+            }
+            /* Edges wholly right of the frame were left out, a span they would have closed runs to the edge */
+            if ((nCrossings & 1) != 0) {
+                crossings[nCrossings++] = width;
+            }
+            int row = y * width;
+            for (int i = 0; i + 1 < nCrossings; i += 2) {
+                int from = Math.max(0, crossings[i]), to = Math.min(width, crossings[i + 1]);
+                if (from < to) {
+                    Arrays.fill(pixels, row + from, row + to, rgb);
+                }
+            }
+        }
+    }
+
+    /* Clear only the inclusive rectangle, used by tiles that each own a region of the buffers */
+    public void Clear(int rgb, int minX, int minY, int maxX, int maxY) {
+        for (int y = minY; y <= maxY; y++) {
+            int row = y * width;
+            Arrays.fill(pixels, row + minX, row + maxX + 1, rgb);
+            Arrays.fill(depth, row + minX, row + maxX + 1, Float.POSITIVE_INFINITY);
+        }
+    }
+}
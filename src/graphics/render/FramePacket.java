@@ -0,0 +1,22 @@
+package graphics.render;
+
+import graphics.metrics.FrameSample;
+
+/* Everything one frame carries from the geometry stage to the raster stage, allocated once and
+   reused for the life of the pipeline */
+public final class FramePacket {
+    public final TriangleBuffer triangles;
+    public final FrameSample sample;
+
+    /* Frame number, set by whoever submits the frame */
+    public long frame;
+
+    public FramePacket() {
+        this(new TriangleBuffer(), new FrameSample());
+    }
+
+    FramePacket(TriangleBuffer triangles, FrameSample sample) {
+        this.triangles = triangles;
+        this.sample = sample;
+    }
+}
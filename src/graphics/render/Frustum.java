@@ -0,0 +1,87 @@
+package graphics.render;
+
+import graphics.structures.bounds;
+import graphics.structures.mat4x4;
+
+/* The six planes of a view frustum as a*x + b*y + c*z + d >= 0 for points inside, extracted from a
+   combined transform. Built from world * view * projection the planes are in object space, so a
+   mesh's own bounds can be tested without transforming them */
+public class Frustum {
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECTING = 1;
+    public static final int INSIDE = 2;
+
+    /* a, b, c, d per plane, in the order left, right, bottom, top, near, far */
+    public final float[] planes = new float[24];
+
+    /* Points are row vectors, clip = p * m, so each clip coordinate is the dot product of p with a column of m.
+       Inside means -w <= x <= w, -w <= y <= w and 0 <= z <= w, the depth range of MatrixMakeProjection */
+    public Frustum Set(mat4x4 matrix) {
+        float[] m = matrix.m;
+        for (int i = 0; i < 4; i++) {
+            float x = m[i * 4], y = m[i * 4 + 1], z = m[i * 4 + 2], w = m[i * 4 + 3];
+            planes[i]      = w + x;
+            planes[4 + i]  = w - x;
+            planes[8 + i]  = w + y;
+            planes[12 + i] = w - y;
+            planes[16 + i] = z;
+            planes[20 + i] = w - z;
+        }
+
+        /* Unit normals make the plane value a true distance, which the sphere test needs */
+        for (int p = 0; p < 24; p += 4) {
+            float length = (float) Math.sqrt(planes[p] * planes[p] + planes[p + 1] * planes[p + 1] + planes[p + 2] * planes[p + 2]);
+            if (length > 0.0f) {
+                planes[p] /= length; planes[p + 1] /= length; planes[p + 2] /= length; planes[p + 3] /= length;
+            }
+        }
+        return this;
+    }
+
+    /* OUTSIDE if b is certainly not visible, INSIDE if it is entirely within every plane, else INTERSECTING.
+       The sphere answers most cases cheaply and the box settles the ones it straddles */
+    public int Classify(bounds b) {
+        if (b.IsEmpty()) {
+            return OUTSIDE;
+        }
+        int result = INSIDE;
+        for (int p = 0; p < 24; p += 4) {
+            float a = planes[p], bb = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+            float distance = a * b.centerX + bb * b.centerY + c * b.centerZ + d;
+            if (distance >= b.radius) {
+                continue;
+            }
+            if (distance < -b.radius) {
+                return OUTSIDE;
+            }
+
+            /* Box corner furthest along the plane normal, if even that is behind the plane so is the box */
+            float far = a * (a >= 0.0f ? b.maxX : b.minX) + bb * (bb >= 0.0f ? b.maxY : b.minY) + c * (c >= 0.0f ? b.maxZ : b.minZ) + d;
+            if (far < 0.0f) {
+                return OUTSIDE;
+            }
+            float near = a * (a >= 0.0f ? b.minX : b.maxX) + bb * (bb >= 0.0f ? b.minY : b.maxY) + c * (c >= 0.0f ? b.minZ : b.maxZ) + d;
+            if (near < 0.0f) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+
+    /* Box only version of Classify for bounds kept as loose floats */
+    public int Classify(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int result = INSIDE;
+        for (int p = 0; p < 24; p += 4) {
+            float a = planes[p], b = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+            float far = a * (a >= 0.0f ? maxX : minX) + b * (b >= 0.0f ? maxY : minY) + c * (c >= 0.0f ? maxZ : minZ) + d;
+            if (far < 0.0f) {
+                return OUTSIDE;
+            }
+            float near = a * (a >= 0.0f ? minX : maxX) + b * (b >= 0.0f ? minY : maxY) + c * (c >= 0.0f ? minZ : maxZ) + d;
+            if (near < 0.0f) {
+                result = INTERSECTING;
+            }
+        }
+        return result;
+    }
+}
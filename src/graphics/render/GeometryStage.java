@@ -0,0 +1,480 @@
+package graphics.render;
+
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import graphics.structures.vec3d;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static graphics.utility.MatrixUtil.*;
+import static graphics.utility.PoolUtil.*;
+
+/* Frustum cull, backface test, transform to clip space, clipping and perspective divide of a mesh
+   into a TriangleBuffer of screen space triangles. The mesh and then each of its triangle chunks
+   (mesh.CHUNK_TRIANGLES) are tested against the view frustum, and chunks entirely outside skip every
+   later step. The backface test runs in object space on the mesh's precomputed face planes against
+   the camera brought into object space, a chunk at a time, and chunks facing away entirely stop
+   there. The vertices of the facing triangles in the others are gathered, each once however many
+   triangles share it, then transformed, outcoded and projected in one BatchTransform pass,
+   vectorised where the JVM allows, and the triangles are assembled from the results. Lit shade
+   modes work out the light intensity of each gathered vertex or each facing triangle on the way,
+   from the mesh's normals and the lights brought into object space. Large meshes
+   are split into contiguous runs of visible chunks that the calling thread and a worker pool take
+   from a shared counter, each run writing into its own buffer. The buffers are appended in order afterwards, so the output is identical to
+   running the whole mesh on one thread. Given a DepthPyramid, chunks in the frustum are also
+   tested against it and those it hides go no further */
+public class GeometryStage {
+    /* Below this many triangles the fork/join overhead outweighs the gain and everything runs on the caller */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 100000;
+
+    /* Chunks per worker, more than one so a slow chunk doesn't leave the other workers idle */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /* Triangles are clipped against the sides of the view only beyond this many times the visible
+       extent, closer ones are left to the rasterizers' scissor */
+    private static final float GUARD_BAND = 16.0f;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final float width, height;
+    private final mat4x4 matProj;
+
+    /* Runs are created once and reassigned every frame, workers and the calling thread pull them from a shared counter */
+    private final Chunk[] chunks;
+    private final ChunkWorker[] workers;
+    private final RecursiveAction frameTask;
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    private final Runnable projectChunks = this::ProjectChunks;
+
+    private final Frustum frustum = new Frustum();
+    private final mat4x4 matWorldViewProj = new mat4x4(), matViewProj = new mat4x4(), matWorldInv = new mat4x4();
+
+    /* Mesh chunks that survived culling, in mesh order */
+    private int[] visibleChunks = new int[0];
+    private int nVisibleChunks, nOccludedChunks;
+    private int nVerticesTransformed;
+    private int nTrianglesIn, nTrianglesCulled, nTrianglesClipped;
+
+    /* Inputs of the frame being processed */
+    private mesh meshObj;
+    private final vec3d vCameraObject = new vec3d(0.0f, 0.0f, 0.0f);
+
+    /* -1 when the world matrix mirrors, which turns every triangle's winding around */
+    private float fFacing;
+
+    /* Shading and the lights in the object space of the mesh being processed */
+    private ShadeMode shading = ShadeMode.WIREFRAME;
+    private Lighting lighting;
+    private final float[] objectLights = new float[Lighting.MAX_LIGHTS * Lighting.LIGHT_STRIDE];
+    private int nObjectLights;
+    private float ambient;
+
+    public GeometryStage(ForkJoinPool pool, int width, int height, mat4x4 matProj) {
+        this(pool, width, height, matProj, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    public GeometryStage(ForkJoinPool pool, int width, int height, mat4x4 matProj, int parallelThreshold) {
+        this(pool, width, height, matProj, parallelThreshold, BatchTransform.BACKEND);
+    }
+
+    /* backend is BatchTransform.SCALAR or VECTOR, for comparing the two in one JVM */
+    public GeometryStage(ForkJoinPool pool, int width, int height, mat4x4 matProj, int parallelThreshold, String backend) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        this.width = width;
+        this.height = height;
+        this.matProj = matProj;
+
+        this.chunks = new Chunk[pool.getParallelism() * CHUNKS_PER_WORKER];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(backend);
+        }
+        this.workers = new ChunkWorker[pool.getParallelism()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new ChunkWorker();
+        }
+        this.frameTask = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                for (ChunkWorker worker : workers) {
+                    worker.reinitialize();
+                }
+                InvokeAll(workers);
+            }
+        };
+    }
+
+    /* Light intensities to work out for the triangles from now on, lighting is read on every Process
+       and may change between them. WIREFRAME, the default, leaves them at 0 */
+    public void SetShading(ShadeMode shading, Lighting lighting) {
+        this.shading = shading;
+        this.lighting = lighting;
+    }
+
+    /* Replace the contents of out with the screen space triangles of meshObj seen from vCamera */
+    public void Process(mesh meshObj, mat4x4 matWorld, mat4x4 matView, vec3d vCamera, TriangleBuffer out) {
+        out.Clear();
+        Append(meshObj, matWorld, matView, vCamera, out);
+    }
+
+    /* As Process, but adds to whatever out already holds so several meshes can share one buffer */
+    public void Append(mesh meshObj, mat4x4 matWorld, mat4x4 matView, vec3d vCamera, TriangleBuffer out) {
+        Append(meshObj, matWorld, matView, vCamera, null, out);
+    }
+
+    /* As Append, also dropping the chunks occluders shows to be hidden when it isn't null */
+    public void Append(mesh meshObj, mat4x4 matWorld, mat4x4 matView, vec3d vCamera, DepthPyramid occluders, TriangleBuffer out) {
+        if (meshObj.chunkBounds.length != meshObj.ChunkCount()) {
+            meshObj.UpdateBounds();
+        }
+        if (meshObj.faceDistance.length != meshObj.TriangleCount()) {
+            meshObj.UpdateNormals();
+        }
+
+        /* Frustum in the mesh's object space, so the bounds computed at load time apply as they are */
+        MatrixMultiplyMatrix(matView, matProj, matViewProj);
+        MatrixMultiplyMatrix(matWorld, matViewProj, matWorldViewProj);
+        frustum.Set(matWorldViewProj);
+        CullChunks(meshObj, occluders);
+
+        nVerticesTransformed = 0;
+        nTrianglesIn = meshObj.TriangleCount();
+        nTrianglesCulled = nTrianglesIn;
+        nTrianglesClipped = 0;
+
+        /* A singular world matrix flattens the mesh to nothing visible */
+        if (nVisibleChunks == 0 || MatrixInverse(matWorld, matWorldInv) == null) {
+            nVisibleChunks = 0;
+            return;
+        }
+        MatrixMultiplyVector(matWorldInv, vCamera, vCameraObject);
+        fFacing = Determinant3x3(matWorld) < 0.0f ? -1.0f : 1.0f;
+        if (shading != ShadeMode.WIREFRAME) {
+            nObjectLights = lighting.ToObjectSpace(matWorldInv, objectLights);
+            ambient = lighting.ambient;
+        }
+        this.meshObj = meshObj;
+
+        int nAccepted = 0;
+        if ((long) nVisibleChunks * mesh.CHUNK_TRIANGLES < parallelThreshold) {
+            Chunk chunk = chunks[0];
+            chunk.Assign(0, nVisibleChunks, out);
+            chunk.ProjectTriangles();
+            nVerticesTransformed = chunk.nTransformed;
+            nAccepted = chunk.nAccepted;
+            nTrianglesClipped = chunk.nClipped;
+        } else {
+            int nChunks = chunks.length;
+            for (int i = 0; i < nChunks; i++) {
+                Chunk chunk = chunks[i];
+                chunk.Assign((int) ((long) nVisibleChunks * i / nChunks), (int) ((long) nVisibleChunks * (i + 1) / nChunks), chunk.ownBuffer);
+                chunk.ownBuffer.Clear();
+            }
+            nextChunk.set(0);
+            frameTask.reinitialize();
+            Invoke(pool, frameTask, projectChunks);
+
+            for (Chunk chunk : chunks) {
+                out.AddAll(chunk.ownBuffer);
+                nVerticesTransformed += chunk.nTransformed;
+                nAccepted += chunk.nAccepted;
+                nTrianglesClipped += chunk.nClipped;
+            }
+        }
+        nTrianglesCulled = nTrianglesIn - nAccepted - nTrianglesClipped;
+        this.meshObj = null;
+    }
+
+    /* Mesh chunks that passed the frustum test in the last Process */
+    public int ChunksVisible() {
+        return nVisibleChunks;
+    }
+
+    /* Vertices run through the transform in the last Process */
+    public int VerticesTransformed() {
+        return nVerticesTransformed;
+    }
+
+    /* Triangles of the mesh in the last Process */
+    public int TrianglesIn() {
+        return nTrianglesIn;
+    }
+
+    /* Triangles of the last Process that produced nothing, outside the frustum or facing away */
+    public int TrianglesCulled() {
+        return nTrianglesCulled;
+    }
+
+    /* Triangles of the last Process that were cut by a clip plane */
+    public int TrianglesClipped() {
+        return nTrianglesClipped;
+    }
+
+    /* Mesh chunks of the last Process that were in the frustum but hidden behind the occluders */
+    public int ChunksOccluded() {
+        return nOccludedChunks;
+    }
+
+    private void CullChunks(mesh meshObj, DepthPyramid occluders) {
+        int nChunks = meshObj.ChunkCount();
+        if (visibleChunks.length < nChunks) {
+            visibleChunks = new int[nChunks];
+        }
+        nVisibleChunks = 0;
+        nOccludedChunks = 0;
+
+        int meshClass = frustum.Classify(meshObj.meshBounds);
+        if (meshClass == Frustum.OUTSIDE) {
+            return;
+        }
+        for (int c = 0; c < nChunks; c++) {
+            /* Chunks of a mesh entirely inside are too */
+            if (meshClass == Frustum.INSIDE || frustum.Classify(meshObj.chunkBounds[c]) != Frustum.OUTSIDE) {
+                if (occluders != null && occluders.Occluded(meshObj.chunkBounds[c], matWorldViewProj)) {
+                    nOccludedChunks++;
+                    continue;
+                }
+                visibleChunks[nVisibleChunks++] = c;
+            }
+        }
+    }
+
+    private static float Determinant3x3(mat4x4 matrix) {
+        float[] m = matrix.m;
+        return m[0] * (m[5] * m[10] - m[6] * m[9])
+             - m[1] * (m[4] * m[10] - m[6] * m[8])
+             + m[2] * (m[4] * m[9] - m[5] * m[8]);
+    }
+
+    /* Project runs until there are none left to take */
+    private void ProjectChunks() {
+        int nChunks = chunks.length;
+        for (int i = nextChunk.getAndIncrement(); i < nChunks; i = nextChunk.getAndIncrement()) {
+            chunks[i].ProjectTriangles();
+        }
+    }
+
+    private class ChunkWorker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            ProjectChunks();
+        }
+    }
+
+    /* A contiguous run of the visible mesh chunks */
+    private class Chunk {
+        private int visibleStart, visibleEnd;
+        private TriangleBuffer output;
+
+        /* Preallocated per chunk, reused every frame */
+        private final TriangleBuffer ownBuffer = new TriangleBuffer();
+        private final float[] projected = new float[TriangleBuffer.STRIDE];
+        private final Clipper clipper = NewClipper();
+
+        /* Facing triangles and transformed vertices of the mesh chunk being processed */
+        private final BatchTransform batch;
+        private int nBatch;
+
+        /* Batch slot of each vertex in the mesh chunk's vertex range, at vertex - chunkVertexStart. A slot
+           is valid when its stamp matches, so moving to the next mesh chunk costs one increment */
+        private int[] slot = new int[0], slotStamp = new int[0];
+        private int stamp;
+
+        /* Batch slots of the corners of the facing triangles, three per triangle in mesh order */
+        private final int[] corners = new int[mesh.CHUNK_TRIANGLES * 3];
+
+        /* Light intensity of each batch vertex for GOURAUD, or of each facing triangle otherwise */
+        private float[] vertexShade = new float[0];
+        private final float[] triangleShade = new float[mesh.CHUNK_TRIANGLES];
+        private int nTransformed, nAccepted, nClipped;
+
+        Chunk(String backend) {
+            batch = BatchTransform.New(clipper, backend);
+        }
+
+        void Assign(int visibleStart, int visibleEnd, TriangleBuffer output) {
+            this.visibleStart = visibleStart;
+            this.visibleEnd = visibleEnd;
+            this.output = output;
+            this.nTransformed = 0;
+            this.nAccepted = 0;
+            this.nClipped = 0;
+        }
+
+        void ProjectTriangles() {
+            float cx = vCameraObject.x, cy = vCameraObject.y, cz = vCameraObject.z;
+            for (int k = visibleStart; k < visibleEnd; k++) {
+                int c = visibleChunks[k];
+                int first = c * mesh.CHUNK_TRIANGLES, last = Math.min(meshObj.TriangleCount(), first + mesh.CHUNK_TRIANGLES);
+
+                /* Draw triangles facing the camera only, and skip the vertices of a chunk that faces away entirely */
+                if (batch.Facing(meshObj, first, last, cx, cy, cz, fFacing) == 0) {
+                    continue;
+                }
+                int nCorners = Gather(first, last, meshObj.chunkVertexStart[c], meshObj.chunkVertexEnd[c]);
+                batch.Transform(nBatch, matWorldViewProj, width, height);
+                nTransformed += nBatch;
+                ProjectTriangles(nCorners);
+            }
+        }
+
+        /* Copy the vertices of the facing triangles among triStart to triEnd - 1 into the batch, each
+           once however many of them share it, and note the batch slot of every corner. Returns the
+           number of corners, three per facing triangle */
+        private int Gather(int triStart, int triEnd, int vertexStart, int vertexEnd) {
+            int range = Math.max(0, vertexEnd - vertexStart);
+            if (slotStamp.length < range) {
+                slot = new int[range];
+                slotStamp = new int[range];
+                stamp = 0;
+            }
+            if (++stamp == 0) {
+                Arrays.fill(slotStamp, 0);
+                stamp = 1;
+            }
+            int capacity = Math.min(range, (triEnd - triStart) * 3);
+            batch.Reserve(capacity);
+            boolean gouraud = shading == ShadeMode.GOURAUD, flat = shading == ShadeMode.FLAT;
+            if (gouraud && vertexShade.length < capacity) {
+                vertexShade = new float[capacity];
+            }
+
+            int[] indices = meshObj.indices;
+            float[] vertices = meshObj.vertices, x = batch.x, y = batch.y, z = batch.z;
+            boolean[] facing = batch.facing;
+            int nCorners = 0;
+            nBatch = 0;
+            for (int t = triStart; t < triEnd; t++) {
+                if (!facing[t - triStart]) {
+                    continue;
+                }
+                if (flat) {
+                    triangleShade[nCorners / 3] = ShadeTriangle(t);
+                }
+                for (int k = t * 3; k < t * 3 + 3; k++) {
+                    int v = indices[k], r = v - vertexStart;
+                    if (slotStamp[r] != stamp) {
+                        slotStamp[r] = stamp;
+                        slot[r] = nBatch;
+                        x[nBatch] = vertices[v * 3];
+                        y[nBatch] = vertices[v * 3 + 1];
+                        z[nBatch] = vertices[v * 3 + 2];
+                        if (gouraud) {
+                            vertexShade[nBatch] = ShadeVertex(v);
+                        }
+                        nBatch++;
+                    }
+                    corners[nCorners++] = slot[r];
+                }
+            }
+            return nCorners;
+        }
+
+        /* Intensity at vertex v from its vertex normal, which faces the other way in a mirrored mesh as the triangles do */
+        private float ShadeVertex(int v) {
+            float[] vertices = meshObj.vertices, normals = meshObj.vertexNormals;
+            return Lighting.Shade(objectLights, nObjectLights, ambient,
+                    vertices[v * 3], vertices[v * 3 + 1], vertices[v * 3 + 2],
+                    normals[v * 3] * fFacing, normals[v * 3 + 1] * fFacing, normals[v * 3 + 2] * fFacing);
+        }
+
+        /* Intensity at the centre of triangle t from its face normal */
+        private float ShadeTriangle(int t) {
+            int[] indices = meshObj.indices;
+            float[] vertices = meshObj.vertices;
+            int i0 = indices[t * 3] * 3, i1 = indices[t * 3 + 1] * 3, i2 = indices[t * 3 + 2] * 3;
+            float third = 1.0f / 3.0f;
+            return Lighting.Shade(objectLights, nObjectLights, ambient,
+                    (vertices[i0] + vertices[i1] + vertices[i2]) * third,
+                    (vertices[i0 + 1] + vertices[i1 + 1] + vertices[i2 + 1]) * third,
+                    (vertices[i0 + 2] + vertices[i1 + 2] + vertices[i2 + 2]) * third,
+                    meshObj.faceNormalX[t] * fFacing, meshObj.faceNormalY[t] * fFacing, meshObj.faceNormalZ[t] * fFacing);
+        }
+
+        /* Assemble the gathered triangles from the transformed batch */
+        private void ProjectTriangles(int nCorners) {
+            int[] codes = batch.codes;
+            float[] screenX = batch.screenX, screenY = batch.screenY, screenZ = batch.screenZ;
+            float[] clipX = batch.clipX, clipY = batch.clipY, clipZ = batch.clipZ, clipW = batch.clipW;
+            boolean gouraud = shading == ShadeMode.GOURAUD;
+
+            for (int i = 0; i < nCorners; i += 3) {
+                int s0 = corners[i], s1 = corners[i + 1], s2 = corners[i + 2];
+                int c0 = codes[s0], c1 = codes[s1], c2 = codes[s2];
+                float f0, f1, f2;
+                if (gouraud) {
+                    f0 = vertexShade[s0]; f1 = vertexShade[s1]; f2 = vertexShade[s2];
+                } else {
+                    f0 = f1 = f2 = triangleShade[i / 3];
+                }
+
+                /* Most triangles are rejected or accepted on their vertices' outcodes alone */
+                if ((c0 & c1 & c2) != 0) {
+                    continue;
+                }
+                if (((c0 | c1 | c2) & Clipper.CLIP_BITS) == 0) {
+                    projected[0] = screenX[s0]; projected[1] = screenY[s0]; projected[2] = screenZ[s0];
+                    projected[3] = screenX[s1]; projected[4] = screenY[s1]; projected[5] = screenZ[s1];
+                    projected[6] = screenX[s2]; projected[7] = screenY[s2]; projected[8] = screenZ[s2];
+                    projected[9] = f0; projected[10] = f1; projected[11] = f2;
+                    output.Add(projected);
+                    nAccepted++;
+                    continue;
+                }
+
+                /* Clip before the divide */
+                clipper.Begin();
+                clipper.AddVertex(clipX[s0], clipY[s0], clipZ[s0], clipW[s0], f0);
+                clipper.AddVertex(clipX[s1], clipY[s1], clipZ[s1], clipW[s1], f1);
+                clipper.AddVertex(clipX[s2], clipY[s2], clipZ[s2], clipW[s2], f2);
+                int nVertices = clipper.Clip();
+                if (nVertices == 0) {
+                    continue;
+                }
+                nClipped++;
+
+                /* Divide and scale to view, then fan the clipped polygon back into triangles */
+                Project(0, 0);
+                for (int k = 2; k < nVertices; k++) {
+                    Project(k - 1, 1);
+                    Project(k, 2);
+                    output.Add(projected);
+                }
+            }
+        }
+
+        /* Clipped vertex k in screen space, into corner p of projected */
+        private void Project(int k, int p) {
+            float w = clipper.W(k);
+            projected[p * 3]     = (clipper.X(k) / w + 1.0f) * 0.5f * width;
+            projected[p * 3 + 1] = (clipper.Y(k) / w + 1.0f) * 0.5f * height;
+            projected[p * 3 + 2] = clipper.Z(k) / w;
+            projected[9 + p] = clipper.S(k);
+        }
+    }
+
+    /* Rejects against the six frustum planes in clip space, -w <= x, y <= w and 0 <= z <= w, and clips
+       against near, far and the guard band */
+    public static Clipper NewClipper() {
+        Clipper clipper = new Clipper();
+        clipper.AddRejectPlane(1.0f, 0.0f, 0.0f, 1.0f);
+        clipper.AddRejectPlane(-1.0f, 0.0f, 0.0f, 1.0f);
+        clipper.AddRejectPlane(0.0f, 1.0f, 0.0f, 1.0f);
+        clipper.AddRejectPlane(0.0f, -1.0f, 0.0f, 1.0f);
+        clipper.AddRejectPlane(0.0f, 0.0f, 1.0f, 0.0f);
+        clipper.AddRejectPlane(0.0f, 0.0f, -1.0f, 1.0f);
+
+        clipper.AddPlane(0.0f, 0.0f, 1.0f, 0.0f);
+        clipper.AddPlane(0.0f, 0.0f, -1.0f, 1.0f);
+        clipper.AddPlane(1.0f, 0.0f, 0.0f, GUARD_BAND);
+        clipper.AddPlane(-1.0f, 0.0f, 0.0f, GUARD_BAND);
+        clipper.AddPlane(0.0f, 1.0f, 0.0f, GUARD_BAND);
+        clipper.AddPlane(0.0f, -1.0f, 0.0f, GUARD_BAND);
+        return clipper;
+    }
+}
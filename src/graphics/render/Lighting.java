@@ -0,0 +1,117 @@
+package graphics.render;
+
+import graphics.structures.mat4x4;
+
+/* Lights for the FLAT and GOURAUD ShadeModes. The intensity at a point with unit normal n is ambient
+   plus, for each light, its intensity times n . l, where l is the unit vector towards the light,
+   counting only lights in front of the surface and clamped to 1. Directional lights are infinitely
+   far away so l is the same everywhere, point lights fade with distance d as 1 / (1 + (d / range)^2).
+   Lights are placed in world space and GeometryStage brings them into each mesh's object space once
+   per mesh, so no normal is ever transformed. Distances are then object space ones, the same as in
+   world space as long as world matrices only rotate and translate */
+public class Lighting {
+    public static final int MAX_LIGHTS = 8;
+
+    /* Packed per light as kind, x, y, z, intensity, 1 / range^2 */
+    static final int LIGHT_STRIDE = 6;
+    private static final float DIRECTIONAL = 0.0f, POINT = 1.0f;
+
+    public float ambient = 0.1f;
+
+    private final float[] lights = new float[MAX_LIGHTS * LIGHT_STRIDE];
+    private int nLights;
+
+    /* A light infinitely far away in direction (dx, dy, dz) from everything it lights, returns its index */
+    public int AddDirectional(float dx, float dy, float dz, float intensity) {
+        int light = Add(DIRECTIONAL, intensity, 0.0f);
+        Move(light, dx, dy, dz);
+        return light;
+    }
+
+    /* A light at (x, y, z) that has faded to half its intensity range units away, returns its index */
+    public int AddPoint(float x, float y, float z, float intensity, float range) {
+        int light = Add(POINT, intensity, 1.0f / (range * range));
+        Move(light, x, y, z);
+        return light;
+    }
+
+    /* Set a point light's position or a directional light's direction */
+    public void Move(int light, float x, float y, float z) {
+        int o = light * LIGHT_STRIDE;
+        if (lights[o] == DIRECTIONAL) {
+            float l = (float) Math.sqrt(x * x + y * y + z * z);
+            if (l > 0.0f) {
+                x /= l; y /= l; z /= l;
+            }
+        }
+        lights[o + 1] = x; lights[o + 2] = y; lights[o + 3] = z;
+    }
+
+    public int LightCount() {
+        return nLights;
+    }
+
+    public void Clear() {
+        nLights = 0;
+    }
+
+    /* Pack the lights into out as seen from the object space of a mesh whose world matrix has the
+       inverse matWorldInv, returns how many there are */
+    int ToObjectSpace(mat4x4 matWorldInv, float[] out) {
+        float[] m = matWorldInv.m;
+        for (int o = 0; o < nLights * LIGHT_STRIDE; o += LIGHT_STRIDE) {
+            float x = lights[o + 1], y = lights[o + 2], z = lights[o + 3];
+            float w = lights[o] == POINT ? 1.0f : 0.0f;
+            float ox = x * m[0] + y * m[4] + z * m[8] + w * m[12];
+            float oy = x * m[1] + y * m[5] + z * m[9] + w * m[13];
+            float oz = x * m[2] + y * m[6] + z * m[10] + w * m[14];
+            if (lights[o] == DIRECTIONAL) {
+                /* A scaled world matrix stretches directions too, n . l needs l back at unit length */
+                float l = (float) Math.sqrt(ox * ox + oy * oy + oz * oz);
+                if (l > 0.0f) {
+                    ox /= l; oy /= l; oz /= l;
+                }
+            }
+            out[o] = lights[o];
+            out[o + 1] = ox; out[o + 2] = oy; out[o + 3] = oz;
+            out[o + 4] = lights[o + 4];
+            out[o + 5] = lights[o + 5];
+        }
+        return nLights;
+    }
+
+    /* Intensity at point (px, py, pz) with unit normal (nx, ny, nz), all in the space the packed
+       lights were brought into by ToObjectSpace */
+    static float Shade(float[] lights, int nLights, float ambient, float px, float py, float pz, float nx, float ny, float nz) {
+        float intensity = ambient;
+        for (int o = 0; o < nLights * LIGHT_STRIDE; o += LIGHT_STRIDE) {
+            float lx = lights[o + 1], ly = lights[o + 2], lz = lights[o + 3], strength = lights[o + 4];
+            if (lights[o] == POINT) {
+                lx -= px; ly -= py; lz -= pz;
+                float d2 = lx * lx + ly * ly + lz * lz;
+                if (!(d2 > 0.0f)) {
+                    continue;
+                }
+                float inv = 1.0f / (float) Math.sqrt(d2);
+                lx *= inv; ly *= inv; lz *= inv;
+                strength /= 1.0f + d2 * lights[o + 5];
+            }
+            float dot = nx * lx + ny * ly + nz * lz;
+            if (dot > 0.0f) {
+                intensity += dot * strength;
+            }
+        }
+        return Math.min(1.0f, Math.max(0.0f, intensity));
+    }
+
+    private int Add(float kind, float intensity, float invRange2) {
+        if (nLights == MAX_LIGHTS) {
+            throw new IllegalStateException("at most " + MAX_LIGHTS + " lights");
+        }
+        int o = nLights * LIGHT_STRIDE;
+        lights[o] = kind;
+        lights[o + 4] = intensity;
+        lights[o + 5] = invRange2;
+        return nLights++;
+    }
+}
@@ -0,0 +1,157 @@
+package graphics.render;
+
+import static java.lang.Math.*;
+
+/* Edge function rasterizer writing straight into a FrameBuffer with a per-pixel depth test.
+   Depth is the post-divide z, which is linear in screen space, and smaller is closer. Triangles are
+   either filled with one colour and outlined, or shaded from a light intensity per vertex,
+   interpolated the same way as depth and looked up in a ShadeTable's colours */
+public class Rasterizer {
+    private static final int SUBPIXEL_BITS = 4;
+    private static final int SUBPIXEL_SCALE = 1 << SUBPIXEL_BITS;
+    private static final float COORD_LIMIT = 1 << 24;
+
+    private final FrameBuffer target;
+
+    public Rasterizer(FrameBuffer target) {
+        this.target = target;
+    }
+
+    /* Fill a screen space triangle with fillRgb, pixels within one pixel of an edge get edgeRgb */
+    public void FillTriangle(float x0, float y0, float z0,
+                             float x1, float y1, float z1,
+                             float x2, float y2, float z2,
+                             int fillRgb, int edgeRgb) {
+        FillTriangle(x0, y0, z0, x1, y1, z1, x2, y2, z2, fillRgb, edgeRgb, 0, 0, target.width - 1, target.height - 1);
+    }
+
+    /* As above but only touching pixels inside the inclusive scissor rectangle */
+    public void FillTriangle(float x0, float y0, float z0,
+                             float x1, float y1, float z1,
+                             float x2, float y2, float z2,
+                             int fillRgb, int edgeRgb,
+                             int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        Rasterize(x0, y0, z0, 0.0f, x1, y1, z1, 0.0f, x2, y2, z2, 0.0f, null, fillRgb, edgeRgb, clipMinX, clipMinY, clipMaxX, clipMaxY);
+    }
+
+    /* Fill a screen space triangle with the colours of shades for intensities s0, s1 and s2 at its
+       vertices, between 0 and 1 */
+    public void ShadeTriangle(float x0, float y0, float z0, float s0,
+                              float x1, float y1, float z1, float s1,
+                              float x2, float y2, float z2, float s2,
+                              int[] shades) {
+        ShadeTriangle(x0, y0, z0, s0, x1, y1, z1, s1, x2, y2, z2, s2, shades, 0, 0, target.width - 1, target.height - 1);
+    }
+
+    public void ShadeTriangle(float x0, float y0, float z0, float s0,
+                              float x1, float y1, float z1, float s1,
+                              float x2, float y2, float z2, float s2,
+                              int[] shades,
+                              int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        Rasterize(x0, y0, z0, s0, x1, y1, z1, s1, x2, y2, z2, s2, shades, 0, 0, clipMinX, clipMinY, clipMaxX, clipMaxY);
+    }
+
+    /* Shaded with shades, or filled and outlined when shades is null */
+    private void Rasterize(float x0, float y0, float z0, float s0,
+                           float x1, float y1, float z1, float s1,
+                           float x2, float y2, float z2, float s2,
+                           int[] shades, int fillRgb, int edgeRgb,
+                           int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        /* Snap to fixed point so edge functions are exact integers and stepping them gives the same
+           value for a pixel no matter where in the triangle, or which tile, the walk started */
+        long X0 = Snap(x0), Y0 = Snap(y0), X1 = Snap(x1), Y1 = Snap(y1), X2 = Snap(x2), Y2 = Snap(y2);
+        long area = (X1 - X0) * (Y2 - Y0) - (Y1 - Y0) * (X2 - X0);
+        if (area == 0) {
+            return;
+        }
+
+        /* Flip the winding if needed so inside means all three edge functions are >= 0 */
+        if (area < 0) {
+            long t;
+            t = X1; X1 = X2; X2 = t;
+            t = Y1; Y1 = Y2; Y2 = t;
+            float tz = z1; z1 = z2; z2 = tz;
+            float ts = s1; s1 = s2; s2 = ts;
+            area = -area;
+        }
+
+        int minX = max(clipMinX, (int) (min(X0, min(X1, X2)) >> SUBPIXEL_BITS));
+        int maxX = min(clipMaxX, (int) (max(X0, max(X1, X2)) >> SUBPIXEL_BITS));
+        int minY = max(clipMinY, (int) (min(Y0, min(Y1, Y2)) >> SUBPIXEL_BITS));
+        int maxY = min(clipMaxY, (int) (max(Y0, max(Y1, Y2)) >> SUBPIXEL_BITS));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        /* Edge function coefficients, stepping one whole pixel is SUBPIXEL_SCALE sub-pixel units */
+        long a0 = Y1 - Y2, b0 = X2 - X1;
+        long a1 = Y2 - Y0, b1 = X0 - X2;
+        long a2 = Y0 - Y1, b2 = X1 - X0;
+
+        /* Scaling an edge function by these gives the distance to that edge in pixels */
+        float k0 = 1.0f / (float) (sqrt((double) (a0 * a0 + b0 * b0)) * SUBPIXEL_SCALE);
+        float k1 = 1.0f / (float) (sqrt((double) (a1 * a1 + b1 * b1)) * SUBPIXEL_SCALE);
+        float k2 = 1.0f / (float) (sqrt((double) (a2 * a2 + b2 * b2)) * SUBPIXEL_SCALE);
+
+        /* Depth from the barycentric weights of vertices 1 and 2 */
+        float invArea = 1.0f / (float) area;
+        float dz1 = (z1 - z0) * invArea, dz2 = (z2 - z0) * invArea;
+
+        /* Evaluate at the centre of the top left pixel of the bounding box */
+        long px = ((long) minX << SUBPIXEL_BITS) + SUBPIXEL_SCALE / 2;
+        long py = ((long) minY << SUBPIXEL_BITS) + SUBPIXEL_SCALE / 2;
+        long w0Row = (px - X1) * a0 + (py - Y1) * b0;
+        long w1Row = (px - X2) * a1 + (py - Y2) * b1;
+        long w2Row = (px - X0) * a2 + (py - Y0) * b2;
+        long stepX0 = a0 << SUBPIXEL_BITS, stepX1 = a1 << SUBPIXEL_BITS, stepX2 = a2 << SUBPIXEL_BITS;
+        long stepY0 = b0 << SUBPIXEL_BITS, stepY1 = b1 << SUBPIXEL_BITS, stepY2 = b2 << SUBPIXEL_BITS;
+
+        int width = target.width;
+        int[] pixels = target.pixels;
+        float[] depth = target.depth;
+
+        if (shades != null) {
+            /* Intensity scaled to table entries and rounded, interpolated like depth */
+            float scale = ShadeTable.SIZE - 1;
+            float e0 = s0 * scale + 0.5f, de1 = (s1 - s0) * scale * invArea, de2 = (s2 - s0) * scale * invArea;
+            for (int y = minY; y <= maxY; y++) {
+                long w0 = w0Row, w1 = w1Row, w2 = w2Row;
+                int index = y * width + minX;
+                for (int x = minX; x <= maxX; x++, index++) {
+                    if ((w0 | w1 | w2) >= 0) {
+                        float z = z0 + w1 * dz1 + w2 * dz2;
+                        if (z < depth[index]) {
+                            depth[index] = z;
+                            pixels[index] = shades[(int) (e0 + w1 * de1 + w2 * de2)];
+                        }
+                    }
+                    w0 += stepX0; w1 += stepX1; w2 += stepX2;
+                }
+                w0Row += stepY0; w1Row += stepY1; w2Row += stepY2;
+            }
+            return;
+        }
+
+        for (int y = minY; y <= maxY; y++) {
+            long w0 = w0Row, w1 = w1Row, w2 = w2Row;
+            int index = y * width + minX;
+            for (int x = minX; x <= maxX; x++, index++) {
+                if ((w0 | w1 | w2) >= 0) {
+                    float z = z0 + w1 * dz1 + w2 * dz2;
+                    if (z < depth[index]) {
+                        depth[index] = z;
+                        float edge = min(w0 * k0, min(w1 * k1, w2 * k2));
+                        pixels[index] = edge < 1.0f ? edgeRgb : fillRgb;
+                    }
+                }
+                w0 += stepX0; w1 += stepX1; w2 += stepX2;
+            }
+            w0Row += stepY0; w1Row += stepY1; w2Row += stepY2;
+        }
+    }
+
+    /* Convert to fixed point, clamped so the products in the edge functions cannot overflow a long */
+    private static long Snap(float v) {
+        return (long) (max(-COORD_LIMIT, min(COORD_LIMIT, v)) * SUBPIXEL_SCALE);
+    }
+}
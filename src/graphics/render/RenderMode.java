@@ -0,0 +1,11 @@
+package graphics.render;
+
+/* Which back end draws the projected triangles */
+public enum RenderMode {
+    /* Depth sort, clip against the window edges and draw with AWT fillPolygon/drawLine */
+    PAINTER,
+    /* Single threaded depth buffered Rasterizer */
+    ZBUFFER,
+    /* Parallel binning TileRasterizer */
+    TILED
+}
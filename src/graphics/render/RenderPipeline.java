@@ -0,0 +1,130 @@
+package graphics.render;
+
+import graphics.metrics.FrameMetrics;
+import graphics.metrics.FrameSample;
+import graphics.metrics.Stage;
+import graphics.scene.Scene;
+
+/* Runs a Renderer as two stages on two threads. Submit runs Renderer.Prepare on the calling thread,
+   scene update, culling and geometry, into a free FramePacket and queues it. A raster thread takes
+   queued packets in order, runs Renderer.Draw and hands the finished frame buffer to a Presenter.
+   Packets go round between the two on a pair of SpscQueues and are all allocated up front. With
+   two packets the geometry of frame N + 1 runs while frame N is drawn and presented, so on more
+   than one core the frame rate tends towards the slower stage rather than the sum of both. Submit
+   blocks once every packet is in flight, which bounds the latency to that many frames. Each frame
+   is recorded in the renderer's metrics when presented, its frame time being the full latency from
+   the start of Prepare. A frame that fails to draw or present is dropped and the pipeline carries
+   on, but the first failure is kept and thrown from every later Submit and Drain */
+public class RenderPipeline {
+    /* Called on the raster thread once a frame is drawn, frameBuffer belongs to the pipeline until it returns */
+    public interface Presenter {
+        void Present(FrameBuffer frameBuffer, long frame);
+    }
+
+    private final Renderer renderer;
+    private final FrameMetrics metrics;
+    private final Presenter presenter;
+    private final int depth;
+    private final SpscQueue<FramePacket> free, queued;
+    private final Thread rasterThread;
+    private volatile boolean closed;
+    private volatile RuntimeException failure;
+    private long nextFrame;
+
+    /* depth is the number of packets in flight, 2 overlaps one frame's geometry with the previous frame's drawing */
+    public RenderPipeline(Renderer renderer, int depth, Presenter presenter) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be at least 1: " + depth);
+        }
+        this.renderer = renderer;
+        this.metrics = renderer.metrics;
+        this.presenter = presenter;
+        this.depth = depth;
+
+        int capacity = Integer.highestOneBit(Math.max(1, depth - 1)) << 1;
+        free = new SpscQueue<>(capacity);
+        queued = new SpscQueue<>(capacity);
+        for (int i = 0; i < depth; i++) {
+            free.Offer(new FramePacket());
+        }
+
+        rasterThread = new Thread(this::RasterLoop, "RenderPipelineRaster");
+        rasterThread.setDaemon(true);
+        rasterThread.start();
+    }
+
+    /* Prepare the next frame of scene and queue it for drawing, waiting for a free packet if need be.
+       Throws IllegalStateException once an earlier frame has failed */
+    public void Submit(Scene scene, Camera camera) throws InterruptedException {
+        ThrowIfFailed();
+        FramePacket packet = free.Take();
+        packet.frame = nextFrame++;
+        packet.sample.Begin();
+        renderer.Prepare(scene, camera, packet);
+        packet.sample.Suspend();
+        queued.Put(packet);
+    }
+
+    /* Wait until every submitted frame has been presented, throws IllegalStateException if any failed.
+       Putting the packets back makes this thread a second producer on free, which the raster thread
+       otherwise is alone. That is safe only because it holds every packet by then: the raster thread
+       puts back only packets it took from queued, queued is empty, and nothing is submitted until
+       Drain returns, so it cannot be in free.Put at the same time. Its last Put was seen by the last
+       Take here, and free has room for every packet, so these Puts never wait */
+    public void Drain() throws InterruptedException {
+        FramePacket[] packets = new FramePacket[depth];
+        for (int i = 0; i < depth; i++) {
+            packets[i] = free.Take();
+        }
+        for (FramePacket packet : packets) {
+            free.Put(packet);
+        }
+        ThrowIfFailed();
+    }
+
+    /* Stop the raster thread, frames not yet drawn are dropped */
+    public void Close() throws InterruptedException {
+        /* The flag as well as the interrupt, a presenter may swallow the interrupt and Take only sees
+           it once the queue is empty */
+        closed = true;
+        rasterThread.interrupt();
+        rasterThread.join();
+    }
+
+    private void ThrowIfFailed() {
+        RuntimeException e = failure;
+        if (e != null) {
+            throw new IllegalStateException("a frame failed to draw or present", e);
+        }
+    }
+
+    private void RasterLoop() {
+        try {
+            while (!closed) {
+                FramePacket packet = queued.Take();
+                if (closed) {
+                    break;
+                }
+                FrameSample sample = packet.sample;
+                try {
+                    sample.Resume();
+                    renderer.Draw(packet);
+
+                    sample.StageStart(Stage.PRESENT);
+                    presenter.Present(renderer.frameBuffer, packet.frame);
+                    sample.StageEnd(Stage.PRESENT);
+                    metrics.EndFrame(sample);
+                } catch (RuntimeException e) {
+                    /* Drop the frame but keep the pipeline going, Submit would otherwise wait forever.
+                       The packet going back to free publishes the failure to the submitting thread */
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                free.Put(packet);
+            }
+        } catch (InterruptedException e) {
+            /* Closed */
+        }
+    }
+}
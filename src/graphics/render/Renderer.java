@@ -0,0 +1,525 @@
+package graphics.render;
+
+import graphics.metrics.FrameMetrics;
+import graphics.metrics.FrameSample;
+import graphics.metrics.Stage;
+import graphics.scene.Scene;
+import graphics.scene.SceneNode;
+import graphics.structures.bounds;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import graphics.structures.triangle;
+import graphics.structures.vec3d;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static graphics.utility.MatrixUtil.*;
+import static graphics.utility.VectorUtil.*;
+
+/* Draws a mesh into an offscreen FrameBuffer with any of the RenderModes. Nothing here needs a
+   display, the window only presents frameBuffer.image and headless mode writes it out. Stage times
+   and triangle counts go into metrics, whose frames the caller brackets so presenting is included.
+   A frame is two halves, Prepare turns the scene into screen space triangles in a FramePacket and
+   Draw rasterizes a packet into frameBuffer. They share nothing but the worker pool, so a
+   RenderPipeline can run the geometry of one frame while another thread draws the previous one.
+   Triangles are lit by lighting as the ShadeMode asks, which the caller may change between frames.
+   Scene nodes hidden behind others are culled in two passes over a DepthPyramid, see Prepare */
+public class Renderer {
+    private static final int BACKGROUND_RGB = Color.BLACK.getRGB();
+    private static final int FILL_RGB = Color.BLACK.getRGB();
+    private static final int EDGE_RGB = Color.WHITE.getRGB();
+    private static final int SURFACE_RGB = 0xE0E0E0;
+
+    public final FrameBuffer frameBuffer;
+    public final FrameMetrics metrics = new FrameMetrics();
+    public final Lighting lighting = new Lighting();
+    private final RenderMode renderMode;
+    private final ShadeMode shading;
+    private final ShadeTable shadeTable = new ShadeTable(SURFACE_RGB);
+
+    /* Nodes at least this many pixels in radius on screen are rasterized as occluders, smaller ones
+       rarely cover a whole texel of the pyramid */
+    private static final float OCCLUDER_RADIUS = 16.0f;
+
+    /* Occluder triangles rasterized per pass, nearest first. Past the nearest few nodes more
+       occluders cost more to rasterize than the little they add hides */
+    private static final int OCCLUDER_TRIANGLES = 8192;
+
+    /* Frames drawn without the pyramid after one where it hid nothing, before trying it again */
+    private static final int OCCLUSION_BACKOFF = 8;
+
+    private final mat4x4 matProj; /* Projection matrix */
+    private final GeometryStage geometryStage;
+    private final Rasterizer rasterizer;
+    private final TileRasterizer tileRasterizer;
+    private final DepthPyramid occluders;
+    private boolean occlusionCulling = true;
+
+    /* Triangle ranges of the nodes waiting to be rasterized as occluders, with their squared distances
+       from the camera. Nearest first, a texel is mostly filled by the surface in front before any
+       behind it reach the uncovered pixels and push its depth back */
+    private int[] occluderFirst = new int[16], occluderLast = new int[16];
+    private float[] occluderDistance = new float[16];
+    private int nOccluders;
+    private int nOcclusionSkips;
+    private final FramePacket serialPacket = new FramePacket(new TriangleBuffer(), metrics.Current());
+    private Graphics2D painterGraphics;
+
+    /* Per frame scratch state, reused so steady state rendering allocates nothing */
+    private final mat4x4 matRotZ = new mat4x4(), matRotX = new mat4x4(), matRotZX = new mat4x4();
+    private final mat4x4 matTrans = new mat4x4(), matView = new mat4x4(), matViewProj = new mat4x4(), matWorldViewProj = new mat4x4();
+    private final Frustum frustum = new Frustum();
+    private int nChunksVisible, nNodesVisible, nVerticesTransformed;
+    private int nChunksOccluded, nNodesOccluded;
+    private int nTrianglesIn, nTrianglesCulled, nTrianglesClipped, nTrianglesDrawn;
+
+    /* Painter's path triangles are only clipped when they reach past this many pixels beyond a window
+       edge. Anything closer is handed to AWT whole, which scissors it to the window itself */
+    private static final float GUARD_BAND = 4096.0f;
+    private final Clipper guardBandClipper = new Clipper();
+
+    private triangle[] trianglesToRaster = new triangle[0];
+    private int nTrianglesToRaster;
+
+    /* Draw order of the pooled triangles and their sort keys, with the radix sort's scratch copies */
+    private int[] paintOrder = new int[0], paintKeys = new int[0], sortedOrder = new int[0], sortedKeys = new int[0];
+    private static final int RADIX_BITS = 8;
+    private final int[] radixCounts = new int[1 << RADIX_BITS];
+
+    private final int[] polygonX = new int[3 + Clipper.MAX_PLANES], polygonY = new int[3 + Clipper.MAX_PLANES];
+
+    public Renderer(int width, int height, RenderMode renderMode, ForkJoinPool workers) {
+        this(width, height, renderMode, ShadeMode.GOURAUD, workers);
+    }
+
+    /* lighting starts with one directional light from above and behind the camera */
+    public Renderer(int width, int height, RenderMode renderMode, ShadeMode shading, ForkJoinPool workers) {
+        this(width, height, renderMode, shading, workers, GeometryStage.DEFAULT_PARALLEL_THRESHOLD, BatchTransform.BACKEND);
+    }
+
+    /* parallelThreshold and backend as for GeometryStage, to pin them for comparing and measuring */
+    public Renderer(int width, int height, RenderMode renderMode, ShadeMode shading, ForkJoinPool workers, int parallelThreshold, String backend) {
+        this.frameBuffer = new FrameBuffer(width, height);
+        this.renderMode = renderMode;
+        this.shading = shading;
+        lighting.AddDirectional(0.0f, -1.0f, -1.0f, 0.9f);
+
+        matProj = MatrixMakeProjection(90.0f, (float)height / (float)width, 0.1f, 1000.0f);
+        geometryStage = new GeometryStage(workers, width, height, matProj, parallelThreshold, backend);
+        geometryStage.SetShading(shading, lighting);
+        rasterizer = new Rasterizer(frameBuffer);
+        tileRasterizer = new TileRasterizer(frameBuffer, workers);
+        occluders = new DepthPyramid(width, height);
+
+        /* Window and guard band edges as plane equations on (x, y, z, 1), top, bottom, left, right */
+        guardBandClipper.AddRejectPlane(0.0f, 1.0f, 0.0f, 0.0f);
+        guardBandClipper.AddRejectPlane(0.0f, -1.0f, 0.0f, (float)height - 1);
+        guardBandClipper.AddRejectPlane(1.0f, 0.0f, 0.0f, 0.0f);
+        guardBandClipper.AddRejectPlane(-1.0f, 0.0f, 0.0f, (float)width - 1);
+        guardBandClipper.AddPlane(0.0f, 1.0f, 0.0f, GUARD_BAND);
+        guardBandClipper.AddPlane(0.0f, -1.0f, 0.0f, (float)height - 1 + GUARD_BAND);
+        guardBandClipper.AddPlane(1.0f, 0.0f, 0.0f, GUARD_BAND);
+        guardBandClipper.AddPlane(-1.0f, 0.0f, 0.0f, (float)width - 1 + GUARD_BAND);
+    }
+
+    /* Occlusion culling of scene nodes and their chunks, on by default. It only drops what the depth
+       test would hide anyway, so it changes how much is drawn and not the picture */
+    public void SetOcclusionCulling(boolean occlusionCulling) {
+        this.occlusionCulling = occlusionCulling;
+    }
+
+    /* World matrix of the demo scene, the model spins about z and x while sitting 5 units in front of the origin */
+    public mat4x4 MakeWorldMatrix(float fTheta, mat4x4 matWorld) {
+        /* Rotation matrices */
+        MatrixMakeRotationZ(fTheta * 0.5f, matRotZ);
+        MatrixMakeRotationX(fTheta, matRotX);
+        MatrixMakeTranslation(0.0f, 0.0f, 5.0f, matTrans);
+
+        MatrixMultiplyMatrix(matRotZ, matRotX, matRotZX); /* Apply rotation matrices */
+        return MatrixMultiplyMatrix(matRotZX, matTrans, matWorld); /* Apply translation matrices */
+    }
+
+    /* Draw meshObj placed by matWorld as seen from camera into frameBuffer */
+    public void RenderFrame(mesh meshObj, mat4x4 matWorld, Camera camera) {
+        FramePacket packet = serialPacket;
+        camera.ViewMatrix(matView);
+
+        /* Transform, cull, clip and project the mesh into screen space triangles */
+        packet.sample.StageStart(Stage.GEOMETRY);
+        geometryStage.Process(meshObj, matWorld, matView, camera.vPosition, packet.triangles);
+        packet.sample.StageEnd(Stage.GEOMETRY);
+        nChunksVisible = geometryStage.ChunksVisible();
+        nVerticesTransformed = geometryStage.VerticesTransformed();
+        nNodesVisible = 1;
+        nNodesOccluded = nChunksOccluded = 0;
+        nTrianglesDrawn = packet.triangles.count;
+        packet.sample.CountTriangles(geometryStage.TrianglesIn(), geometryStage.TrianglesCulled(), geometryStage.TrianglesClipped(), nTrianglesDrawn);
+
+        Draw(packet);
+    }
+
+    /* Draw every mesh node of scene as seen from camera into frameBuffer. Nodes whose world bounds
+       miss the frustum are dropped by the scene's BVH before any of their triangles are touched, and
+       nodes with a LodChain draw the level matching their size on screen */
+    public void RenderFrame(Scene scene, Camera camera) {
+        Prepare(scene, camera, serialPacket);
+        Draw(serialPacket);
+    }
+
+    /* Geometry half of RenderFrame, everything up to the screen space triangles in packet. With
+       occlusion culling the nodes seen last frame are drawn untested first, and the larger of them
+       rasterized into the depth pyramid as occluders. The nodes hidden last frame are then tested
+       against it, as a whole and then chunk by chunk, and drawn only where they have come out from
+       behind. Finally every node is tested against everything drawn, which decides the pass it
+       takes next frame. The pyramid only ever holds this frame's triangles, so however the camera
+       and objects move nothing visible is culled. Last frame's result just picks the occluders,
+       which spares a separate depth pass over them. A frame where the pyramid hid nothing is
+       followed by OCCLUSION_BACKOFF drawn without it, as the camera rarely moves far enough in
+       that time for it to start paying off */
+    public void Prepare(Scene scene, Camera camera, FramePacket packet) {
+        FrameSample sample = packet.sample;
+        sample.StageStart(Stage.SCENE);
+        camera.ViewMatrix(matView);
+        scene.Update();
+
+        MatrixMultiplyMatrix(matView, matProj, matViewProj);
+        nNodesVisible = scene.Cull(frustum.Set(matViewProj));
+        sample.StageEnd(Stage.SCENE);
+        nChunksVisible = nChunksOccluded = nNodesOccluded = 0;
+        nVerticesTransformed = 0;
+        nTrianglesIn = nTrianglesCulled = nTrianglesClipped = 0;
+
+        sample.StageStart(Stage.GEOMETRY);
+        TriangleBuffer triangles = packet.triangles;
+        triangles.Clear();
+        if (!occlusionCulling || nNodesVisible < 2 || nOcclusionSkips > 0) {
+            /* A lone node has nothing to hide behind, and the pyramid may be resting */
+            nOcclusionSkips = Math.max(0, nOcclusionSkips - 1);
+            for (int i = 0; i < nNodesVisible; i++) {
+                SceneNode node = scene.Visible(i);
+                node.occluded = false;
+                AppendNode(node, camera, null, false, triangles);
+            }
+        } else {
+            occluders.Clear();
+            for (int i = 0; i < nNodesVisible; i++) {
+                SceneNode node = scene.Visible(i);
+                if (!node.occluded) {
+                    AppendNode(node, camera, null, true, triangles);
+                }
+            }
+            RasterizeOccluders(triangles);
+            for (int i = 0; i < nNodesVisible; i++) {
+                SceneNode node = scene.Visible(i);
+                if (node.occluded) {
+                    if (Occluded(node, false)) {
+                        nNodesOccluded++;
+                    } else {
+                        AppendNode(node, camera, occluders, true, triangles);
+                    }
+                }
+            }
+            RasterizeOccluders(triangles);
+            boolean hidden = nNodesOccluded > 0 || nChunksOccluded > 0;
+            for (int i = 0; i < nNodesVisible; i++) {
+                SceneNode node = scene.Visible(i);
+                node.occluded = Occluded(node, true);
+                hidden |= node.occluded;
+            }
+            if (!hidden) {
+                nOcclusionSkips = OCCLUSION_BACKOFF;
+            }
+        }
+        sample.StageEnd(Stage.GEOMETRY);
+        nTrianglesDrawn = triangles.count;
+        sample.CountTriangles(nTrianglesIn, nTrianglesCulled, nTrianglesClipped, nTrianglesDrawn);
+    }
+
+    /* Add the triangles of node to triangles, leaving out the chunks occludedBy hides if it isn't null.
+       With occluder they are queued as occluders too if the node is large enough on screen */
+    private void AppendNode(SceneNode node, Camera camera, DepthPyramid occludedBy, boolean occluder, TriangleBuffer triangles) {
+        mesh meshObj = node.meshObj;
+        float radius = ScreenRadius(node.worldBounds, camera.vPosition);
+        if (node.lod != null) {
+            node.lodLevel = node.lod.Select(node.lodLevel, radius);
+            meshObj = node.lod.Level(node.lodLevel);
+        }
+        int first = triangles.count;
+        geometryStage.Append(meshObj, node.matWorld, matView, camera.vPosition, occludedBy, triangles);
+        nChunksVisible += geometryStage.ChunksVisible();
+        nChunksOccluded += geometryStage.ChunksOccluded();
+        nVerticesTransformed += geometryStage.VerticesTransformed();
+        nTrianglesIn += geometryStage.TrianglesIn();
+        nTrianglesCulled += geometryStage.TrianglesCulled();
+        nTrianglesClipped += geometryStage.TrianglesClipped();
+        if (occluder && radius >= OCCLUDER_RADIUS && triangles.count > first) {
+            if (nOccluders == occluderFirst.length) {
+                occluderFirst = Arrays.copyOf(occluderFirst, nOccluders * 2);
+                occluderLast = Arrays.copyOf(occluderLast, nOccluders * 2);
+                occluderDistance = Arrays.copyOf(occluderDistance, nOccluders * 2);
+            }
+            bounds b = node.worldBounds;
+            float dx = b.centerX - camera.vPosition.x, dy = b.centerY - camera.vPosition.y, dz = b.centerZ - camera.vPosition.z;
+            occluderFirst[nOccluders] = first;
+            occluderLast[nOccluders] = triangles.count;
+            occluderDistance[nOccluders] = dx * dx + dy * dy + dz * dz;
+            nOccluders++;
+        }
+    }
+
+    /* True if node is certainly hidden behind the occluders, tested by its mesh's box in object space,
+       which fits closer than its world bounds. With byChunk also if every chunk of the level it last
+       drew is, so a node whose box peeks out but draws nothing still goes through the chunk tests */
+    private boolean Occluded(SceneNode node, boolean byChunk) {
+        MatrixMultiplyMatrix(node.matWorld, matViewProj, matWorldViewProj);
+        if (occluders.Occluded(node.meshObj.meshBounds, matWorldViewProj)) {
+            return true;
+        }
+        mesh meshObj = node.lod != null ? node.lod.Level(node.lodLevel) : node.meshObj;
+        if (!byChunk || meshObj.chunkBounds.length != meshObj.ChunkCount()) {
+            return false;
+        }
+        for (bounds b : meshObj.chunkBounds) {
+            if (!occluders.Occluded(b, matWorldViewProj)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Rasterize the queued occluders nearest first, up to OCCLUDER_TRIANGLES of them, and rebuild the pyramid */
+    private void RasterizeOccluders(TriangleBuffer triangles) {
+        /* Insertion sort, which allocates nothing and is quick enough for the few hundred nodes of a busy frame */
+        for (int i = 1; i < nOccluders; i++) {
+            int first = occluderFirst[i], last = occluderLast[i];
+            float distance = occluderDistance[i];
+            int j = i - 1;
+            for (; j >= 0 && occluderDistance[j] > distance; j--) {
+                occluderFirst[j + 1] = occluderFirst[j];
+                occluderLast[j + 1] = occluderLast[j];
+                occluderDistance[j + 1] = occluderDistance[j];
+            }
+            occluderFirst[j + 1] = first;
+            occluderLast[j + 1] = last;
+            occluderDistance[j + 1] = distance;
+        }
+        int budget = OCCLUDER_TRIANGLES;
+        for (int i = 0; i < nOccluders && budget > 0; i++) {
+            occluders.Rasterize(triangles, occluderFirst[i], occluderLast[i]);
+            budget -= occluderLast[i] - occluderFirst[i];
+        }
+        nOccluders = 0;
+        occluders.Build();
+    }
+
+    /* Approximate radius in pixels of the bounding sphere b seen from vCamera */
+    private float ScreenRadius(bounds b, vec3d vCamera) {
+        float dx = b.centerX - vCamera.x, dy = b.centerY - vCamera.y, dz = b.centerZ - vCamera.z;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance <= b.radius) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return b.radius * matProj.m[5] * frameBuffer.height * 0.5f / distance;
+    }
+
+    /* Raster half of RenderFrame, draw the triangles of packet into frameBuffer */
+    public void Draw(FramePacket packet) {
+        FrameSample sample = packet.sample;
+        switch (renderMode) {
+            case PAINTER: if (painterGraphics == null) {
+                              painterGraphics = frameBuffer.image.createGraphics();
+                          }
+                          DrawPainter(painterGraphics, packet.triangles, sample);
+                          break;
+            case ZBUFFER: sample.StageStart(Stage.RASTER);
+                          DrawDepthBuffered(packet.triangles);
+                          sample.StageEnd(Stage.RASTER);
+                          break;
+            case TILED:   sample.StageStart(Stage.RASTER);
+                          if (shading == ShadeMode.WIREFRAME) {
+                              tileRasterizer.Draw(packet.triangles, BACKGROUND_RGB, FILL_RGB, EDGE_RGB);
+                          } else {
+                              tileRasterizer.Draw(packet.triangles, BACKGROUND_RGB, shadeTable.argb);
+                          }
+                          sample.StageEnd(Stage.RASTER);
+                          break;
+        }
+    }
+
+    /* Number of triangles handed to the back end by the last RenderFrame or Prepare */
+    public int TrianglesDrawn() {
+        return nTrianglesDrawn;
+    }
+
+    /* Number of mesh chunks that passed frustum culling in the last RenderFrame */
+    public int ChunksVisible() {
+        return nChunksVisible;
+    }
+
+    /* Number of vertices transformed by the last RenderFrame */
+    public int VerticesTransformed() {
+        return nVerticesTransformed;
+    }
+
+    /* Number of scene nodes that passed frustum culling in the last RenderFrame */
+    public int NodesVisible() {
+        return nNodesVisible;
+    }
+
+    /* Number of scene nodes in the frustum that occlusion culling dropped in the last RenderFrame */
+    public int NodesOccluded() {
+        return nNodesOccluded;
+    }
+
+    /* Number of chunks of the drawn nodes that occlusion culling dropped in the last RenderFrame */
+    public int ChunksOccluded() {
+        return nChunksOccluded;
+    }
+
+    /* Rasterize into the software frame buffer, the depth test makes draw order irrelevant so there is no sort
+       and the bounding box scissor replaces clipping against the window edges */
+    private void DrawDepthBuffered(TriangleBuffer screenTriangles) {
+        frameBuffer.Clear(BACKGROUND_RGB);
+        float[] d = screenTriangles.data;
+        for (int r = 0, i = 0; r < screenTriangles.count; r++, i += TriangleBuffer.STRIDE) {
+            if (shading == ShadeMode.WIREFRAME) {
+                rasterizer.FillTriangle(d[i], d[i + 1], d[i + 2],
+                        d[i + 3], d[i + 4], d[i + 5],
+                        d[i + 6], d[i + 7], d[i + 8],
+                        FILL_RGB, EDGE_RGB);
+            } else {
+                rasterizer.ShadeTriangle(d[i], d[i + 1], d[i + 2], d[i + 9],
+                        d[i + 3], d[i + 4], d[i + 5], d[i + 10],
+                        d[i + 6], d[i + 7], d[i + 8], d[i + 11],
+                        shadeTable.argb);
+            }
+        }
+    }
+
+    /* Original painter's algorithm path, kept for comparison. Polygons are filled with one colour the
+       way AWT fills them, so shaded triangles are drawn flat at the mean of their vertices' intensities.
+       Outlines still go through AWT, whose lines allocate nothing, while the fills are done by the
+       frame buffer, AWT's allocate a span iterator every call */
+    private void DrawPainter(Graphics graphics, TriangleBuffer screenTriangles, FrameSample sample) {
+        sample.StageStart(Stage.RASTER);
+        frameBuffer.Clear(BACKGROUND_RGB);
+        sample.StageEnd(Stage.RASTER);
+
+        /* Copy into pooled triangle objects so they can be sorted, the copy counts as part of the sort */
+        sample.StageStart(Stage.SORT);
+        float[] d = screenTriangles.data;
+        nTrianglesToRaster = 0;
+        for (int r = 0, i = 0; r < screenTriangles.count; r++, i += TriangleBuffer.STRIDE) {
+            triangle tri = NextTriangleToRaster();
+            tri.shade = (d[i + 9] + d[i + 10] + d[i + 11]) / 3.0f;
+            vec3d[] p = tri.points;
+            p[0].x = d[i];     p[0].y = d[i + 1]; p[0].z = d[i + 2];
+            p[1].x = d[i + 3]; p[1].y = d[i + 4]; p[1].z = d[i + 5];
+            p[2].x = d[i + 6]; p[2].y = d[i + 7]; p[2].z = d[i + 8];
+        }
+
+        /* Sort triangles by average Z value, farthest first */
+        SortByDepth();
+        sample.StageEnd(Stage.SORT);
+        sample.StageStart(Stage.RASTER);
+
+        /* Loop to draw triangles */
+        for (int r = 0; r < nTrianglesToRaster; r++) {
+            triangle tri = trianglesToRaster[paintOrder[r]];
+            vec3d[] p = tri.points;
+
+            /* Drop triangles beyond a window edge and clip against the guard band, which almost every
+               remaining triangle passes through untouched */
+            guardBandClipper.Begin();
+            guardBandClipper.AddVertex(p[0].x, p[0].y, p[0].z, 1.0f);
+            guardBandClipper.AddVertex(p[1].x, p[1].y, p[1].z, 1.0f);
+            guardBandClipper.AddVertex(p[2].x, p[2].y, p[2].z, 1.0f);
+            int nVertices = guardBandClipper.Clip();
+            if (nVertices == 0) {
+                continue;
+            }
+            for (int k = 0; k < nVertices; k++) {
+                polygonX[k] = (int) guardBandClipper.X(k);
+                polygonY[k] = (int) guardBandClipper.Y(k);
+            }
+
+            if (shading != ShadeMode.WIREFRAME) {
+                frameBuffer.FillPolygon(polygonX, polygonY, nVertices, shadeTable.argb[ShadeTable.Index(tri.shade)]);
+                continue;
+            }
+
+            /* Draw outline of polygon */
+            DrawPolygon(nVertices, graphics, Color.WHITE);
+
+            /* Draw filled polygon */
+            frameBuffer.FillPolygon(polygonX, polygonY, nVertices, FILL_RGB);
+        }
+        sample.StageEnd(Stage.RASTER);
+    }
+
+    /* Order the pooled triangles farthest first by their average z into paintOrder. A radix sort over
+       the z bits, a byte a pass, which is stable like the comparison sort it replaces, so equal depths
+       keep their order, and allocates nothing once the arrays fit the busiest frame. The keys order as
+       Float.compare does, negative numbers flipped whole and positive ones by their sign bit, and are
+       then inverted for farthest first */
+    private void SortByDepth() {
+        int n = nTrianglesToRaster;
+        if (paintOrder.length < n) {
+            int capacity = trianglesToRaster.length;
+            paintOrder = new int[capacity]; paintKeys = new int[capacity];
+            sortedOrder = new int[capacity]; sortedKeys = new int[capacity];
+        }
+        for (int i = 0; i < n; i++) {
+            vec3d[] p = trianglesToRaster[i].points;
+            int bits = Float.floatToIntBits((p[0].z + p[1].z + p[2].z) / 3.0f);
+            paintKeys[i] = ~(bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE);
+            paintOrder[i] = i;
+        }
+
+        /* Four passes, an even number, so the result ends up back in paintOrder */
+        int[] keys = paintKeys, order = paintOrder, nextKeys = sortedKeys, nextOrder = sortedOrder;
+        for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+            Arrays.fill(radixCounts, 0);
+            for (int i = 0; i < n; i++) {
+                radixCounts[(keys[i] >>> shift) & (radixCounts.length - 1)]++;
+            }
+            for (int b = 0, total = 0; b < radixCounts.length; b++) {
+                int count = radixCounts[b];
+                radixCounts[b] = total;
+                total += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int slot = radixCounts[(keys[i] >>> shift) & (radixCounts.length - 1)]++;
+                nextKeys[slot] = keys[i];
+                nextOrder[slot] = order[i];
+            }
+            int[] t = keys; keys = nextKeys; nextKeys = t;
+            t = order; order = nextOrder; nextOrder = t;
+        }
+    }
+
+    /* Hand out the next pooled triangle, the pool only grows until it fits the busiest frame */
+    private triangle NextTriangleToRaster() {
+        if (nTrianglesToRaster == trianglesToRaster.length) {
+            trianglesToRaster = Arrays.copyOf(trianglesToRaster, Math.max(64, trianglesToRaster.length * 2));
+            for (int i = nTrianglesToRaster; i < trianglesToRaster.length; i++) {
+                trianglesToRaster[i] = NewTriangle();
+            }
+        }
+        return trianglesToRaster[nTrianglesToRaster++];
+    }
+
+    private static triangle NewTriangle() {
+        return new triangle(new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f), new vec3d(0.0f, 0.0f, 0.0f));
+    }
+
+    /* Draw graphics, the first nVertices of polygonX and polygonY */
+    private void DrawPolygon(int nVertices, Graphics g, Color c) {
+        g.setColor(c);
+        for (int k = 0, prev = nVertices - 1; k < nVertices; prev = k++) {
+            g.drawLine(polygonX[prev], polygonY[prev], polygonX[k], polygonY[k]);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package graphics.render;
+
+/* How the back ends colour triangles */
+public enum ShadeMode {
+    /* Unlit, black fill with white edges, as the engine first drew */
+    WIREFRAME,
+    /* One light intensity per triangle from its face normal */
+    FLAT,
+    /* Light intensity per vertex from the vertex normals, interpolated across the triangle */
+    GOURAUD
+}
@@ -0,0 +1,24 @@
+package graphics.render;
+
+/* A surface colour at SIZE light intensities from black to fully lit, as packed ARGB. Gamma is
+   applied once here, so shading a pixel is a multiply, a cast and an array load, and nothing is
+   allocated per triangle */
+public class ShadeTable {
+    public static final int SIZE = 256;
+    private static final double GAMMA = 2.2;
+
+    public final int[] argb = new int[SIZE];
+
+    public ShadeTable(int rgb) {
+        int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+        for (int i = 0; i < SIZE; i++) {
+            double f = Math.pow(i / (double) (SIZE - 1), 1.0 / GAMMA);
+            argb[i] = 0xFF000000 | (int) Math.round(r * f) << 16 | (int) Math.round(g * f) << 8 | (int) Math.round(b * f);
+        }
+    }
+
+    /* Entry for a light intensity between 0 and 1 */
+    public static int Index(float intensity) {
+        return (int) (intensity * (SIZE - 1) + 0.5f);
+    }
+}
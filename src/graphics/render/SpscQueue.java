@@ -0,0 +1,106 @@
+package graphics.render;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* Bounded queue between exactly one producer thread and one consumer thread. Each side only ever
+   writes its own index, so Offer and Poll need no locks or compare-and-set, just ordered stores.
+   Put and Take wait for room or an item by spinning briefly and then parking, the other side
+   unparks them as soon as it has made progress. The producer may change from one thread to
+   another, as the consumer may, but only where the old one's last call happens before the new
+   one's first and it makes no more, never two producers or two consumers at once.
+   RenderPipeline.Drain relies on this */
+public final class SpscQueue<T> {
+    private static final int SPINS = 100;
+
+    /* Upper bound on a park, in case an unpark arrives between the check and the park */
+    private static final long PARK_NANOS = 1000000L;
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    private volatile Thread waitingProducer, waitingConsumer;
+
+    public SpscQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /* Producer only, false if the queue is full */
+    public boolean Offer(T item) {
+        long t = tail.get();
+        if (t - head.get() == slots.length) {
+            return false;
+        }
+        slots[(int) (t & mask)] = item;
+        tail.set(t + 1);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /* Consumer only, null if the queue is empty */
+    @SuppressWarnings("unchecked")
+    public T Poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        int i = (int) (h & mask);
+        T item = (T) slots[i];
+        slots[i] = null;
+        head.set(h + 1);
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return item;
+    }
+
+    /* Producer only */
+    public void Put(T item) throws InterruptedException {
+        for (int spin = 0; !Offer(item); spin++) {
+            if (spin < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            waitingProducer = Thread.currentThread();
+            if (tail.get() - head.get() == slots.length) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            waitingProducer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /* Consumer only */
+    public T Take() throws InterruptedException {
+        T item;
+        for (int spin = 0; (item = Poll()) == null; spin++) {
+            if (spin < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+            waitingConsumer = Thread.currentThread();
+            if (head.get() == tail.get()) {
+                LockSupport.parkNanos(this, PARK_NANOS);
+            }
+            waitingConsumer = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return item;
+    }
+
+    public int Size() {
+        return (int) (tail.get() - head.get());
+    }
+}
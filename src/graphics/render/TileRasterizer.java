@@ -0,0 +1,156 @@
+package graphics.render;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static graphics.utility.PoolUtil.*;
+import static java.lang.Math.*;
+
+/* Binning rasterizer. Triangles are sorted into square screen tiles, then the tiles are cleared and
+   rasterized in parallel. Every tile owns a disjoint rectangle of the colour and depth buffers, so
+   workers never touch the same pixel and need no locking. Each bin keeps submission order, which
+   makes the output identical to drawing the same triangles with a single Rasterizer */
+public class TileRasterizer {
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    private final FrameBuffer target;
+    private final Rasterizer rasterizer;
+    private final ForkJoinPool pool;
+
+    private final int tileSize, tilesX, tilesY;
+    private final int[][] bins;
+    private final int[] binCounts;
+
+    /* Tasks are created once and reinitialized every frame, workers and the calling thread pull tiles
+       from a shared counter */
+    private final TileWorker[] workers;
+    private final RecursiveAction frameTask;
+    private final Runnable drawTiles = this::DrawTiles;
+    private final AtomicInteger nextTile = new AtomicInteger();
+
+    private TriangleBuffer triangles;
+    private int clearRgb, fillRgb, edgeRgb;
+    private int[] shades;
+
+    public TileRasterizer(FrameBuffer target, ForkJoinPool pool) {
+        this(target, pool, DEFAULT_TILE_SIZE);
+    }
+
+    public TileRasterizer(FrameBuffer target, ForkJoinPool pool, int tileSize) {
+        this.target = target;
+        this.rasterizer = new Rasterizer(target);
+        this.pool = pool;
+        this.tileSize = tileSize;
+        this.tilesX = (target.width + tileSize - 1) / tileSize;
+        this.tilesY = (target.height + tileSize - 1) / tileSize;
+        this.bins = new int[tilesX * tilesY][64];
+        this.binCounts = new int[tilesX * tilesY];
+
+        this.workers = new TileWorker[pool.getParallelism()];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new TileWorker();
+        }
+        this.frameTask = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                for (TileWorker worker : workers) {
+                    worker.reinitialize();
+                }
+                InvokeAll(workers);
+            }
+        };
+    }
+
+    /* Clear the frame buffer and draw every triangle in the buffer filled and outlined */
+    public void Draw(TriangleBuffer triangles, int clearRgb, int fillRgb, int edgeRgb) {
+        this.fillRgb = fillRgb;
+        this.edgeRgb = edgeRgb;
+        Draw(triangles, clearRgb, null);
+    }
+
+    /* Clear the frame buffer and draw every triangle in the buffer shaded from its vertices' intensities,
+       with the colours of a ShadeTable */
+    public void Draw(TriangleBuffer triangles, int clearRgb, int[] shades) {
+        this.triangles = triangles;
+        this.clearRgb = clearRgb;
+        this.shades = shades;
+
+        Bin(triangles);
+
+        nextTile.set(0);
+        frameTask.reinitialize();
+        Invoke(pool, frameTask, drawTiles);
+        this.triangles = null;
+        this.shades = null;
+    }
+
+    private void Bin(TriangleBuffer triangles) {
+        Arrays.fill(binCounts, 0);
+        float[] d = triangles.data;
+        int maxX = target.width - 1, maxY = target.height - 1;
+        for (int t = 0, i = 0; t < triangles.count; t++, i += TriangleBuffer.STRIDE) {
+            float x0 = d[i], y0 = d[i + 1], x1 = d[i + 3], y1 = d[i + 4], x2 = d[i + 6], y2 = d[i + 7];
+            int minPx = max(0, (int) floor(min(x0, min(x1, x2))));
+            int maxPx = min(maxX, (int) ceil(max(x0, max(x1, x2))));
+            int minPy = max(0, (int) floor(min(y0, min(y1, y2))));
+            int maxPy = min(maxY, (int) ceil(max(y0, max(y1, y2))));
+            if (minPx > maxPx || minPy > maxPy) {
+                continue;
+            }
+            for (int ty = minPy / tileSize; ty <= maxPy / tileSize; ty++) {
+                for (int tx = minPx / tileSize; tx <= maxPx / tileSize; tx++) {
+                    int tile = ty * tilesX + tx;
+                    int n = binCounts[tile];
+                    if (n == bins[tile].length) {
+                        bins[tile] = Arrays.copyOf(bins[tile], n * 2);
+                    }
+                    bins[tile][n] = t;
+                    binCounts[tile] = n + 1;
+                }
+            }
+        }
+    }
+
+    private void DrawTile(int tile) {
+        int minX = (tile % tilesX) * tileSize, minY = (tile / tilesX) * tileSize;
+        int maxX = min(target.width, minX + tileSize) - 1, maxY = min(target.height, minY + tileSize) - 1;
+
+        target.Clear(clearRgb, minX, minY, maxX, maxY);
+
+        float[] d = triangles.data;
+        int[] bin = bins[tile];
+        for (int b = 0, n = binCounts[tile]; b < n; b++) {
+            int i = bin[b] * TriangleBuffer.STRIDE;
+            if (shades != null) {
+                rasterizer.ShadeTriangle(d[i], d[i + 1], d[i + 2], d[i + 9],
+                        d[i + 3], d[i + 4], d[i + 5], d[i + 10],
+                        d[i + 6], d[i + 7], d[i + 8], d[i + 11],
+                        shades, minX, minY, maxX, maxY);
+            } else {
+                rasterizer.FillTriangle(d[i], d[i + 1], d[i + 2],
+                        d[i + 3], d[i + 4], d[i + 5],
+                        d[i + 6], d[i + 7], d[i + 8],
+                        fillRgb, edgeRgb, minX, minY, maxX, maxY);
+            }
+        }
+    }
+
+    /* Draw tiles until there are none left to take */
+    private void DrawTiles() {
+        int nTiles = binCounts.length;
+        for (int tile = nextTile.getAndIncrement(); tile < nTiles; tile = nextTile.getAndIncrement()) {
+            DrawTile(tile);
+        }
+    }
+
+    private class TileWorker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            DrawTiles();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package graphics.render;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/* Everything that moves from frame to frame, the camera and the model's spin, one record per frame
+   drawn, so a session can be played back exactly. Saved as a small binary file, the magic "GTL1",
+   the frame count and then per frame x, y, z, yaw, pitch and spin, all big endian, 24 bytes a frame */
+public class Timeline {
+    private static final int MAGIC = 0x47544c31;
+    private static final int FLOATS = 6;
+
+    private float[] records = new float[64 * FLOATS];
+    private int nFrames;
+
+    /* A timeline of frames frames along path, spinning the model by dt a frame from zero, as
+       HeadlessRenderer draws a camera path */
+    public static Timeline FromPath(CameraPath path, int frames, float dt) {
+        Timeline timeline = new Timeline();
+        Camera camera = new Camera();
+        float fTheta = 0.0f;
+        for (int frame = 0; frame < frames; frame++) {
+            fTheta += dt;
+            path.Apply(frame, camera);
+            timeline.Record(camera, fTheta);
+        }
+        return timeline;
+    }
+
+    public static Timeline Load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + ": not a timeline");
+            }
+            int frames = in.readInt();
+            if (frames < 0 || (long) frames * FLOATS * 4 != Files.size(file) - 8) {
+                throw new IOException(file + ": expected " + frames + " frames, size is " + Files.size(file) + " bytes");
+            }
+            Timeline timeline = new Timeline();
+            timeline.records = new float[Math.max(1, frames) * FLOATS];
+            for (int i = 0; i < frames * FLOATS; i++) {
+                timeline.records[i] = in.readFloat();
+            }
+            timeline.nFrames = frames;
+            return timeline;
+        } catch (EOFException e) {
+            throw new IOException(file + ": truncated");
+        }
+    }
+
+    public void Save(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(nFrames);
+            for (int i = 0; i < nFrames * FLOATS; i++) {
+                out.writeFloat(records[i]);
+            }
+        }
+    }
+
+    /* Append a frame drawn from camera with the model spun to fTheta. Allocates only when the
+       record array doubles */
+    public void Record(Camera camera, float fTheta) {
+        if ((nFrames + 1) * FLOATS > records.length) {
+            records = Arrays.copyOf(records, records.length * 2);
+        }
+        int o = nFrames * FLOATS;
+        records[o] = camera.vPosition.x;
+        records[o + 1] = camera.vPosition.y;
+        records[o + 2] = camera.vPosition.z;
+        records[o + 3] = camera.fYaw;
+        records[o + 4] = camera.fPitch;
+        records[o + 5] = fTheta;
+        nFrames++;
+    }
+
+    /* Place camera as it was on frame and return the model's spin then. Frames past the end hold
+       the last one */
+    public float Apply(int frame, Camera camera) {
+        if (nFrames == 0) {
+            throw new IllegalStateException("empty timeline");
+        }
+        int o = Math.max(0, Math.min(nFrames - 1, frame)) * FLOATS;
+        camera.Set(records[o], records[o + 1], records[o + 2], records[o + 3], records[o + 4]);
+        return records[o + 5];
+    }
+
+    public int FrameCount() {
+        return nFrames;
+    }
+}
@@ -0,0 +1,55 @@
+package graphics.render;
+
+import java.util.Arrays;
+
+/* Growable primitive list of screen space triangles, packed as x, y, z for each of the three vertices
+   followed by the three vertices' light intensities, 0 to 1, for the shaded ShadeModes */
+public class TriangleBuffer {
+    public static final int STRIDE = 12;
+
+    public float[] data;
+    public int count;
+
+    public TriangleBuffer() {
+        this(256);
+    }
+
+    public TriangleBuffer(int capacity) {
+        data = new float[capacity * STRIDE];
+    }
+
+    public void Clear() {
+        count = 0;
+    }
+
+    public void Add(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2) {
+        int i = count * STRIDE;
+        if (i + STRIDE > data.length) {
+            data = Arrays.copyOf(data, Math.max(STRIDE, data.length * 2));
+        }
+        data[i]     = x0; data[i + 1] = y0; data[i + 2] = z0;
+        data[i + 3] = x1; data[i + 4] = y1; data[i + 5] = z1;
+        data[i + 6] = x2; data[i + 7] = y2; data[i + 8] = z2;
+        data[i + 9] = 0.0f; data[i + 10] = 0.0f; data[i + 11] = 0.0f;
+        count++;
+    }
+
+    /* Append one triangle already packed in STRIDE floats */
+    public void Add(float[] triangle) {
+        int i = count * STRIDE;
+        if (i + STRIDE > data.length) {
+            data = Arrays.copyOf(data, Math.max(STRIDE, data.length * 2));
+        }
+        System.arraycopy(triangle, 0, data, i, STRIDE);
+        count++;
+    }
+
+    public void AddAll(TriangleBuffer other) {
+        int n = (count + other.count) * STRIDE;
+        if (n > data.length) {
+            data = Arrays.copyOf(data, Math.max(n, data.length * 2));
+        }
+        System.arraycopy(other.data, 0, data, count * STRIDE, other.count * STRIDE);
+        count += other.count;
+    }
+}
@@ -0,0 +1,85 @@
+package graphics.render;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/* BatchTransform a full vector of vertices or triangles per step, the remainder going through the
+   scalar loop. Lanes stay in the same order through every step and each step matches one operator
+   of the scalar code, multiplies and adds unfused, so the results are the same to the bit. Only
+   loaded once BatchTransform has found jdk.incubator.vector */
+final class VectorBatchTransform extends BatchTransform {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    /* Same shape as FLOATS, so the same number of lanes */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    /* Signed distances of the triangles' planes from the point in the Facing step under way */
+    private final float[] side = new float[FLOATS.length()];
+
+    VectorBatchTransform(Clipper clipper) {
+        super(clipper);
+    }
+
+    static int Lanes() {
+        return FLOATS.length();
+    }
+
+    @Override
+    protected void Transform(int start, int end, float[] m, float width, float height) {
+        float m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3], m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7];
+        float m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11], m12 = m[12], m13 = m[13], m14 = m[14], m15 = m[15];
+        int i = start, bound = start + FLOATS.loopBound(end - start);
+        for (; i < bound; i += FLOATS.length()) {
+            FloatVector vx = FloatVector.fromArray(FLOATS, x, i);
+            FloatVector vy = FloatVector.fromArray(FLOATS, y, i);
+            FloatVector vz = FloatVector.fromArray(FLOATS, z, i);
+            FloatVector cx = vx.mul(m0).add(vy.mul(m4)).add(vz.mul(m8)).add(m12);
+            FloatVector cy = vx.mul(m1).add(vy.mul(m5)).add(vz.mul(m9)).add(m13);
+            FloatVector cz = vx.mul(m2).add(vy.mul(m6)).add(vz.mul(m10)).add(m14);
+            FloatVector cw = vx.mul(m3).add(vy.mul(m7)).add(vz.mul(m11)).add(m15);
+            cx.intoArray(clipX, i);
+            cy.intoArray(clipY, i);
+            cz.intoArray(clipZ, i);
+            cw.intoArray(clipW, i);
+
+            IntVector code = IntVector.zero(INTS);
+            for (int p = 0; p < nPlanes; p++) {
+                int o = p * 4;
+                VectorMask<Float> outside = cx.mul(planes[o]).add(cy.mul(planes[o + 1])).add(cz.mul(planes[o + 2])).add(cw.mul(planes[o + 3]))
+                        .compare(VectorOperators.LT, 0.0f);
+                code = code.lanewise(VectorOperators.OR, planeBits[p], outside.cast(INTS));
+            }
+            code.intoArray(codes, i);
+
+            cx.div(cw).add(1.0f).mul(0.5f).mul(width).intoArray(screenX, i);
+            cy.div(cw).add(1.0f).mul(0.5f).mul(height).intoArray(screenY, i);
+            cz.div(cw).intoArray(screenZ, i);
+        }
+        super.Transform(i, end, m, width, height);
+    }
+
+    @Override
+    protected int Facing(float[] nx, float[] ny, float[] nz, float[] d, int first, int start, int end, float px, float py, float pz, float sign) {
+        int nFacing = 0;
+        int i = start, bound = start + FLOATS.loopBound(end - start);
+        for (; i < bound; i += FLOATS.length()) {
+            /* The sides are compared a lane at a time, on JDK 17 a float mask is boxed into a new
+               boolean[] whenever the CPU's vectors are too wide for it to stay in a register */
+            FloatVector.fromArray(FLOATS, nx, first + i).mul(px)
+                    .add(FloatVector.fromArray(FLOATS, ny, first + i).mul(py))
+                    .add(FloatVector.fromArray(FLOATS, nz, first + i).mul(pz))
+                    .sub(FloatVector.fromArray(FLOATS, d, first + i))
+                    .mul(sign)
+                    .intoArray(side, 0);
+            for (int lane = 0; lane < side.length; lane++) {
+                boolean front = side[lane] > 0.0f;
+                facing[i + lane] = front;
+                nFacing += front ? 1 : 0;
+            }
+        }
+        return nFacing + super.Facing(nx, ny, nz, d, first, i, end, px, py, pz, sign);
+    }
+}
@@ -0,0 +1,183 @@
+package graphics.scene;
+
+import graphics.render.Frustum;
+import graphics.structures.bounds;
+
+import java.util.Arrays;
+import java.util.List;
+
+/* Binary tree of axis aligned boxes over the world bounds of a scene's mesh nodes, one leaf per node,
+   stored in flat arrays. Built top down by splitting at the median centroid along the widest axis.
+   Moving nodes refit the boxes on the path to the root, stopping as soon as a box comes out unchanged,
+   so the topology only changes on Build */
+final class BoundingVolumeHierarchy {
+    /* minX, minY, minZ, maxX, maxY, maxZ per tree node */
+    private float[] box = new float[0];
+
+    /* Children of an inner node, a leaf has left = ~item and right = -1 */
+    private int[] left = new int[0], right = new int[0], parent = new int[0];
+    private int nNodes;
+
+    private int[] leafOfItem = new int[0];
+    private int[] moved = new int[16];
+    private int nMoved;
+
+    /* Build and traversal scratch */
+    private int[] order = new int[0], stack = new int[0];
+    private float[] centroid = new float[0];
+
+    void Build(List<SceneNode> items) {
+        int n = items.size();
+        nNodes = 0;
+        nMoved = 0;
+        if (box.length < (2 * n) * 6) {
+            box = new float[2 * n * 6];
+            left = new int[2 * n];
+            right = new int[2 * n];
+            parent = new int[2 * n];
+            stack = new int[2 * n];
+            leafOfItem = new int[n];
+            order = new int[n];
+            centroid = new float[n * 3];
+        }
+        for (int i = 0; i < n; i++) {
+            bounds b = items.get(i).worldBounds;
+            order[i] = i;
+            centroid[i * 3]     = b.IsEmpty() ? 0.0f : (b.minX + b.maxX) * 0.5f;
+            centroid[i * 3 + 1] = b.IsEmpty() ? 0.0f : (b.minY + b.maxY) * 0.5f;
+            centroid[i * 3 + 2] = b.IsEmpty() ? 0.0f : (b.minZ + b.maxZ) * 0.5f;
+        }
+        if (n > 0) {
+            BuildRange(items, 0, n, -1);
+        }
+    }
+
+    void MarkMoved(int item) {
+        if (nMoved == moved.length) {
+            moved = Arrays.copyOf(moved, nMoved * 2);
+        }
+        moved[nMoved++] = item;
+    }
+
+    /* Pull the world bounds of every moved item into its leaf and fix up the boxes above it */
+    void Refit(List<SceneNode> items) {
+        for (int k = 0; k < nMoved; k++) {
+            int node = leafOfItem[moved[k]];
+            SetLeafBox(node, items.get(moved[k]).worldBounds);
+            for (int p = parent[node]; p >= 0; p = parent[p]) {
+                if (!UnionChildren(p)) {
+                    break;
+                }
+            }
+        }
+        nMoved = 0;
+    }
+
+    /* Write the items whose leaves pass the frustum into out, returns how many */
+    int Query(Frustum frustum, int[] out) {
+        int count = 0, top = 0;
+        if (nNodes > 0) {
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            int entry = stack[--top];
+            /* Negative entries are subtrees already known to be inside */
+            boolean inside = entry < 0;
+            int node = inside ? ~entry : entry;
+            int b = node * 6;
+            if (box[b] > box[b + 3]) {
+                continue;
+            }
+            if (!inside) {
+                int result = frustum.Classify(box[b], box[b + 1], box[b + 2], box[b + 3], box[b + 4], box[b + 5]);
+                if (result == Frustum.OUTSIDE) {
+                    continue;
+                }
+                inside = result == Frustum.INSIDE;
+            }
+            if (right[node] < 0) {
+                out[count++] = ~left[node];
+            } else {
+                stack[top++] = inside ? ~right[node] : right[node];
+                stack[top++] = inside ? ~left[node] : left[node];
+            }
+        }
+        return count;
+    }
+
+    private int BuildRange(List<SceneNode> items, int lo, int hi, int parentNode) {
+        int node = nNodes++;
+        parent[node] = parentNode;
+        if (hi - lo == 1) {
+            int item = order[lo];
+            left[node] = ~item;
+            right[node] = -1;
+            leafOfItem[item] = node;
+            SetLeafBox(node, items.get(item).worldBounds);
+            return node;
+        }
+
+        /* Split at the median along the axis the centroids spread furthest on */
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; i++) {
+            int c = order[i] * 3;
+            minX = Math.min(minX, centroid[c]);     maxX = Math.max(maxX, centroid[c]);
+            minY = Math.min(minY, centroid[c + 1]); maxY = Math.max(maxY, centroid[c + 1]);
+            minZ = Math.min(minZ, centroid[c + 2]); maxZ = Math.max(maxZ, centroid[c + 2]);
+        }
+        float dx = maxX - minX, dy = maxY - minY, dz = maxZ - minZ;
+        int axis = dx >= dy && dx >= dz ? 0 : dy >= dz ? 1 : 2;
+        int mid = (lo + hi) >>> 1;
+        Select(lo, hi - 1, mid, axis);
+
+        left[node] = BuildRange(items, lo, mid, node);
+        right[node] = BuildRange(items, mid, hi, node);
+        UnionChildren(node);
+        return node;
+    }
+
+    /* Reorder order[lo..hi] so order[k] holds the k-th smallest centroid on axis with smaller ones before it */
+    private void Select(int lo, int hi, int k, int axis) {
+        while (hi > lo) {
+            float pivot = centroid[order[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centroid[order[i] * 3 + axis] < pivot) i++;
+                while (centroid[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int swap = order[i]; order[i] = order[j]; order[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void SetLeafBox(int node, bounds b) {
+        int o = node * 6;
+        box[o] = b.minX; box[o + 1] = b.minY; box[o + 2] = b.minZ;
+        box[o + 3] = b.maxX; box[o + 4] = b.maxY; box[o + 5] = b.maxZ;
+    }
+
+    /* Set an inner node's box to the union of its children's, returns whether it changed */
+    private boolean UnionChildren(int node) {
+        int o = node * 6, l = left[node] * 6, r = right[node] * 6;
+        boolean changed = false;
+        for (int i = 0; i < 3; i++) {
+            float min = Math.min(box[l + i], box[r + i]);
+            float max = Math.max(box[l + 3 + i], box[r + 3 + i]);
+            changed |= box[o + i] != min || box[o + 3 + i] != max;
+            box[o + i] = min;
+            box[o + 3 + i] = max;
+        }
+        return changed;
+    }
+}
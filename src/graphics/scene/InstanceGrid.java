@@ -0,0 +1,42 @@
+package graphics.scene;
+
+import graphics.lod.LodChain;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+
+import static graphics.utility.MatrixUtil.*;
+
+/* Demo content, count instances of one mesh laid out on a square grid in the x/z plane going away
+   from the camera. Every instance shares the mesh and spins with the same animation */
+public class InstanceGrid {
+    public final SceneNode group = new SceneNode();
+    private final SceneNode[] instances;
+    private final mat4x4[] matOffsets;
+
+    public InstanceGrid(mesh meshObj, int count) {
+        this(meshObj, null, count);
+    }
+
+    /* Instances draw through lod when it isn't null */
+    public InstanceGrid(mesh meshObj, LodChain lod, int count) {
+        instances = new SceneNode[count];
+        matOffsets = new mat4x4[count];
+
+        int side = (int) Math.ceil(Math.sqrt(count));
+        float spacing = Math.max(1.0f, meshObj.meshBounds.radius * 2.5f);
+        for (int i = 0; i < count; i++) {
+            float x = (i % side - (side - 1) * 0.5f) * spacing;
+            float z = (i / side) * spacing;
+            matOffsets[i] = MatrixMakeTranslation(count == 1 ? 0.0f : x, 0.0f, z);
+            instances[i] = group.AddChild(lod != null ? new SceneNode(lod) : new SceneNode(meshObj));
+        }
+    }
+
+    /* Place every instance at matSpin followed by its grid offset */
+    public void Animate(mat4x4 matSpin) {
+        for (int i = 0; i < instances.length; i++) {
+            MatrixMultiplyMatrix(matSpin, matOffsets[i], instances[i].matLocal);
+            instances[i].MarkDirty();
+        }
+    }
+}
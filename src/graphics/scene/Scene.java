@@ -0,0 +1,149 @@
+package graphics.scene;
+
+import graphics.render.Frustum;
+import graphics.structures.bounds;
+import graphics.structures.mat4x4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static graphics.utility.MatrixUtil.*;
+
+/* A tree of SceneNodes with a bounding volume hierarchy over the world bounds of every mesh node.
+   Moving nodes only queues them, Update then recomputes the moved subtrees and refits the BVH
+   along their paths to the root. The BVH is rebuilt only after nodes are added or removed */
+public class Scene {
+    public final SceneNode root = new SceneNode();
+
+    final List<SceneNode> dirtyNodes = new ArrayList<>();
+    private final List<SceneNode> meshNodes = new ArrayList<>();
+    private final BoundingVolumeHierarchy bvh = new BoundingVolumeHierarchy();
+    private boolean structureChanged;
+
+    private int[] visible = new int[0];
+    private int nVisible;
+
+    public Scene() {
+        root.scene = this;
+        root.dirty = false;
+    }
+
+    public int MeshNodeCount() {
+        return meshNodes.size();
+    }
+
+    /* Bring world transforms, world bounds and the BVH up to date with every change since the last call */
+    public void Update() {
+        for (int i = 0; i < dirtyNodes.size(); i++) {
+            SceneNode node = dirtyNodes.get(i);
+            /* Already done as part of a dirty ancestor's subtree, or detached since */
+            if (node.dirty && node.scene == this) {
+                UpdateSubtree(node);
+            }
+        }
+        dirtyNodes.clear();
+
+        if (structureChanged) {
+            bvh.Build(meshNodes);
+            if (visible.length < meshNodes.size()) {
+                visible = new int[meshNodes.size()];
+            }
+            structureChanged = false;
+        }
+        bvh.Refit(meshNodes);
+    }
+
+    /* Collect the mesh nodes whose world bounds pass the world space frustum, returns how many */
+    public int Cull(Frustum frustum) {
+        nVisible = bvh.Query(frustum, visible);
+        return nVisible;
+    }
+
+    /* The i-th mesh node found by the last Cull, in BVH order */
+    public SceneNode Visible(int i) {
+        return meshNodes.get(visible[i]);
+    }
+
+    private void UpdateSubtree(SceneNode node) {
+        if (node.parent == null) {
+            System.arraycopy(node.matLocal.m, 0, node.matWorld.m, 0, 16);
+        } else {
+            MatrixMultiplyMatrix(node.matLocal, node.parent.matWorld, node.matWorld);
+        }
+        if (node.meshObj != null) {
+            TransformBounds(node.meshObj.meshBounds, node.matWorld, node.worldBounds);
+            bvh.MarkMoved(node.item);
+        }
+        node.dirty = false;
+        /* Indexed, the iterator of a for each escapes into the recursion and is allocated every frame */
+        for (int i = 0; i < node.children.size(); i++) {
+            UpdateSubtree(node.children.get(i));
+        }
+    }
+
+    void Attach(SceneNode node) {
+        node.scene = this;
+        if (node.meshObj != null) {
+            node.item = meshNodes.size();
+            meshNodes.add(node);
+            structureChanged = true;
+        }
+        node.dirty = false;
+        node.MarkDirty();
+        for (SceneNode child : node.children) {
+            Attach(child);
+        }
+    }
+
+    void Detach(SceneNode node) {
+        node.scene = null;
+        if (node.meshObj != null) {
+            /* Swap the last mesh node into the hole so items stay dense */
+            SceneNode last = meshNodes.remove(meshNodes.size() - 1);
+            if (last != node) {
+                meshNodes.set(node.item, last);
+                last.item = node.item;
+            }
+            node.item = -1;
+            structureChanged = true;
+        }
+        for (SceneNode child : node.children) {
+            Detach(child);
+        }
+    }
+
+    /* Box around the transformed box (Arvo), each output extent is the sum of the smaller and larger
+       products per input axis. The sphere keeps its radius scaled by the largest axis scale */
+    static void TransformBounds(bounds in, mat4x4 matrix, bounds out) {
+        float[] m = matrix.m;
+        if (in.IsEmpty()) {
+            out.minX = out.minY = out.minZ = Float.POSITIVE_INFINITY;
+            out.maxX = out.maxY = out.maxZ = Float.NEGATIVE_INFINITY;
+            out.radius = 0.0f;
+            return;
+        }
+        float minX = m[12], minY = m[13], minZ = m[14];
+        float maxX = m[12], maxY = m[13], maxZ = m[14];
+        for (int r = 0; r < 3; r++) {
+            float lo = r == 0 ? in.minX : r == 1 ? in.minY : in.minZ;
+            float hi = r == 0 ? in.maxX : r == 1 ? in.maxY : in.maxZ;
+            float a = lo * m[r * 4], b = hi * m[r * 4];
+            minX += Math.min(a, b); maxX += Math.max(a, b);
+            a = lo * m[r * 4 + 1]; b = hi * m[r * 4 + 1];
+            minY += Math.min(a, b); maxY += Math.max(a, b);
+            a = lo * m[r * 4 + 2]; b = hi * m[r * 4 + 2];
+            minZ += Math.min(a, b); maxZ += Math.max(a, b);
+        }
+        out.minX = minX; out.minY = minY; out.minZ = minZ;
+        out.maxX = maxX; out.maxY = maxY; out.maxZ = maxZ;
+
+        out.centerX = in.centerX * m[0] + in.centerY * m[4] + in.centerZ * m[8] + m[12];
+        out.centerY = in.centerX * m[1] + in.centerY * m[5] + in.centerZ * m[9] + m[13];
+        out.centerZ = in.centerX * m[2] + in.centerY * m[6] + in.centerZ * m[10] + m[14];
+        float scale = 0.0f;
+        for (int r = 0; r < 3; r++) {
+            scale = Math.max(scale, m[r * 4] * m[r * 4] + m[r * 4 + 1] * m[r * 4 + 1] + m[r * 4 + 2] * m[r * 4 + 2]);
+        }
+        out.radius = in.radius * (float) Math.sqrt(scale);
+    }
+}
@@ -0,0 +1,101 @@
+package graphics.scene;
+
+import graphics.lod.LodChain;
+import graphics.structures.bounds;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static graphics.utility.MatrixUtil.*;
+
+/* A transform in the scene graph, optionally drawing a mesh. Meshes are only referenced, so any
+   number of nodes can instance the same vertex and index arrays at a few hundred bytes each */
+public class SceneNode {
+    /* Placement relative to the parent, change through SetLocal or call MarkDirty after editing in place */
+    public final mat4x4 matLocal = MatrixMakeIdentity();
+
+    /* Derived by Scene.Update, read only */
+    public final mat4x4 matWorld = MatrixMakeIdentity();
+    public final bounds worldBounds = new bounds();
+
+    /* Null for a pure grouping node. With a LodChain this is its full detail level, used for bounds */
+    public final mesh meshObj;
+    public final LodChain lod;
+
+    /* Level of lod drawn last frame, the starting point for the next selection */
+    public int lodLevel;
+
+    /* Hidden behind other nodes last frame, which the renderer's occlusion culling tests before drawing */
+    public boolean occluded;
+
+    SceneNode parent;
+    final List<SceneNode> children = new ArrayList<>();
+    Scene scene;
+    boolean dirty = true;
+
+    /* Position in the scene's list of mesh nodes, which is also the BVH item index */
+    int item = -1;
+
+    public SceneNode() {
+        this((mesh) null);
+    }
+
+    public SceneNode(mesh meshObj) {
+        this.meshObj = meshObj;
+        this.lod = null;
+    }
+
+    public SceneNode(LodChain lod) {
+        this.meshObj = lod.Level(0);
+        this.lod = lod;
+    }
+
+    public SceneNode Parent() {
+        return parent;
+    }
+
+    public List<SceneNode> Children() {
+        return children;
+    }
+
+    public SceneNode AddChild(SceneNode child) {
+        if (child.parent != null) {
+            throw new IllegalArgumentException("node already has a parent");
+        }
+        child.parent = this;
+        children.add(child);
+        if (scene != null) {
+            scene.Attach(child);
+        }
+        child.MarkDirty();
+        return child;
+    }
+
+    public void RemoveChild(SceneNode child) {
+        if (child.parent != this) {
+            throw new IllegalArgumentException("not a child of this node");
+        }
+        children.remove(child);
+        child.parent = null;
+        if (scene != null) {
+            scene.Detach(child);
+        }
+    }
+
+    public void SetLocal(mat4x4 matrix) {
+        System.arraycopy(matrix.m, 0, matLocal.m, 0, 16);
+        MarkDirty();
+    }
+
+    /* Queue this node, and so its subtree, for the next Scene.Update */
+    public void MarkDirty() {
+        if (!dirty) {
+            dirty = true;
+            if (scene != null) {
+                scene.dirtyNodes.add(this);
+            }
+        }
+    }
+}
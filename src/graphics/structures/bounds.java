@@ -0,0 +1,38 @@
+package graphics.structures;
+
+/* Axis aligned box plus an enclosing sphere around the box centre */
+public class bounds {
+    public float minX, minY, minZ, maxX, maxY, maxZ;
+    public float centerX, centerY, centerZ, radius;
+
+    /* Fit to the vertices referenced by indices[first] to indices[last - 1] of a packed x, y, z pool */
+    public static bounds FromIndices(float[] vertices, int[] indices, int first, int last) {
+        bounds b = new bounds();
+        b.minX = b.minY = b.minZ = Float.POSITIVE_INFINITY;
+        b.maxX = b.maxY = b.maxZ = Float.NEGATIVE_INFINITY;
+        for (int i = first; i < last; i++) {
+            int v = indices[i] * 3;
+            float x = vertices[v], y = vertices[v + 1], z = vertices[v + 2];
+            if (x < b.minX) b.minX = x; if (x > b.maxX) b.maxX = x;
+            if (y < b.minY) b.minY = y; if (y > b.maxY) b.maxY = y;
+            if (z < b.minZ) b.minZ = z; if (z > b.maxZ) b.maxZ = z;
+        }
+        b.centerX = (b.minX + b.maxX) * 0.5f;
+        b.centerY = (b.minY + b.maxY) * 0.5f;
+        b.centerZ = (b.minZ + b.maxZ) * 0.5f;
+
+        /* The sphere only needs to hold the actual vertices, which is usually tighter than the box corners */
+        float r2 = 0.0f;
+        for (int i = first; i < last; i++) {
+            int v = indices[i] * 3;
+            float dx = vertices[v] - b.centerX, dy = vertices[v + 1] - b.centerY, dz = vertices[v + 2] - b.centerZ;
+            r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+        }
+        b.radius = (float) Math.sqrt(r2);
+        return b;
+    }
+
+    public boolean IsEmpty() {
+        return minX > maxX;
+    }
+}
@@ -1,5 +1,6 @@
 package graphics.structures;
 
+/* Row-major 4x4 matrix in a single flat array, element (r, c) lives at m[r * 4 + c] */
 public class mat4x4 {
-    public float[][] m = new float[4][4];
+    public final float[] m = new float[16];
 }
@@ -1,44 +1,166 @@
 package graphics.structures;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Objects;
-import java.util.Scanner;
-import java.util.Vector;
+import graphics.io.MeshCache;
+import graphics.io.ObjLoader;
+import graphics.io.VertexCacheOptimizer;
 
-import static java.lang.Float.parseFloat;
-import static java.lang.Integer.parseInt;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Locale;
 
 public class mesh {
-    public Vector<triangle> tris;
+    /* Shared vertex pool, packed as x, y, z per vertex */
+    public float[] vertices;
+
+    /* Three indices into the vertex pool per triangle */
+    public int[] indices;
+
+    /* Read-only view of the indexed data as individual triangles */
+    public final List<triangle> tris;
+
+    /* Triangles are grouped into consecutive chunks of this many for culling */
+    public static final int CHUNK_TRIANGLES = 1024;
+
+    /* Bounds of the whole mesh and of each chunk, plus the range of vertices each chunk references.
+       Refreshed by UpdateBounds, which loading calls */
+    public bounds meshBounds = new bounds();
+    public bounds[] chunkBounds = new bounds[0];
+    public int[] chunkVertexStart = new int[0], chunkVertexEnd = new int[0];
+
+    /* Area weighted unit normal per vertex, packed x, y, z, in object space. Refreshed by
+       UpdateNormals, which loading calls */
+    public float[] vertexNormals = new float[0];
+
+    /* Plane of each triangle as one array per term, its unit normal in object space and the normal's
+       dot product with the triangle's first vertex, so a point p lies in front when
+       normal . p > faceDistance. The normal is zero for degenerate triangles. Refreshed by
+       UpdateNormals */
+    public float[] faceNormalX = new float[0], faceNormalY = new float[0], faceNormalZ = new float[0];
+    public float[] faceDistance = new float[0];
 
     public mesh() {
-        tris = new Vector<>();
+        vertices = new float[0];
+        indices = new int[0];
+        tris = new TriangleView();
+    }
+
+    public int VertexCount() {
+        return vertices.length / 3;
+    }
+
+    public int TriangleCount() {
+        return indices.length / 3;
+    }
+
+    public int ChunkCount() {
+        return (TriangleCount() + CHUNK_TRIANGLES - 1) / CHUNK_TRIANGLES;
+    }
+
+    /* Recompute the bounding volumes and vertex ranges after vertices or indices change */
+    public void UpdateBounds() {
+        int nChunks = ChunkCount();
+        meshBounds = bounds.FromIndices(vertices, indices, 0, indices.length);
+        chunkBounds = new bounds[nChunks];
+        chunkVertexStart = new int[nChunks];
+        chunkVertexEnd = new int[nChunks];
+        for (int c = 0; c < nChunks; c++) {
+            int first = c * CHUNK_TRIANGLES * 3, last = Math.min(indices.length, first + CHUNK_TRIANGLES * 3);
+            chunkBounds[c] = bounds.FromIndices(vertices, indices, first, last);
+            int lo = Integer.MAX_VALUE, hi = 0;
+            for (int i = first; i < last; i++) {
+                lo = Math.min(lo, indices[i]);
+                hi = Math.max(hi, indices[i] + 1);
+            }
+            chunkVertexStart[c] = lo;
+            chunkVertexEnd[c] = hi;
+        }
     }
 
+    /* Recompute face and vertex normals after vertices or indices change */
+    public void UpdateNormals() {
+        int nTriangles = TriangleCount();
+        vertexNormals = new float[vertices.length];
+        faceNormalX = new float[nTriangles];
+        faceNormalY = new float[nTriangles];
+        faceNormalZ = new float[nTriangles];
+        faceDistance = new float[nTriangles];
+        for (int t = 0; t < nTriangles; t++) {
+            int i0 = indices[t * 3] * 3, i1 = indices[t * 3 + 1] * 3, i2 = indices[t * 3 + 2] * 3;
+            float ux = vertices[i1] - vertices[i0], uy = vertices[i1 + 1] - vertices[i0 + 1], uz = vertices[i1 + 2] - vertices[i0 + 2];
+            float vx = vertices[i2] - vertices[i0], vy = vertices[i2 + 1] - vertices[i0 + 1], vz = vertices[i2 + 2] - vertices[i0 + 2];
+            float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+
+            /* The cross product's length is twice the area, so summing it unnormalised weights by area */
+            vertexNormals[i0] += nx; vertexNormals[i0 + 1] += ny; vertexNormals[i0 + 2] += nz;
+            vertexNormals[i1] += nx; vertexNormals[i1 + 1] += ny; vertexNormals[i1 + 2] += nz;
+            vertexNormals[i2] += nx; vertexNormals[i2 + 1] += ny; vertexNormals[i2 + 2] += nz;
+            float l = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (l > 0.0f) {
+                faceNormalX[t] = nx / l; faceNormalY[t] = ny / l; faceNormalZ[t] = nz / l;
+            }
+            faceDistance[t] = faceNormalX[t] * vertices[i0] + faceNormalY[t] * vertices[i0 + 1] + faceNormalZ[t] * vertices[i0 + 2];
+        }
+        for (int i = 0; i < vertexNormals.length; i += 3) {
+            float l = (float) Math.sqrt(vertexNormals[i] * vertexNormals[i] + vertexNormals[i + 1] * vertexNormals[i + 1] + vertexNormals[i + 2] * vertexNormals[i + 2]);
+            if (l > 0.0f) {
+                vertexNormals[i] /= l; vertexNormals[i + 1] /= l; vertexNormals[i + 2] /= l;
+            }
+        }
+    }
+
+    /* Load an OBJ, going through the binary cache next to it unless -Dgraphics.meshcache=false. Freshly
+       parsed meshes are reordered for vertex locality, the cache holds them already reordered */
     public boolean LoadFromObjectFile(String sFilename) {
-        Vector<vec3d> vertices = new Vector<>();
+        Path file = Paths.get(sFilename);
+        boolean useCache = !"false".equals(System.getProperty("graphics.meshcache"));
         try {
-            File myObj = new File(sFilename);
-            Scanner myReader = new Scanner(myObj);
-            while (myReader.hasNextLine()) {
-                String data = myReader.nextLine();
-                String[] tokens = data.split(" ");
-                if (Objects.equals(tokens[0], "v")) {
-                    vec3d vec = new vec3d(parseFloat(tokens[1]), parseFloat(tokens[2]), parseFloat(tokens[3]));
-                    vertices.add(vec);
-                }
-                if (Objects.equals(tokens[0], "f")) {
-                    int[] f = { parseInt(tokens[1]), parseInt(tokens[2]), parseInt(tokens[3]) };
-                    tris.add(new triangle(vertices.get(f[0] - 1), vertices.get(f[1] - 1), vertices.get(f[2] - 1)));
+            long start = System.nanoTime();
+            boolean cached = useCache && MeshCache.Load(file, this);
+            if (!cached) {
+                ObjLoader.Load(file, this);
+                VertexCacheOptimizer.Optimize(this);
+            }
+            UpdateBounds();
+            UpdateNormals();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            /* Throughput of what was actually read, the cache on a hit */
+            double megabytes = Files.size(cached ? MeshCache.CachePath(file) : file) / (1024.0 * 1024.0);
+            System.err.printf(Locale.ROOT, "Loaded %s%s: %d vertices, %d triangles, %.1f MB in %.1f ms (%.1f MB/s)%n",
+                    file.getFileName(), cached ? " from cache" : "", VertexCount(), TriangleCount(), megabytes, seconds * 1e3, megabytes / seconds);
+
+            if (useCache && !cached) {
+                /* A stale cache that can't be replaced yet is left for a later launch, the parsed mesh stands */
+                try {
+                    MeshCache.Write(file, this);
+                } catch (IOException e) {
+                    System.err.println("Could not write mesh cache: " + e);
                 }
             }
-            myReader.close();
-        } catch (FileNotFoundException e) {
-            System.out.println(e);
+        } catch (IOException e) {
+            System.err.println(e);
             return false;
         }
-        System.out.println(vertices);
         return true;
     }
+
+    /* Builds a fresh triangle on each access, the indexed arrays remain the only storage */
+    private class TriangleView extends AbstractList<triangle> {
+        @Override
+        public triangle get(int index) {
+            int i0 = indices[index * 3] * 3, i1 = indices[index * 3 + 1] * 3, i2 = indices[index * 3 + 2] * 3;
+            return new triangle(
+                    new vec3d(vertices[i0], vertices[i0 + 1], vertices[i0 + 2]),
+                    new vec3d(vertices[i1], vertices[i1 + 1], vertices[i1 + 2]),
+                    new vec3d(vertices[i2], vertices[i2 + 1], vertices[i2 + 2]));
+        }
+
+        @Override
+        public int size() {
+            return TriangleCount();
+        }
+    }
 }
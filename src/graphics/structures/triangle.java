@@ -3,6 +3,9 @@ package graphics.structures;
 public class triangle {
     public vec3d[] points;
 
+    /* Light intensity the triangle is filled with, 0 to 1 */
+    public float shade;
+
     public triangle(vec3d... points) {
         this.points = new vec3d[3];
         for(int i = 0; i < points.length; i++) {
@@ -3,127 +3,284 @@ package graphics.utility;
 import graphics.structures.mat4x4;
 import graphics.structures.vec3d;
 
-import static graphics.utility.VectorUtil.*;
+import java.util.Arrays;
+
 import static java.lang.Math.*;
 
 public class MatrixUtil {
     public static vec3d MatrixMultiplyVector(mat4x4 m, vec3d i) {
-        float x = i.x * m.m[0][0] + i.y * m.m[1][0] + i.z * m.m[2][0] + i.w * m.m[3][0];
-        float y = i.x * m.m[0][1] + i.y * m.m[1][1] + i.z * m.m[2][1] + i.w * m.m[3][1];
-        float z = i.x * m.m[0][2] + i.y * m.m[1][2] + i.z * m.m[2][2] + i.w * m.m[3][2];
-        float w = i.x * m.m[0][3] + i.y * m.m[1][3] + i.z * m.m[2][3] + i.w * m.m[3][3];
+        return MatrixMultiplyVector(m, i, new vec3d(0.0f, 0.0f, 0.0f));
+    }
+
+    /* Transform a point read straight from a vertex pool, w is taken as 1 */
+    public static vec3d MatrixMultiplyVector(mat4x4 m, float ix, float iy, float iz) {
+        float x = ix * m.m[0] + iy * m.m[4] + iz * m.m[8] + m.m[12];
+        float y = ix * m.m[1] + iy * m.m[5] + iz * m.m[9] + m.m[13];
+        float z = ix * m.m[2] + iy * m.m[6] + iz * m.m[10] + m.m[14];
+        float w = ix * m.m[3] + iy * m.m[7] + iz * m.m[11] + m.m[15];
         return new vec3d(x, y, z, w);
     }
 
+    /* Writes the result into out, which may be the same object as i */
+    public static vec3d MatrixMultiplyVector(mat4x4 m, vec3d i, vec3d out) {
+        float x = i.x * m.m[0] + i.y * m.m[4] + i.z * m.m[8] + i.w * m.m[12];
+        float y = i.x * m.m[1] + i.y * m.m[5] + i.z * m.m[9] + i.w * m.m[13];
+        float z = i.x * m.m[2] + i.y * m.m[6] + i.z * m.m[10] + i.w * m.m[14];
+        float w = i.x * m.m[3] + i.y * m.m[7] + i.z * m.m[11] + i.w * m.m[15];
+        out.x = x; out.y = y; out.z = z; out.w = w;
+        return out;
+    }
+
+    /* Batch transform of count points, src is packed x, y, z (w taken as 1) and dst is packed x, y, z, w */
+    public static void MatrixTransformPoints(mat4x4 m, float[] src, float[] dst, int count) {
+        MatrixTransformPoints(m, src, dst, 0, count);
+    }
+
+    /* As above for the points first to first + count - 1, so a pool can be split between threads */
+    public static void MatrixTransformPoints(mat4x4 m, float[] src, float[] dst, int first, int count) {
+        float m00 = m.m[0], m01 = m.m[1], m02 = m.m[2], m03 = m.m[3];
+        float m10 = m.m[4], m11 = m.m[5], m12 = m.m[6], m13 = m.m[7];
+        float m20 = m.m[8], m21 = m.m[9], m22 = m.m[10], m23 = m.m[11];
+        float m30 = m.m[12], m31 = m.m[13], m32 = m.m[14], m33 = m.m[15];
+        for (int i = 0, s = first * 3, d = first * 4; i < count; i++, s += 3, d += 4) {
+            float x = src[s], y = src[s + 1], z = src[s + 2];
+            dst[d]     = x * m00 + y * m10 + z * m20 + m30;
+            dst[d + 1] = x * m01 + y * m11 + z * m21 + m31;
+            dst[d + 2] = x * m02 + y * m12 + z * m22 + m32;
+            dst[d + 3] = x * m03 + y * m13 + z * m23 + m33;
+        }
+    }
+
     public static mat4x4 MatrixMakeIdentity() {
-        mat4x4 matrix = new mat4x4();
-        matrix.m[0][0] = 1.0f;
-        matrix.m[1][1] = 1.0f;
-        matrix.m[2][2] = 1.0f;
-        matrix.m[3][3] = 1.0f;
+        return MatrixMakeIdentity(new mat4x4());
+    }
+
+    public static mat4x4 MatrixMakeIdentity(mat4x4 matrix) {
+        MatrixClear(matrix);
+        matrix.m[0] = 1.0f;
+        matrix.m[5] = 1.0f;
+        matrix.m[10] = 1.0f;
+        matrix.m[15] = 1.0f;
         return matrix;
     }
 
     public static mat4x4 MatrixMakeRotationX(float fAngleRad) {
-        mat4x4 matrix = new mat4x4();
-        matrix.m[0][0] = 1.0f;
-        matrix.m[1][1] = (float)cos(fAngleRad);
-        matrix.m[1][2] = (float)sin(fAngleRad);
-        matrix.m[2][1] = (float)-sin(fAngleRad);
-        matrix.m[2][2] = (float)cos(fAngleRad);
-        matrix.m[3][3] = 1.0f;
+        return MatrixMakeRotationX(fAngleRad, new mat4x4());
+    }
+
+    public static mat4x4 MatrixMakeRotationX(float fAngleRad, mat4x4 matrix) {
+        MatrixClear(matrix);
+        matrix.m[0] = 1.0f;
+        matrix.m[5] = (float)cos(fAngleRad);
+        matrix.m[6] = (float)sin(fAngleRad);
+        matrix.m[9] = (float)-sin(fAngleRad);
+        matrix.m[10] = (float)cos(fAngleRad);
+        matrix.m[15] = 1.0f;
         return matrix;
     }
 
     public static mat4x4 MatrixMakeRotationY(float fAngleRad) {
-        mat4x4 matrix = new mat4x4();
-        matrix.m[0][0] = (float)cos(fAngleRad);
-        matrix.m[0][2] = (float)sin(fAngleRad);
-        matrix.m[2][0] = (float)-sin(fAngleRad);
-        matrix.m[1][1] = 1.0f;
-        matrix.m[2][2] = (float)cos(fAngleRad);
-        matrix.m[3][3] = 1.0f;
+        return MatrixMakeRotationY(fAngleRad, new mat4x4());
+    }
+
+    public static mat4x4 MatrixMakeRotationY(float fAngleRad, mat4x4 matrix) {
+        MatrixClear(matrix);
+        matrix.m[0] = (float)cos(fAngleRad);
+        matrix.m[2] = (float)sin(fAngleRad);
+        matrix.m[8] = (float)-sin(fAngleRad);
+        matrix.m[5] = 1.0f;
+        matrix.m[10] = (float)cos(fAngleRad);
+        matrix.m[15] = 1.0f;
         return matrix;
     }
 
     public static mat4x4 MatrixMakeRotationZ(float fAngleRad) {
-        mat4x4 matrix = new mat4x4();
-        matrix.m[0][0] = (float)cos(fAngleRad);
-        matrix.m[0][1] = (float)sin(fAngleRad);
-        matrix.m[1][0] = (float)-sin(fAngleRad);
-        matrix.m[1][1] = (float)cos(fAngleRad);
-        matrix.m[2][2] = 1.0f;
-        matrix.m[3][3] = 1.0f;
+        return MatrixMakeRotationZ(fAngleRad, new mat4x4());
+    }
+
+    public static mat4x4 MatrixMakeRotationZ(float fAngleRad, mat4x4 matrix) {
+        MatrixClear(matrix);
+        matrix.m[0] = (float)cos(fAngleRad);
+        matrix.m[1] = (float)sin(fAngleRad);
+        matrix.m[4] = (float)-sin(fAngleRad);
+        matrix.m[5] = (float)cos(fAngleRad);
+        matrix.m[10] = 1.0f;
+        matrix.m[15] = 1.0f;
         return matrix;
     }
 
     public static mat4x4 MatrixMakeTranslation(float x, float y, float z) {
-        mat4x4 matrix = new mat4x4();
-        matrix.m[0][0] = 1.0f;
-        matrix.m[1][1] = 1.0f;
-        matrix.m[2][2] = 1.0f;
-        matrix.m[3][3] = 1.0f;
-        matrix.m[3][0] = x;
-        matrix.m[3][1] = y;
-        matrix.m[3][2] = z;
+        return MatrixMakeTranslation(x, y, z, new mat4x4());
+    }
+
+    public static mat4x4 MatrixMakeTranslation(float x, float y, float z, mat4x4 matrix) {
+        MatrixClear(matrix);
+        matrix.m[0] = 1.0f;
+        matrix.m[5] = 1.0f;
+        matrix.m[10] = 1.0f;
+        matrix.m[15] = 1.0f;
+        matrix.m[12] = x;
+        matrix.m[13] = y;
+        matrix.m[14] = z;
         return matrix;
     }
 
     public static mat4x4 MatrixMakeProjection(float fFovDegrees, float fAspectRatio, float fNear, float fFar) {
         mat4x4 matrix = new mat4x4();
         float fFovRad = 1.0f / (float)tan(fFovDegrees * 0.5f / 180.0f * 3.14159f);
-        matrix.m[0][0] = fAspectRatio * fFovRad;
-        matrix.m[1][1] = fFovRad;
-        matrix.m[2][2] = fFar / (fFar - fNear);
-        matrix.m[3][2] = (-fFar * fNear) / (fFar - fNear);
-        matrix.m[2][3] = 1.0f;
-        matrix.m[3][3] = 0.0f;
+        matrix.m[0] = fAspectRatio * fFovRad;
+        matrix.m[5] = fFovRad;
+        matrix.m[10] = fFar / (fFar - fNear);
+        matrix.m[14] = (-fFar * fNear) / (fFar - fNear);
+        matrix.m[11] = 1.0f;
+        matrix.m[15] = 0.0f;
         return matrix;
     }
 
     public static mat4x4 MatrixMultiplyMatrix(mat4x4 m1, mat4x4 m2) {
-        mat4x4 matrix = new mat4x4();
-        for (int c = 0; c < 4; c++) {
-            for (int r = 0; r < 4; r++) {
-                matrix.m[r][c] = m1.m[r][0] * m2.m[0][c] + m1.m[r][1] * m2.m[1][c] + m1.m[r][2] * m2.m[2][c] + m1.m[r][3] * m2.m[3][c];
-            }
+        return MatrixMultiplyMatrix(m1, m2, new mat4x4());
+    }
+
+    /* Writes m1 * m2 into matrix, which may be m1 or m2. Fully unrolled, with every row of m2 held
+       in locals so each output row is four independent multiply-add chains */
+    public static mat4x4 MatrixMultiplyMatrix(mat4x4 m1, mat4x4 m2, mat4x4 matrix) {
+        float[] a = m1.m, b = m2.m, o = matrix.m;
+        float b00 = b[0],  b01 = b[1],  b02 = b[2],  b03 = b[3];
+        float b10 = b[4],  b11 = b[5],  b12 = b[6],  b13 = b[7];
+        float b20 = b[8],  b21 = b[9],  b22 = b[10], b23 = b[11];
+        float b30 = b[12], b31 = b[13], b32 = b[14], b33 = b[15];
+
+        float a0 = a[0], a1 = a[1], a2 = a[2], a3 = a[3];
+        float a4 = a[4], a5 = a[5], a6 = a[6], a7 = a[7];
+        float a8 = a[8], a9 = a[9], a10 = a[10], a11 = a[11];
+        float a12 = a[12], a13 = a[13], a14 = a[14], a15 = a[15];
+
+        o[0]  = a0 * b00 + a1 * b10 + a2 * b20 + a3 * b30;
+        o[1]  = a0 * b01 + a1 * b11 + a2 * b21 + a3 * b31;
+        o[2]  = a0 * b02 + a1 * b12 + a2 * b22 + a3 * b32;
+        o[3]  = a0 * b03 + a1 * b13 + a2 * b23 + a3 * b33;
+
+        o[4]  = a4 * b00 + a5 * b10 + a6 * b20 + a7 * b30;
+        o[5]  = a4 * b01 + a5 * b11 + a6 * b21 + a7 * b31;
+        o[6]  = a4 * b02 + a5 * b12 + a6 * b22 + a7 * b32;
+        o[7]  = a4 * b03 + a5 * b13 + a6 * b23 + a7 * b33;
+
+        o[8]  = a8 * b00 + a9 * b10 + a10 * b20 + a11 * b30;
+        o[9]  = a8 * b01 + a9 * b11 + a10 * b21 + a11 * b31;
+        o[10] = a8 * b02 + a9 * b12 + a10 * b22 + a11 * b32;
+        o[11] = a8 * b03 + a9 * b13 + a10 * b23 + a11 * b33;
+
+        o[12] = a12 * b00 + a13 * b10 + a14 * b20 + a15 * b30;
+        o[13] = a12 * b01 + a13 * b11 + a14 * b21 + a15 * b31;
+        o[14] = a12 * b02 + a13 * b12 + a14 * b22 + a15 * b32;
+        o[15] = a12 * b03 + a13 * b13 + a14 * b23 + a15 * b33;
+        return matrix;
+    }
+
+    /* General inverse by cofactor expansion, for matrices MatrixQuickInverse can't handle.
+       Returns null if m is singular */
+    public static mat4x4 MatrixInverse(mat4x4 m) {
+        return MatrixInverse(m, new mat4x4());
+    }
+
+    /* Writes the inverse into matrix, which may be m. Returns null and leaves matrix untouched if m is singular */
+    public static mat4x4 MatrixInverse(mat4x4 m, mat4x4 matrix) {
+        float[] a = m.m;
+        float a00 = a[0],  a01 = a[1],  a02 = a[2],  a03 = a[3];
+        float a10 = a[4],  a11 = a[5],  a12 = a[6],  a13 = a[7];
+        float a20 = a[8],  a21 = a[9],  a22 = a[10], a23 = a[11];
+        float a30 = a[12], a31 = a[13], a32 = a[14], a33 = a[15];
+
+        /* 2x2 sub-determinants of the top and bottom row pairs */
+        float s0 = a00 * a11 - a10 * a01;
+        float s1 = a00 * a12 - a10 * a02;
+        float s2 = a00 * a13 - a10 * a03;
+        float s3 = a01 * a12 - a11 * a02;
+        float s4 = a01 * a13 - a11 * a03;
+        float s5 = a02 * a13 - a12 * a03;
+
+        float c5 = a22 * a33 - a32 * a23;
+        float c4 = a21 * a33 - a31 * a23;
+        float c3 = a21 * a32 - a31 * a22;
+        float c2 = a20 * a33 - a30 * a23;
+        float c1 = a20 * a32 - a30 * a22;
+        float c0 = a20 * a31 - a30 * a21;
+
+        float det = s0 * c5 - s1 * c4 + s2 * c3 + s3 * c2 - s4 * c1 + s5 * c0;
+        if (det == 0.0f) {
+            return null;
         }
+        float invDet = 1.0f / det;
+
+        float[] o = matrix.m;
+        o[0]  = ( a11 * c5 - a12 * c4 + a13 * c3) * invDet;
+        o[1]  = (-a01 * c5 + a02 * c4 - a03 * c3) * invDet;
+        o[2]  = ( a31 * s5 - a32 * s4 + a33 * s3) * invDet;
+        o[3]  = (-a21 * s5 + a22 * s4 - a23 * s3) * invDet;
+
+        o[4]  = (-a10 * c5 + a12 * c2 - a13 * c1) * invDet;
+        o[5]  = ( a00 * c5 - a02 * c2 + a03 * c1) * invDet;
+        o[6]  = (-a30 * s5 + a32 * s2 - a33 * s1) * invDet;
+        o[7]  = ( a20 * s5 - a22 * s2 + a23 * s1) * invDet;
+
+        o[8]  = ( a10 * c4 - a11 * c2 + a13 * c0) * invDet;
+        o[9]  = (-a00 * c4 + a01 * c2 - a03 * c0) * invDet;
+        o[10] = ( a30 * s4 - a31 * s2 + a33 * s0) * invDet;
+        o[11] = (-a20 * s4 + a21 * s2 - a23 * s0) * invDet;
+
+        o[12] = (-a10 * c3 + a11 * c1 - a12 * c0) * invDet;
+        o[13] = ( a00 * c3 - a01 * c1 + a02 * c0) * invDet;
+        o[14] = (-a30 * s3 + a31 * s1 - a32 * s0) * invDet;
+        o[15] = ( a20 * s3 - a21 * s1 + a22 * s0) * invDet;
         return matrix;
     }
 
     public static mat4x4 MatrixPointAt(vec3d pos, vec3d target, vec3d up) {
+        return MatrixPointAt(pos, target, up, new mat4x4());
+    }
+
+    public static mat4x4 MatrixPointAt(vec3d pos, vec3d target, vec3d up, mat4x4 matrix) {
         /* Calculate new forward direction */
-        vec3d newForward = VectorSub(target, pos);
-        newForward = VectorNormalize(newForward);
+        float fx = target.x - pos.x, fy = target.y - pos.y, fz = target.z - pos.z;
+        float fl = (float)sqrt(fx * fx + fy * fy + fz * fz);
+        fx /= fl; fy /= fl; fz /= fl;
 
         /* Calculate new Up direction */
-        vec3d a = VectorMul(newForward, VectorDotProduct(up, newForward));
-        vec3d newUp = VectorSub(up, a);
-        newUp = VectorNormalize(newUp);
+        float d = up.x * fx + up.y * fy + up.z * fz;
+        float ux = up.x - fx * d, uy = up.y - fy * d, uz = up.z - fz * d;
+        float ul = (float)sqrt(ux * ux + uy * uy + uz * uz);
+        ux /= ul; uy /= ul; uz /= ul;
 
         /* New Right direction is easy, its just cross product */
-        vec3d newRight = VectorCrossProduct(newUp, newForward);
+        float rx = uy * fz - uz * fy, ry = uz * fx - ux * fz, rz = ux * fy - uy * fx;
 
         /* Construct Dimensioning and Translation Matrix */
-        mat4x4 matrix = new mat4x4();
-        matrix.m[0][0] = newRight.x;	matrix.m[0][1] = newRight.y;	matrix.m[0][2] = newRight.z;	matrix.m[0][3] = 0.0f;
-        matrix.m[1][0] = newUp.x;		matrix.m[1][1] = newUp.y;		matrix.m[1][2] = newUp.z;		matrix.m[1][3] = 0.0f;
-        matrix.m[2][0] = newForward.x;	matrix.m[2][1] = newForward.y;	matrix.m[2][2] = newForward.z;	matrix.m[2][3] = 0.0f;
-        matrix.m[3][0] = pos.x;			matrix.m[3][1] = pos.y;			matrix.m[3][2] = pos.z;			matrix.m[3][3] = 1.0f;
+        matrix.m[0] = rx;	matrix.m[1] = ry;	matrix.m[2] = rz;	matrix.m[3] = 0.0f;
+        matrix.m[4] = ux;	matrix.m[5] = uy;	matrix.m[6] = uz;	matrix.m[7] = 0.0f;
+        matrix.m[8] = fx;	matrix.m[9] = fy;	matrix.m[10] = fz;	matrix.m[11] = 0.0f;
+        matrix.m[12] = pos.x;	matrix.m[13] = pos.y;	matrix.m[14] = pos.z;	matrix.m[15] = 1.0f;
         return matrix;
 
     }
 
     /* Only for Rotation/Translation Matrices */
     public static mat4x4 MatrixQuickInverse(mat4x4 m) {
-        mat4x4 matrix = new mat4x4();
-        matrix.m[0][0] = m.m[0][0]; matrix.m[0][1] = m.m[1][0]; matrix.m[0][2] = m.m[2][0]; matrix.m[0][3] = 0.0f;
-        matrix.m[1][0] = m.m[0][1]; matrix.m[1][1] = m.m[1][1]; matrix.m[1][2] = m.m[2][1]; matrix.m[1][3] = 0.0f;
-        matrix.m[2][0] = m.m[0][2]; matrix.m[2][1] = m.m[1][2]; matrix.m[2][2] = m.m[2][2]; matrix.m[2][3] = 0.0f;
-        matrix.m[3][0] = -(m.m[3][0] * matrix.m[0][0] + m.m[3][1] * matrix.m[1][0] + m.m[3][2] * matrix.m[2][0]);
-        matrix.m[3][1] = -(m.m[3][0] * matrix.m[0][1] + m.m[3][1] * matrix.m[1][1] + m.m[3][2] * matrix.m[2][1]);
-        matrix.m[3][2] = -(m.m[3][0] * matrix.m[0][2] + m.m[3][1] * matrix.m[1][2] + m.m[3][2] * matrix.m[2][2]);
-        matrix.m[3][3] = 1.0f;
+        return MatrixQuickInverse(m, new mat4x4());
+    }
+
+    /* Writes the inverse into matrix, which must not be m */
+    public static mat4x4 MatrixQuickInverse(mat4x4 m, mat4x4 matrix) {
+        matrix.m[0] = m.m[0]; matrix.m[1] = m.m[4]; matrix.m[2] = m.m[8]; matrix.m[3] = 0.0f;
+        matrix.m[4] = m.m[1]; matrix.m[5] = m.m[5]; matrix.m[6] = m.m[9]; matrix.m[7] = 0.0f;
+        matrix.m[8] = m.m[2]; matrix.m[9] = m.m[6]; matrix.m[10] = m.m[10]; matrix.m[11] = 0.0f;
+        matrix.m[12] = -(m.m[12] * matrix.m[0] + m.m[13] * matrix.m[4] + m.m[14] * matrix.m[8]);
+        matrix.m[13] = -(m.m[12] * matrix.m[1] + m.m[13] * matrix.m[5] + m.m[14] * matrix.m[9]);
+        matrix.m[14] = -(m.m[12] * matrix.m[2] + m.m[13] * matrix.m[6] + m.m[14] * matrix.m[10]);
+        matrix.m[15] = 1.0f;
         return matrix;
     }
+
+    private static void MatrixClear(mat4x4 matrix) {
+        Arrays.fill(matrix.m, 0.0f);
+    }
 }
@@ -0,0 +1,66 @@
+package graphics.utility;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/* Fork/join helpers for tasks that are reinitialized and run again every frame without allocating.
+   Waiting on a task that is still running elsewhere makes ForkJoinTask allocate a wait node, so
+   these never block in join. Instead the caller takes a share of the work itself, from the same
+   counter the pool's workers pull from, and only once that counter is exhausted spins and then
+   yields until the workers finish the pieces they already took. The cost is that the caller is
+   one more busy thread beside the pool's workers while the work lasts, and it spins for as long
+   as the slowest piece still running elsewhere takes, so work should come in pieces small enough
+   that this is short. If the pool is busy with something else the caller may end up doing all of
+   the work and then wait for the task to be picked up and find nothing left */
+public class PoolUtil {
+    /* Spins before each yield while waiting on the pool, a few microseconds' worth */
+    private static final int SPINS = 1 << 10;
+
+    /* pool.invoke(task) for a task whose workers pull pieces of work from a shared counter, with
+       callerWork pulling from the same counter on the calling thread meanwhile. From inside the pool
+       the task simply runs on the caller. An exception thrown by the task is rethrown here either way */
+    public static void Invoke(ForkJoinPool pool, ForkJoinTask<?> task, Runnable callerWork) {
+        if (ForkJoinTask.getPool() == pool) {
+            task.invoke();
+            return;
+        }
+        pool.execute(task);
+        try {
+            callerWork.run();
+        } finally {
+            /* The task must be done before it is reinitialized for the next frame, even if the caller failed */
+            Join(task);
+        }
+    }
+
+    /* ForkJoinTask.invokeAll(tasks) from inside a pool task, without allocating. invokeAll joins each
+       forked task, and joining one that another worker took and has not finished allocates a wait
+       node, so here the first task runs on the caller, the tasks nobody has taken yet are taken back
+       and run too, and only then does the caller wait on the ones still running elsewhere */
+    public static void InvokeAll(ForkJoinTask<?>[] tasks) {
+        for (int i = 1; i < tasks.length; i++) {
+            tasks[i].fork();
+        }
+        tasks[0].invoke();
+        /* Newest first, the order they come back off this worker's queue */
+        for (int i = tasks.length - 1; i > 0; i--) {
+            if (tasks[i].tryUnfork()) {
+                tasks[i].invoke();
+            } else {
+                Join(tasks[i]);
+            }
+        }
+    }
+
+    /* task.join() by spinning and then yielding until it is done */
+    private static void Join(ForkJoinTask<?> task) {
+        for (int spins = 0; !task.isDone(); spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        task.join();
+    }
+}
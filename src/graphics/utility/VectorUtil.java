@@ -10,20 +10,21 @@ import static java.lang.Math.sqrt;
 
 public class VectorUtil {
 
+    /* Allocating forms, each hands a new vector to its destination variant below */
     public static vec3d VectorAdd(vec3d v1, vec3d v2) {
-        return new vec3d(v1.x + v2.x, v1.y + v2.y, v1.z + v2.z);
+        return VectorAdd(v1, v2, new vec3d(0.0f, 0.0f, 0.0f));
     }
 
     public static vec3d VectorSub(vec3d v1, vec3d v2) {
-        return new vec3d(v1.x - v2.x, v1.y - v2.y, v1.z - v2.z);
+        return VectorSub(v1, v2, new vec3d(0.0f, 0.0f, 0.0f));
     }
 
     public static vec3d VectorMul(vec3d v1, float k) {
-        return new vec3d(v1.x * k, v1.y * k, v1.z * k);
+        return VectorMul(v1, k, new vec3d(0.0f, 0.0f, 0.0f));
     }
 
     public static vec3d VectorDiv(vec3d v1, float k) {
-        return new vec3d(v1.x / k, v1.y / k, v1.z / k);
+        return VectorDiv(v1, k, new vec3d(0.0f, 0.0f, 0.0f));
     }
 
     public static float VectorDotProduct(vec3d v1, vec3d v2) {
@@ -35,35 +36,79 @@ public class VectorUtil {
     }
 
     public static vec3d VectorNormalize(vec3d v) {
-        float l = VectorLength(v);
-        return new vec3d(v.x / l, v.y / l, v.z / l);
+        return VectorNormalize(v, new vec3d(0.0f, 0.0f, 0.0f));
     }
 
     public static vec3d VectorCrossProduct(vec3d v1, vec3d v2) {
-        return new vec3d(v1.y * v2.z - v1.z * v2.y, v1.z * v2.x - v1.x * v2.z, v1.x * v2.y - v1.y * v2.x);
+        return VectorCrossProduct(v1, v2, new vec3d(0.0f, 0.0f, 0.0f));
+    }
+
+    /* Destination variants, these write into out and return it so the hot path allocates nothing.
+       out may alias any of the inputs */
+    public static vec3d VectorAdd(vec3d v1, vec3d v2, vec3d out) {
+        out.x = v1.x + v2.x; out.y = v1.y + v2.y; out.z = v1.z + v2.z; out.w = 1.0f;
+        return out;
+    }
+
+    public static vec3d VectorSub(vec3d v1, vec3d v2, vec3d out) {
+        out.x = v1.x - v2.x; out.y = v1.y - v2.y; out.z = v1.z - v2.z; out.w = 1.0f;
+        return out;
     }
 
+    public static vec3d VectorMul(vec3d v1, float k, vec3d out) {
+        out.x = v1.x * k; out.y = v1.y * k; out.z = v1.z * k; out.w = 1.0f;
+        return out;
+    }
+
+    public static vec3d VectorDiv(vec3d v1, float k, vec3d out) {
+        out.x = v1.x / k; out.y = v1.y / k; out.z = v1.z / k; out.w = 1.0f;
+        return out;
+    }
+
+    public static vec3d VectorNormalize(vec3d v, vec3d out) {
+        float l = VectorLength(v);
+        out.x = v.x / l; out.y = v.y / l; out.z = v.z / l; out.w = 1.0f;
+        return out;
+    }
+
+    public static vec3d VectorCrossProduct(vec3d v1, vec3d v2, vec3d out) {
+        float x = v1.y * v2.z - v1.z * v2.y;
+        float y = v1.z * v2.x - v1.x * v2.z;
+        float z = v1.x * v2.y - v1.y * v2.x;
+        out.x = x; out.y = y; out.z = z; out.w = 1.0f;
+        return out;
+    }
+
+    public static vec3d VectorCopy(vec3d v, vec3d out) {
+        out.x = v.x; out.y = v.y; out.z = v.z; out.w = v.w;
+        return out;
+    }
+
+    /* Plane normal must already be normalized */
     public static vec3d VectorIntersectPlane(vec3d plane_p, vec3d plane_n, vec3d lineStart, vec3d lineEnd) {
-        plane_n = VectorNormalize(plane_n);
+        return VectorIntersectPlane(plane_p, plane_n, lineStart, lineEnd, new vec3d(0.0f, 0.0f, 0.0f));
+    }
+
+    /* Plane normal must already be normalized, out may alias lineStart or lineEnd */
+    public static vec3d VectorIntersectPlane(vec3d plane_p, vec3d plane_n, vec3d lineStart, vec3d lineEnd, vec3d out) {
         float plane_d = -VectorDotProduct(plane_n, plane_p);
         float ad = VectorDotProduct(lineStart, plane_n);
         float bd = VectorDotProduct(lineEnd, plane_n);
         float t = (-plane_d - ad) / (bd - ad);
-        vec3d lineStartToEnd = VectorSub(lineEnd, lineStart);
-        vec3d lineToIntersect = VectorMul(lineStartToEnd, t);
-        return VectorAdd(lineStart, lineToIntersect);
+        float x = lineStart.x + (lineEnd.x - lineStart.x) * t;
+        float y = lineStart.y + (lineEnd.y - lineStart.y) * t;
+        float z = lineStart.z + (lineEnd.z - lineStart.z) * t;
+        out.x = x; out.y = y; out.z = z; out.w = 1.0f;
+        return out;
     }
 
     /* Return signed shortest distance from point to plane, plane normal must be normalized */
     public static float distance(vec3d plane_n, vec3d plane_p, vec3d p) {
-        vec3d n = VectorNormalize(p);
         return (plane_n.x * p.x + plane_n.y * p.y + plane_n.z * p.z - VectorDotProduct(plane_n, plane_p));
     }
 
+    /* Plane normal must already be normalized, planes are constant so callers normalize them once */
     public static triangle[] TriangleClipAgainstPlane(vec3d plane_p, vec3d plane_n, triangle in_tri, triangle out_tri1, triangle out_tri2) {
-        /* Make sure plane normal is indeed normal */
-        plane_n = VectorNormalize(plane_n);
-
         /* Create two temporary storage arrays to classify points either side of plane
            If distance sign is positive, point lies on "inside" of plane */
         vec3d[] inside_points = new vec3d[3];  int nInsidePointCount = 0;
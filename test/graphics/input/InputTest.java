@@ -0,0 +1,102 @@
+package graphics.input;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.event.KeyEvent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputTest {
+    private static final int[] KEYS = {KeyEvent.VK_W, KeyEvent.VK_A, KeyEvent.VK_S, KeyEvent.VK_D, KeyEvent.VK_SPACE, KeyEvent.VK_SHIFT};
+    private static final int ROUNDS = 200_000;
+
+    /* An event thread pressing and releasing keys and dragging the mouse flat out against a simulation
+       thread polling as fast as it can, through a ring small enough to overflow. Every change a
+       snapshot shows must come with its press or release, and once both are done the last snapshot
+       must hold the keys left down and every pixel of mouse movement */
+    @Test
+    void ConcurrentEventsAndPolls() throws InterruptedException {
+        Input input = new Input(new Bindings(), 16);
+        Thread producer = new Thread(() -> {
+            for (int round = 0; round < ROUNDS; round++) {
+                int key = KEYS[round % KEYS.length];
+                input.KeyPressed(key);
+                input.KeyPressed(key); /* a key repeat, changes nothing */
+                if (round % 3 != 0) {
+                    input.KeyReleased(key);
+                }
+                input.Look(1, -2);
+            }
+        });
+
+        boolean[] wasDown = new boolean[KEYS.length];
+        long nLookX = 0, nLookY = 0;
+        producer.start();
+        do {
+            InputSnapshot snapshot = input.Poll();
+            nLookX += snapshot.LookX();
+            nLookY += snapshot.LookY();
+            CheckChanges(snapshot, wasDown);
+        } while (producer.isAlive());
+        producer.join();
+        InputSnapshot snapshot = input.Poll();
+        nLookX += snapshot.LookX();
+        nLookY += snapshot.LookY();
+        CheckChanges(snapshot, wasDown);
+
+        assertEquals(ROUNDS, nLookX);
+        assertEquals(-2L * ROUNDS, nLookY);
+
+        /* A key ends down if its last round, the last with round % KEYS.length == k, left it pressed */
+        for (int k = 0; k < KEYS.length; k++) {
+            int lastRound = (ROUNDS - 1) - Math.floorMod(ROUNDS - 1 - k, KEYS.length);
+            boolean expected = lastRound % 3 == 0;
+            assertEquals(expected, snapshot.IsDown(KEYS[k]), KeyEvent.getKeyText(KEYS[k]));
+            assertEquals(expected, input.IsDown(KEYS[k]), KeyEvent.getKeyText(KEYS[k]));
+        }
+    }
+
+    @Test
+    void TapBetweenPollsShowsAsPressed() {
+        Input input = new Input(new Bindings());
+        input.KeyPressed(KeyEvent.VK_W);
+        input.KeyReleased(KeyEvent.VK_W);
+        InputSnapshot snapshot = input.Poll();
+        assertTrue(snapshot.WasPressed(KeyEvent.VK_W));
+        assertTrue(snapshot.WasReleased(KeyEvent.VK_W));
+        assertFalse(snapshot.IsDown(KeyEvent.VK_W));
+        assertTrue(snapshot.Held(Action.FORWARD));
+        assertFalse(input.Poll().Held(Action.FORWARD));
+    }
+
+    @Test
+    void OverflowCatchesUpFromTheBitset() {
+        Input input = new Input(new Bindings(), 2);
+        input.KeyPressed(KeyEvent.VK_W);
+        input.KeyPressed(KeyEvent.VK_A);
+        input.KeyPressed(KeyEvent.VK_D);
+        input.KeyReleased(KeyEvent.VK_A);
+        assertEquals(2, input.Dropped());
+        InputSnapshot snapshot = input.Poll();
+        assertTrue(snapshot.IsDown(KeyEvent.VK_W));
+        assertFalse(snapshot.IsDown(KeyEvent.VK_A));
+        assertTrue(snapshot.IsDown(KeyEvent.VK_D));
+        assertTrue(snapshot.WasPressed(KeyEvent.VK_D));
+    }
+
+    /* A key that went down or up since the last snapshot must say it was pressed or released, and one
+       held throughout must not say it was pressed again */
+    private static void CheckChanges(InputSnapshot snapshot, boolean[] wasDown) {
+        for (int k = 0; k < KEYS.length; k++) {
+            boolean down = snapshot.IsDown(KEYS[k]);
+            if (down && !wasDown[k]) {
+                assertTrue(snapshot.WasPressed(KEYS[k]), KeyEvent.getKeyText(KEYS[k]) + " went down unpressed");
+            } else if (!down && wasDown[k]) {
+                assertTrue(snapshot.WasReleased(KEYS[k]), KeyEvent.getKeyText(KEYS[k]) + " came up unreleased");
+            } else if (down && !snapshot.WasReleased(KEYS[k])) {
+                assertFalse(snapshot.WasPressed(KEYS[k]), KeyEvent.getKeyText(KEYS[k]) + " pressed again while held");
+            }
+            wasDown[k] = down;
+        }
+    }
+}
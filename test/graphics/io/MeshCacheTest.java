@@ -0,0 +1,128 @@
+package graphics.io;
+
+import graphics.structures.mesh;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* A cache reads back what was written, whatever its size, and a stale one is replaced. One that passes
+   the header checks but is damaged inside is refused, and the mesh is parsed instead */
+class MeshCacheTest {
+    private static final int HEADER_BYTES = 32;
+
+    /* A square of two triangles, four vertices and six indices */
+    private static final String SQUARE = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\nf 1 2 3\nf 1 3 4\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void LoadsWhatWasWritten() throws IOException {
+        Path source = WriteCache();
+        mesh loaded = new mesh();
+        assertTrue(MeshCache.Load(source, loaded));
+        assertEquals(4, loaded.VertexCount());
+        assertEquals(2, loaded.TriangleCount());
+    }
+
+    /* Larger than the buffer the cache is written through */
+    @Test
+    void LoadsLargeMeshAsWritten() throws IOException {
+        Path source = WriteCache();
+        Random random = new Random(1);
+        mesh written = new mesh();
+        written.vertices = new float[3 * 20000];
+        for (int i = 0; i < written.vertices.length; i++) {
+            written.vertices[i] = random.nextFloat();
+        }
+        written.indices = new int[3 * 30000];
+        for (int i = 0; i < written.indices.length; i++) {
+            written.indices[i] = random.nextInt(written.VertexCount());
+        }
+        assertTrue(MeshCache.Write(source, written));
+
+        mesh loaded = new mesh();
+        assertTrue(MeshCache.Load(source, loaded));
+        assertArrayEquals(written.vertices, loaded.vertices);
+        assertArrayEquals(written.indices, loaded.indices);
+    }
+
+    @Test
+    void ReplacesStaleCache() throws IOException {
+        Path source = WriteCache();
+        Files.writeString(source, SQUARE + "v 0 0 1\nf 1 2 5\n");
+        mesh parsed = new mesh();
+        assertFalse(MeshCache.Load(source, parsed));
+        ObjLoader.Load(source, parsed);
+        assertTrue(MeshCache.Write(source, parsed));
+
+        mesh loaded = new mesh();
+        assertTrue(MeshCache.Load(source, loaded));
+        assertEquals(3, loaded.TriangleCount());
+    }
+
+    @Test
+    void RefusesIndexPastTheVertices() throws IOException {
+        Path source = WriteCache();
+        PutInt(MeshCache.CachePath(source), HEADER_BYTES + 12 * 4 + 4, 4);
+        assertFalse(MeshCache.Load(source, new mesh()));
+    }
+
+    @Test
+    void RefusesNegativeIndex() throws IOException {
+        Path source = WriteCache();
+        PutInt(MeshCache.CachePath(source), HEADER_BYTES + 12 * 4, -1);
+        assertFalse(MeshCache.Load(source, new mesh()));
+    }
+
+    @Test
+    void RefusesPartialTriangle() throws IOException {
+        Path source = WriteCache();
+        Path cache = MeshCache.CachePath(source);
+        /* Drop the last index and fix up the count so the size still matches */
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 4);
+        }
+        PutInt(cache, 28, 5);
+        assertFalse(MeshCache.Load(source, new mesh()));
+    }
+
+    @Test
+    void DamagedCacheFallsBackToParsing() throws IOException {
+        Path source = WriteCache();
+        PutInt(MeshCache.CachePath(source), HEADER_BYTES + 12 * 4, 1000);
+        mesh loaded = new mesh();
+        assertTrue(loaded.LoadFromObjectFile(source.toString()));
+        assertEquals(2, loaded.TriangleCount());
+        for (int index : loaded.indices) {
+            assertTrue(index >= 0 && index < loaded.VertexCount());
+        }
+    }
+
+    /* Parse the square and write its cache, returning the path of the OBJ */
+    private Path WriteCache() throws IOException {
+        Path source = dir.resolve("square.obj");
+        Files.writeString(source, SQUARE);
+        mesh parsed = new mesh();
+        ObjLoader.Load(source, parsed);
+        MeshCache.Write(source, parsed);
+        return source;
+    }
+
+    private static void PutInt(Path file, long position, int value) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(buffer, position);
+        }
+    }
+}
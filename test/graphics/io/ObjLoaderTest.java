@@ -0,0 +1,177 @@
+package graphics.io;
+
+import graphics.structures.mesh;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Face references of every form resolve to the same vertices, polygons come out as fans and a file cut
+   into many small chunks, with relative indices reaching back across chunk boundaries, loads exactly as
+   it does in one. Numbers match Float.parseFloat, and bad faces and numbers are refused with an error
+   naming what was wrong */
+class ObjLoaderTest {
+    private static final String SQUARE_VERTICES = "v 0 0 0\nv 1 0 0\nv 1 1 0\nv 0 1 0\n";
+
+    private static ForkJoinPool pool;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void StartPool() {
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterAll
+    static void StopPool() {
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "f 1 2 3 4",
+            "f 1/1 2/2 3/3 4/4",
+            "f 1//1 2//2 3//3 4//4",
+            "f 1/1/1 2/2/1 3/3/1 4/4/1",
+            "f -4 -3 -2 -1",
+            "f -4/1/1 -3/2/1 -2//1 -1",
+            "f\t1 2\t3 4 # a quad\r"
+    })
+    void ReferencesOfEveryFormResolve(String face) throws IOException {
+        mesh loaded = Load(SQUARE_VERTICES + "vt 0 0\nvt 1 0\nvt 1 1\nvt 0 1\nvn 0 0 1\n" + face + "\n", Long.MAX_VALUE / 2);
+        assertArrayEquals(new float[]{0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0}, loaded.vertices);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, loaded.indices);
+    }
+
+    @Test
+    void PolygonIsFanTriangulated() throws IOException {
+        mesh loaded = Load(SQUARE_VERTICES + "v 0.5 1.5 0\nv -0.5 0.5 0\nf 1 2 3 5 4 6\n", Long.MAX_VALUE / 2);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 4, 0, 4, 3, 0, 3, 5}, loaded.indices);
+    }
+
+    /* Down to about a chunk per line, so relative indices in most faces point into earlier chunks */
+    @ParameterizedTest
+    @ValueSource(longs = {16, 40, 300})
+    void SmallChunksLoadAsOne(long chunkBytes) throws IOException {
+        Random random = new Random(chunkBytes);
+        StringBuilder obj = new StringBuilder("# mixed\n");
+        int nVertices = 0;
+        for (int line = 0; line < 600; line++) {
+            if (nVertices < 6 || random.nextInt(3) == 0) {
+                obj.append("v ").append(random.nextFloat()).append(' ').append(-random.nextFloat())
+                        .append(' ').append(random.nextInt(100)).append('\n');
+                nVertices++;
+            } else if (random.nextInt(8) == 0) {
+                obj.append("vn 0 1 0\n");
+            } else {
+                obj.append('f');
+                int n = 3 + random.nextInt(4);
+                for (int k = 0; k < n; k++) {
+                    int index = 1 + random.nextInt(nVertices);
+                    obj.append(' ').append(random.nextBoolean() ? index : index - nVertices - 1);
+                    if (random.nextBoolean()) {
+                        obj.append("//1");
+                    }
+                }
+                obj.append('\n');
+            }
+        }
+
+        mesh whole = Load(obj.toString(), Long.MAX_VALUE / 2);
+        mesh chunked = Load(obj.toString(), chunkBytes);
+        assertTrue(whole.TriangleCount() > 300);
+        assertArrayEquals(whole.vertices, chunked.vertices);
+        assertArrayEquals(whole.indices, chunked.indices);
+    }
+
+    /* Short numbers are worked out by the loader and may be 1 ulp off where the double it computes
+       falls halfway between two floats, long ones and extreme exponents go to Float.parseFloat itself */
+    @Test
+    void NumbersMatchParseFloat() throws IOException {
+        Random random = new Random(3);
+        String[] numbers = new String[3000];
+        for (int i = 0; i < numbers.length; i++) {
+            switch (i % 6) {
+                case 0 -> numbers[i] = Float.toString(random.nextFloat() * 200 - 100);
+                case 1 -> numbers[i] = Double.toString(random.nextDouble() - 0.5);
+                case 2 -> numbers[i] = String.format(Locale.ROOT, "%.6f", random.nextGaussian() * 1000);
+                case 3 -> numbers[i] = (random.nextInt(2000000) - 1000000) + "e" + (random.nextInt(80) - 40);
+                case 4 -> numbers[i] = "+" + random.nextInt(1000) + "." + random.nextInt(1000) + "E-" + random.nextInt(50);
+                default -> numbers[i] = "0.0000" + Math.abs(random.nextLong()) + "123456789";
+            }
+        }
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < numbers.length; i += 3) {
+            obj.append("v ").append(numbers[i]).append(' ').append(numbers[i + 1]).append(' ').append(numbers[i + 2]).append('\n');
+        }
+
+        mesh loaded = Load(obj.toString(), Long.MAX_VALUE / 2);
+        for (int i = 0; i < numbers.length; i++) {
+            float expected = Float.parseFloat(numbers[i]);
+            if (numbers[i].replaceAll("[^0-9]", "").replaceFirst("^0+", "").length() > 15) {
+                assertEquals(expected, loaded.vertices[i], 0.0f, numbers[i]);
+            } else {
+                assertEquals(expected, loaded.vertices[i], Math.ulp(expected), numbers[i]);
+            }
+        }
+    }
+
+    /* Just either side of 1 + 2^-24, halfway between 1 and the next float, where digits past the
+       fifteenth decide which way it rounds */
+    @ParameterizedTest
+    @ValueSource(strings = {"1.00000005960464477539063", "1.000000059604644775390625", "1.0000000596046447753906249"})
+    void DigitsPastTheFifteenthDecideRounding(String number) throws IOException {
+        mesh loaded = Load("v " + number + " 0 0\n", Long.MAX_VALUE / 2);
+        assertEquals(Float.parseFloat(number), loaded.vertices[0], 0.0f);
+    }
+
+    @Test
+    void RefusesIndexZero() {
+        AssertRefused(SQUARE_VERTICES + "f 1 0 3\n", "vertex index 0");
+    }
+
+    @Test
+    void RefusesIndexPastTheVertices() {
+        AssertRefused(SQUARE_VERTICES + "f 1 2 5\n", "face references vertex 5 but there are only 4");
+    }
+
+    @Test
+    void RefusesRelativeIndexBeforeTheFirstVertex() {
+        AssertRefused(SQUARE_VERTICES + "f -1 -2 -5\n", "face references vertex 0 but there are only 4");
+    }
+
+    @Test
+    void RefusesFaceWithTwoVertices() {
+        AssertRefused(SQUARE_VERTICES + "f 1 2\n", "fewer than three vertices");
+    }
+
+    @Test
+    void RefusesExponentWithoutDigits() {
+        AssertRefused("v 1e 0 0\n", "expected an exponent");
+    }
+
+    private void AssertRefused(String obj, String message) {
+        IOException e = assertThrows(IOException.class, () -> Load(obj, Long.MAX_VALUE / 2));
+        assertTrue(e.getMessage().contains(message), e.getMessage());
+    }
+
+    private mesh Load(String obj, long chunkBytes) throws IOException {
+        Path file = dir.resolve("mesh.obj");
+        Files.writeString(file, obj);
+        mesh loaded = new mesh();
+        ObjLoader.Load(file, loaded, pool, chunkBytes);
+        return loaded;
+    }
+}
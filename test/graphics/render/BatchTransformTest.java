@@ -0,0 +1,93 @@
+package graphics.render;
+
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static graphics.utility.MatrixUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/* The vector back end gives the scalar one's results to the bit, on random batches that include
+   vertices behind the camera and on the camera plane, where w is zero or nearly so, and sizes that
+   leave a remainder for the scalar tail */
+class BatchTransformTest {
+    private static final int VERTICES = 1000 + 3;
+    private static final int TRIANGLES = 500 + 5;
+
+    @BeforeAll
+    static void VectorModule() {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                "JVM started without --add-modules jdk.incubator.vector");
+    }
+
+    @Test
+    void TransformMatchesScalar() {
+        Random random = new Random(42);
+        BatchTransform scalar = BatchTransform.New(GeometryStage.NewClipper(), BatchTransform.SCALAR);
+        BatchTransform vector = BatchTransform.New(GeometryStage.NewClipper(), BatchTransform.VECTOR);
+        scalar.Reserve(VERTICES);
+        vector.Reserve(VERTICES);
+
+        for (int i = 0; i < VERTICES; i++) {
+            float x = (random.nextFloat() - 0.5f) * 20.0f, y = (random.nextFloat() - 0.5f) * 20.0f, z;
+            switch (i % 4) {
+                case 0: z = -random.nextFloat() * 10.0f; break;                  /* Behind the camera */
+                case 1: z = (random.nextFloat() - 0.5f) * 1e-6f; break;          /* w nearly zero */
+                case 2: z = i % 8 == 2 ? 0.0f : -0.0f; break;                    /* w zero */
+                default: z = random.nextFloat() * 50.0f; break;
+            }
+            scalar.x[i] = vector.x[i] = x;
+            scalar.y[i] = vector.y[i] = y;
+            scalar.z[i] = vector.z[i] = z;
+        }
+
+        /* Projection alone keeps w equal to z, so the special cases above stay special */
+        mat4x4 matProj = MatrixMakeProjection(90.0f, 0.75f, 0.1f, 1000.0f);
+        mat4x4 matTilted = MatrixMultiplyMatrix(MatrixMakeRotationY(0.3f), matProj);
+        for (mat4x4 matrix : new mat4x4[] {matProj, matTilted}) {
+            scalar.Transform(VERTICES, matrix, 640.0f, 480.0f);
+            vector.Transform(VERTICES, matrix, 640.0f, 480.0f);
+
+            assertArrayEquals(Arrays.copyOf(scalar.clipX, VERTICES), Arrays.copyOf(vector.clipX, VERTICES));
+            assertArrayEquals(Arrays.copyOf(scalar.clipY, VERTICES), Arrays.copyOf(vector.clipY, VERTICES));
+            assertArrayEquals(Arrays.copyOf(scalar.clipZ, VERTICES), Arrays.copyOf(vector.clipZ, VERTICES));
+            assertArrayEquals(Arrays.copyOf(scalar.clipW, VERTICES), Arrays.copyOf(vector.clipW, VERTICES));
+            assertArrayEquals(Arrays.copyOf(scalar.screenX, VERTICES), Arrays.copyOf(vector.screenX, VERTICES));
+            assertArrayEquals(Arrays.copyOf(scalar.screenY, VERTICES), Arrays.copyOf(vector.screenY, VERTICES));
+            assertArrayEquals(Arrays.copyOf(scalar.screenZ, VERTICES), Arrays.copyOf(vector.screenZ, VERTICES));
+            assertArrayEquals(Arrays.copyOf(scalar.codes, VERTICES), Arrays.copyOf(vector.codes, VERTICES));
+        }
+    }
+
+    @Test
+    void FacingMatchesScalar() {
+        Random random = new Random(7);
+        mesh meshObj = new mesh();
+        meshObj.vertices = new float[VERTICES * 3];
+        for (int i = 0; i < meshObj.vertices.length; i++) {
+            meshObj.vertices[i] = (random.nextFloat() - 0.5f) * 10.0f;
+        }
+        meshObj.indices = new int[TRIANGLES * 3];
+        for (int i = 0; i < meshObj.indices.length; i++) {
+            meshObj.indices[i] = random.nextInt(VERTICES);
+        }
+        /* A degenerate triangle, its normal is zero */
+        meshObj.indices[3] = meshObj.indices[4] = meshObj.indices[5];
+        meshObj.UpdateNormals();
+
+        BatchTransform scalar = BatchTransform.New(GeometryStage.NewClipper(), BatchTransform.SCALAR);
+        BatchTransform vector = BatchTransform.New(GeometryStage.NewClipper(), BatchTransform.VECTOR);
+        for (float sign : new float[] {1.0f, -1.0f}) {
+            int first = 1, last = TRIANGLES;
+            int nScalar = scalar.Facing(meshObj, first, last, 0.5f, -2.0f, 3.0f, sign);
+            int nVector = vector.Facing(meshObj, first, last, 0.5f, -2.0f, 3.0f, sign);
+            assertEquals(nScalar, nVector);
+            assertArrayEquals(Arrays.copyOf(scalar.facing, last - first), Arrays.copyOf(vector.facing, last - first));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package graphics.render;
+
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import graphics.structures.vec3d;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static graphics.utility.MatrixUtil.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/* Splitting a mesh's visible chunks across the pool and appending the workers' buffers in order gives
+   exactly what running the whole mesh on the calling thread does, triangles and counts alike. The
+   mesh is a rippled grid of many chunks seen from among the ripples, so some of it faces away, some
+   is outside the view and some crosses the near plane */
+class GeometryStageTest {
+    private static final int WIDTH = 320, HEIGHT = 240;
+    private static final int GRID_TRIANGLES = 200000;
+    private static final int FRAMES = 8;
+
+    private static mesh grid;
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void Build() {
+        grid = Grid(GRID_TRIANGLES);
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterAll
+    static void Shutdown() {
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = ShadeMode.class, names = {"WIREFRAME", "GOURAUD"})
+    void ParallelMatchesSerial(ShadeMode shading) {
+        mat4x4 matProj = MatrixMakeProjection(90.0f, (float) HEIGHT / WIDTH, 0.1f, 1000.0f);
+        Lighting lighting = new Lighting();
+        lighting.AddDirectional(0.0f, -1.0f, -1.0f, 0.9f);
+        lighting.AddPoint(0.0f, 1.0f, 2.0f, 0.8f, 10.0f);
+        GeometryStage serial = new GeometryStage(pool, WIDTH, HEIGHT, matProj, Integer.MAX_VALUE);
+        GeometryStage parallel = new GeometryStage(pool, WIDTH, HEIGHT, matProj, 0);
+        serial.SetShading(shading, lighting);
+        parallel.SetShading(shading, lighting);
+
+        TriangleBuffer expected = new TriangleBuffer(), actual = new TriangleBuffer();
+        int nClipped = 0;
+        mat4x4 matView = MatrixMakeIdentity();
+        vec3d vCamera = new vec3d(0.0f, 0.0f, 0.0f);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            mat4x4 matWorld = MatrixMultiplyMatrix(
+                    MatrixMultiplyMatrix(MatrixMakeRotationY(frame * 0.4f), MatrixMakeRotationX(-0.1f)),
+                    MatrixMakeTranslation(0.0f, -0.2f, 0.0f));
+            serial.Process(grid, matWorld, matView, vCamera, expected);
+            parallel.Process(grid, matWorld, matView, vCamera, actual);
+
+            String at = shading + " frame " + frame;
+            assertTrue(expected.count > 0, at + " draws nothing");
+            assertTrue(serial.ChunksVisible() > 1, at + " has a single visible chunk");
+            assertEquals(expected.count, actual.count, at);
+            assertArrayEquals(Arrays.copyOf(expected.data, expected.count * TriangleBuffer.STRIDE),
+                    Arrays.copyOf(actual.data, actual.count * TriangleBuffer.STRIDE), at);
+            assertEquals(serial.ChunksVisible(), parallel.ChunksVisible(), at);
+            assertEquals(serial.VerticesTransformed(), parallel.VerticesTransformed(), at);
+            assertEquals(serial.TrianglesIn(), parallel.TrianglesIn(), at);
+            assertEquals(serial.TrianglesCulled(), parallel.TrianglesCulled(), at);
+            assertEquals(serial.TrianglesClipped(), parallel.TrianglesClipped(), at);
+            nClipped += serial.TrianglesClipped();
+        }
+        assertTrue(nClipped > 0, "nothing was clipped");
+    }
+
+    /* A rippled square grid 64 units across of exactly nTriangles triangles, like the one the load benchmark writes */
+    static mesh Grid(int nTriangles) {
+        int side = (int) Math.ceil(Math.sqrt(nTriangles / 2.0));
+        mesh grid = new mesh();
+        grid.vertices = new float[(side + 1) * (side + 1) * 3];
+        for (int j = 0, v = 0; j <= side; j++) {
+            for (int i = 0; i <= side; i++, v += 3) {
+                float x = i / (float) side - 0.5f, z = j / (float) side - 0.5f;
+                grid.vertices[v] = x * 64.0f;
+                grid.vertices[v + 1] = (float) (Math.sin(x * 40.0) * Math.cos(z * 40.0)) * 0.5f;
+                grid.vertices[v + 2] = z * 64.0f;
+            }
+        }
+        grid.indices = new int[nTriangles * 3];
+        int written = 0;
+        for (int j = 0; j < side && written < nTriangles; j++) {
+            for (int i = 0; i < side && written < nTriangles; i++) {
+                int a = j * (side + 1) + i, b = a + 1, c = a + side + 1, d = c + 1;
+                written = Put(grid.indices, written, a, c, b);
+                if (written < nTriangles) {
+                    written = Put(grid.indices, written, b, c, d);
+                }
+            }
+        }
+        grid.UpdateBounds();
+        grid.UpdateNormals();
+        return grid;
+    }
+
+    private static int Put(int[] indices, int t, int a, int b, int c) {
+        indices[t * 3] = a;
+        indices[t * 3 + 1] = b;
+        indices[t * 3 + 2] = c;
+        return t + 1;
+    }
+}
@@ -0,0 +1,180 @@
+package graphics.render;
+
+import graphics.scene.InstanceGrid;
+import graphics.scene.Scene;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* The pipeline must present every submitted frame, in order and drawn exactly as RenderFrame draws
+   it, be empty once Drain returns and stop its raster thread on Close */
+class RenderPipelineTest {
+    private static final int FRAMES = 24;
+    private static final int WIDTH = 160, HEIGHT = 120;
+
+    private static mesh teapot;
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void Load() {
+        teapot = new mesh();
+        assertTrue(teapot.LoadFromObjectFile("src/graphics/resources/teapot.obj"));
+        pool = new ForkJoinPool(2);
+    }
+
+    @AfterAll
+    static void Shutdown() {
+        pool.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3})
+    @Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void PresentsEveryFrameInOrderAsDrawnSerially(int depth) throws InterruptedException {
+        int[] expected = new int[FRAMES];
+        Renderer serial = new Renderer(WIDTH, HEIGHT, RenderMode.TILED, ShadeMode.GOURAUD, pool);
+        Spinning spinning = new Spinning(serial);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            spinning.Next();
+            serial.RenderFrame(spinning.scene, spinning.camera);
+            expected[frame] = Arrays.hashCode(serial.frameBuffer.pixels);
+        }
+
+        Renderer renderer = new Renderer(WIDTH, HEIGHT, RenderMode.TILED, ShadeMode.GOURAUD, pool);
+        List<Long> frames = Collections.synchronizedList(new ArrayList<>());
+        int[] presented = new int[FRAMES + 1];
+        RenderPipeline pipeline = new RenderPipeline(renderer, depth, (frameBuffer, frame) -> {
+            frames.add(frame);
+            presented[(int) frame] = Arrays.hashCode(frameBuffer.pixels);
+        });
+        spinning = new Spinning(renderer);
+        for (int frame = 0; frame < FRAMES; frame++) {
+            spinning.Next();
+            pipeline.Submit(spinning.scene, spinning.camera);
+        }
+        pipeline.Drain();
+
+        /* Drain waits for the raster thread to hand back every packet, so all of it is visible here */
+        List<Long> order = new ArrayList<>();
+        for (long frame = 0; frame < FRAMES; frame++) {
+            order.add(frame);
+        }
+        assertEquals(order, frames);
+        assertArrayEquals(expected, Arrays.copyOf(presented, FRAMES));
+        assertEquals(FRAMES, renderer.metrics.getFrameCount());
+
+        /* Still usable after a Drain */
+        spinning.Next();
+        pipeline.Submit(spinning.scene, spinning.camera);
+        pipeline.Drain();
+        assertEquals(FRAMES + 1, frames.size());
+        pipeline.Close();
+    }
+
+    /* A presenter that throws loses its frame but not the pipeline, and the failure reaches the
+       submitting thread from Submit or at the latest from Drain */
+    @Test
+    @Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void FailedFrameIsReported() throws InterruptedException {
+        Renderer renderer = new Renderer(WIDTH, HEIGHT, RenderMode.ZBUFFER, ShadeMode.FLAT, pool);
+        List<Long> frames = Collections.synchronizedList(new ArrayList<>());
+        RenderPipeline pipeline = new RenderPipeline(renderer, 2, (frameBuffer, frame) -> {
+            if (frame == 3) {
+                throw new IllegalStateException("presenter failed on purpose");
+            }
+            frames.add(frame);
+        });
+        Spinning spinning = new Spinning(renderer);
+        int submitted = 0;
+        try {
+            for (; submitted < 6; submitted++) {
+                spinning.Next();
+                pipeline.Submit(spinning.scene, spinning.camera);
+            }
+        } catch (IllegalStateException e) {
+            assertEquals("presenter failed on purpose", e.getCause().getMessage());
+        }
+        assertTrue(submitted >= 4, "Submit failed before frame 3 was presented");
+
+        IllegalStateException drained = assertThrows(IllegalStateException.class, pipeline::Drain);
+        assertEquals("presenter failed on purpose", drained.getCause().getMessage());
+        assertEquals(List.of(0L, 1L, 2L), frames.subList(0, 3));
+        assertFalse(frames.contains(3L));
+        assertEquals(submitted - 1, frames.size());
+
+        /* The failure sticks */
+        assertThrows(IllegalStateException.class, () -> pipeline.Submit(spinning.scene, spinning.camera));
+        pipeline.Close();
+    }
+
+    /* Close while frames are still queued behind a presenter that is stuck, the raster thread stops
+       and the frames not yet presented never are */
+    @Test
+    @Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void CloseStopsTheRasterThread() throws InterruptedException {
+        Renderer renderer = new Renderer(WIDTH, HEIGHT, RenderMode.ZBUFFER, ShadeMode.FLAT, pool);
+        CountDownLatch presenting = new CountDownLatch(1), release = new CountDownLatch(1);
+        List<Long> frames = Collections.synchronizedList(new ArrayList<>());
+        RenderPipeline pipeline = new RenderPipeline(renderer, 2, (frameBuffer, frame) -> {
+            frames.add(frame);
+            presenting.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Spinning spinning = new Spinning(renderer);
+        for (int frame = 0; frame < 2; frame++) {
+            spinning.Next();
+            pipeline.Submit(spinning.scene, spinning.camera);
+        }
+        presenting.await();
+        pipeline.Close();
+        assertFalse(RasterThreadAlive(), "raster thread still running after Close");
+        assertEquals(List.of(0L), frames);
+    }
+
+    private static boolean RasterThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("RenderPipelineRaster") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* The teapot spinning in front of the camera, one step per Next */
+    private static final class Spinning {
+        final Scene scene = new Scene();
+        final Camera camera = new Camera();
+        private final InstanceGrid grid = new InstanceGrid(teapot, 1);
+        private final mat4x4 matWorld = new mat4x4();
+        private final Renderer renderer;
+        private float fTheta;
+
+        Spinning(Renderer renderer) {
+            this.renderer = renderer;
+            scene.root.AddChild(grid.group);
+        }
+
+        void Next() {
+            fTheta += 0.1f;
+            grid.Animate(renderer.MakeWorldMatrix(fTheta, matWorld));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package graphics.render;
+
+import graphics.scene.InstanceGrid;
+import graphics.scene.Scene;
+import graphics.structures.mat4x4;
+import graphics.structures.mesh;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/* Once warmed up a frame allocates nothing, on the calling thread or on the pool's workers, in every
+   render and shade mode, on both transform back ends, and with the geometry worked out either on the
+   calling thread or split across the pool, which the teapot alone is too small for unless the
+   threshold is lowered. The scalar back end is what runs without the Vector API module and must
+   never allocate. The vector one only keeps its vectors in registers when C2 compiles it with vectors
+   as wide as the preferred species, anywhere else it boxes them, so it is only measured where that
+   holds. Allocation is read from the JVM's per thread counters and totalled over every frame measured,
+   so a frame that allocates even one small object each time fails. The warm up plays the very frames
+   measured, the buffers that grow to fit the busiest frame have then seen it. Only the calling thread
+   and the pool's workers are counted, the JVM's and the test runner's own threads allocate on their
+   own schedule */
+class RendererAllocationTest {
+    private static final int MEASURED_FRAMES = 200;
+    private static final int WARM_UP_PASSES = 5;
+    /* Over all MEASURED_FRAMES together. Enough for the array the second reading of the counters
+       returns, which is counted too, well short of one 16 byte object a frame */
+    private static final long MAX_BYTES = 256;
+
+    private static mesh teapot;
+    private static ForkJoinPool pool;
+    private static final Set<Thread> workers = ConcurrentHashMap.newKeySet();
+
+    @BeforeAll
+    static void Load() throws Exception {
+        teapot = new mesh();
+        teapot.LoadFromObjectFile("src/graphics/resources/teapot.obj");
+        pool = new ForkJoinPool(2, p -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            workers.add(worker);
+            return worker;
+        }, null, false);
+    }
+
+    @AfterAll
+    static void Shutdown() {
+        pool.shutdown();
+    }
+
+    static List<Arguments> Cases() {
+        List<Arguments> cases = new ArrayList<>();
+        for (String backend : new String[] {BatchTransform.SCALAR, BatchTransform.VECTOR}) {
+            for (RenderMode renderMode : RenderMode.values()) {
+                cases.add(Arguments.of(backend, renderMode, GeometryStage.DEFAULT_PARALLEL_THRESHOLD));
+                cases.add(Arguments.of(backend, renderMode, 0));
+            }
+        }
+        return cases;
+    }
+
+    @ParameterizedTest
+    @MethodSource("Cases")
+    void FrameAllocatesNothing(String backend, RenderMode renderMode, int parallelThreshold) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        assumeTrue(backend.equals(BatchTransform.SCALAR) || VectorIntrinsified(), "vector transform not compiled to vector instructions here");
+
+        for (ShadeMode shading : ShadeMode.values()) {
+            Renderer renderer = new Renderer(320, 240, renderMode, shading, pool, parallelThreshold, backend);
+            Scene scene = new Scene();
+            InstanceGrid grid = new InstanceGrid(teapot, 1);
+            scene.root.AddChild(grid.group);
+            Camera camera = new Camera();
+            mat4x4 matWorld = new mat4x4();
+
+            for (int pass = 0; pass < WARM_UP_PASSES; pass++) {
+                Play(renderer, scene, grid, camera, matWorld);
+            }
+            long[] ids = MeasuredThreadIds();
+            long before = Sum(threads.getThreadAllocatedBytes(ids));
+            Play(renderer, scene, grid, camera, matWorld);
+            long bytes = Sum(threads.getThreadAllocatedBytes(ids)) - before;
+
+            String measured = backend + " " + renderMode + " " + shading + " threshold " + parallelThreshold;
+            assertTrue(bytes <= MAX_BYTES, measured + " allocates " + bytes + " bytes in " + MEASURED_FRAMES + " frames");
+        }
+    }
+
+    /* MEASURED_FRAMES frames of the teapot spinning as in the interactive engine */
+    private static void Play(Renderer renderer, Scene scene, InstanceGrid grid, Camera camera, mat4x4 matWorld) {
+        float fTheta = 0.0f;
+        for (int frame = 0; frame < MEASURED_FRAMES; frame++) {
+            fTheta += 0.01f;
+            grid.Animate(renderer.MakeWorldMatrix(fTheta, matWorld));
+            renderer.RenderFrame(scene, camera);
+        }
+    }
+
+    /* The calling thread followed by every worker the pool has started */
+    private static long[] MeasuredThreadIds() {
+        Thread[] started = workers.toArray(new Thread[0]);
+        long[] ids = new long[started.length + 1];
+        ids[0] = Thread.currentThread().getId();
+        for (int i = 0; i < started.length; i++) {
+            ids[i + 1] = started[i].getId();
+        }
+        return ids;
+    }
+
+    /* The Vector API module is there and C2, which is what turns its vectors into registers, compiles
+       with vectors as wide as the species VectorBatchTransform uses */
+    private static boolean VectorIntrinsified() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        com.sun.management.HotSpotDiagnosticMXBean vm = ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+        try {
+            return Boolean.parseBoolean(vm.getVMOption("UseCompiler").getValue())
+                    && Integer.parseInt(vm.getVMOption("TieredStopAtLevel").getValue()) >= 4
+                    && Integer.parseInt(vm.getVMOption("MaxVectorSize").getValue()) >= VectorBatchTransform.Lanes() * Float.BYTES;
+        } catch (IllegalArgumentException e) {
+            /* No such option, a VM without C2 */
+            return false;
+        }
+    }
+
+    /* Threads that have died since read as -1 */
+    private static long Sum(long[] bytes) {
+        long total = 0;
+        for (long b : bytes) {
+            total += Math.max(0, b);
+        }
+        return total;
+    }
+}
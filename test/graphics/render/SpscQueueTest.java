@@ -0,0 +1,101 @@
+package graphics.render;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpscQueueTest {
+    private static final int ITEMS = 200_000;
+
+    /* A capacity of two keeps both sides waiting on each other almost every item, through Put and
+       Take's spin and park, and every item must still arrive once and in order */
+    @Test
+    @Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void PutAndTakeAcrossThreadsKeepOrder() throws InterruptedException {
+        SpscQueue<Integer> queue = new SpscQueue<>(2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < ITEMS; i++) {
+                    queue.Put(i);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        for (int i = 0; i < ITEMS; i++) {
+            assertEquals(i, queue.Take());
+        }
+        producer.join();
+        assertNull(failure.get());
+        assertNull(queue.Poll());
+        assertEquals(0, queue.Size());
+    }
+
+    /* The same through the non-blocking Offer and Poll, each side yielding until it gets through so
+       the other runs even on a single core */
+    @Test
+    @Timeout(value = 60, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void OfferAndPollAcrossThreadsKeepOrder() throws InterruptedException {
+        SpscQueue<Integer> queue = new SpscQueue<>(2);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < ITEMS; i++) {
+                while (!queue.Offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+        for (int i = 0; i < ITEMS; i++) {
+            Integer item;
+            while ((item = queue.Poll()) == null) {
+                Thread.yield();
+            }
+            assertEquals(i, item);
+        }
+        producer.join();
+        assertEquals(0, queue.Size());
+    }
+
+    @Test
+    void OfferFailsWhenFull() {
+        SpscQueue<String> queue = new SpscQueue<>(2);
+        assertTrue(queue.Offer("a"));
+        assertTrue(queue.Offer("b"));
+        assertFalse(queue.Offer("c"));
+        assertEquals(2, queue.Size());
+        assertEquals("a", queue.Poll());
+        assertTrue(queue.Offer("c"));
+        assertEquals("b", queue.Poll());
+        assertEquals("c", queue.Poll());
+        assertNull(queue.Poll());
+    }
+
+    @Test
+    void CapacityMustBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new SpscQueue<>(3));
+        assertThrows(IllegalArgumentException.class, () -> new SpscQueue<>(0));
+    }
+
+    @Test
+    @Timeout(value = 10, threadMode = Timeout.ThreadMode.SEPARATE_THREAD)
+    void TakeIsInterruptible() throws InterruptedException {
+        SpscQueue<Integer> queue = new SpscQueue<>(2);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            try {
+                queue.Take();
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        consumer.start();
+        consumer.interrupt();
+        consumer.join();
+        assertInstanceOf(InterruptedException.class, thrown.get());
+    }
+}